@@ -14,78 +14,202 @@
 package io.github.danielt3131.mipsemu;
 
 import android.app.Activity;
-import android.text.PrecomputedText;
+import android.content.Intent;
+import android.net.Uri;
 import android.util.Log;
+import android.view.Choreographer;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import androidx.core.text.PrecomputedTextCompat;
-import androidx.core.widget.TextViewCompat;
+import androidx.core.content.FileProvider;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import io.github.danielt3131.mipsemu.machine.InstructionTrace;
+import io.github.danielt3131.mipsemu.machine.MachineListener;
+import io.github.danielt3131.mipsemu.ui.MemoryAdapter;
 
 /**
  * Class used for communication from {@link io.github.danielt3131.mipsemu.machine.MipsMachine} to {@link io.github.danielt3131.mipsemu.ui.MachineActivity}
+ * <p>
+ * The Android side of the machine, it puts what the machine sends on the screen, shows its messages as Toasts and
+ * keeps the instruction trace that is turned into the instruction log shared when the program ends
+ * <p>
+ * Register, program counter, instruction, cache hit and memory updates are not posted one by one. The newest text of
+ * each display, or the range of memory that changed, is kept with a bit in a dirty mask and a single frame callback
+ * applies the displays that changed, so at most one update per frame reaches the UI thread however fast the machine
+ * sends them
  */
-public class MachineInterface {
-    private TextView memoryDisplay, programCounterDisplay, instructionDisplay, cacheHitRateDisplay;
+public class MachineInterface implements MachineListener {
+    // Bits of the dirty mask, the registers use bits 0 to 31
+    private static final int PROGRAM_COUNTER = 32;
+    private static final int INSTRUCTIONS = 33;
+    private static final int CACHE_HITS = 34;
+    private static final int MEMORY = 35;
+    private static final int DISPLAYS = 36;
+
+    private TextView programCounterDisplay, instructionDisplay, cacheHitRateDisplay;
+    private MemoryAdapter memoryAdapter;
     private TextView[] registers;
     private Activity activity;
-    private PrecomputedText preComputedMemoryDisplay;
+    private InstructionTrace instructionTrace;
+    private long sharedEvents = -1; //the size of the trace when the instruction log was last shared
+    private String instructionTraceFilename = "instructions.trace";
+    private String instructionLogFilename = "instructions.txt";
+
+    private final Choreographer choreographer;
+    private final Choreographer.FrameCallback applyPendingCallback = this::applyPending;
+    private final Object pendingLock = new Object();
+    private final String[] pending = new String[DISPLAYS]; //the newest text of each display, guarded by pendingLock
+    private final String[] applying = new String[DISPLAYS]; //only used on the UI thread
+    private long dirty; //the displays with new text, guarded by pendingLock
+    private boolean frameScheduled; //guarded by pendingLock
+    private long memoryFrom, memoryTo; //the changed memory addresses, guarded by pendingLock
 
     /**
+     * Must be created on the UI thread
      *
-     * @param memoryDisplay The memory display
+     *
+     * @param memoryAdapter The rows of the memory display
      * @param programCounterDisplay The program counter display
      * @param instructionDisplay The instruction display
      * @param registers The array of registers
      * @param cacheHitRateDisplay The cache hit rate display
      */
-    public MachineInterface(TextView memoryDisplay, TextView programCounterDisplay, TextView instructionDisplay, TextView[] registers, TextView cacheHitRateDisplay, Activity activity) {
-        this.memoryDisplay = memoryDisplay;
+    public MachineInterface(MemoryAdapter memoryAdapter, TextView programCounterDisplay, TextView instructionDisplay, TextView[] registers, TextView cacheHitRateDisplay, Activity activity) {
+        this.memoryAdapter = memoryAdapter;
         this.programCounterDisplay = programCounterDisplay;
         this.instructionDisplay = instructionDisplay;
         this.registers = registers;
         this.cacheHitRateDisplay = cacheHitRateDisplay;
         this.activity = activity;
+        choreographer = Choreographer.getInstance();
     }
 
     /**
-     * Method to update the memory display on the screen
-     * @param memory The memory formatted
+     * Keeps the newest text of a display and makes sure a frame callback will apply it
+     *
+     * @param display A register index or one of the display bits
+     * @param text The text
      */
-    public void updateMemoryDisplay(String memory) {
-        final String[] finalMemoryString = {""};
-        Thread thread = new Thread(() -> {
-            String[] memoryArray = memory.split(" ");
-            int memoryAddress = 0;
-            Log.d("Memory", "Now adding addresses");
-            int i = 0;
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("Memory\n");
-            while (i < memoryArray.length) {
-                String memoryAddressString =  String.format("0x%6s", Integer.toHexString(memoryAddress)).replace(" ", "0");
-                stringBuilder.append(String.format("%s: %s %s %s %s\n", memoryAddressString, memoryArray[i++], memoryArray[i++], memoryArray[i++], memoryArray[i++]));
-                memoryAddress += 4;
+    private void publish(int display, String text) {
+        synchronized (pendingLock) {
+            pending[display] = text;
+            dirty |= 1L << display;
+            if (frameScheduled) {
+                return;
             }
-            finalMemoryString[0] = stringBuilder.toString();
-            Log.d("Memory", "Computing display");
-            preComputedMemoryDisplay = PrecomputedText.create(finalMemoryString[0], memoryDisplay.getTextMetricsParams());
-            Log.d("Memory", "Sent to UI");
-            memoryDisplay.post(() -> {
-                memoryDisplay.setText(preComputedMemoryDisplay);
-            });
-        });
+            frameScheduled = true;
+        }
+        choreographer.postFrameCallback(applyPendingCallback);
+    }
 
-        thread.start();
+    /**
+     * Applies every display that changed since the last frame, runs on the UI thread
+     *
+     * @param frameTimeNanos The time of the frame
+     */
+    private void applyPending(long frameTimeNanos) {
+        long displays;
+        long changedFrom, changedTo;
+        synchronized (pendingLock) {
+            displays = dirty;
+            dirty = 0;
+            frameScheduled = false;
+            changedFrom = memoryFrom;
+            changedTo = memoryTo;
+            for (long bits = displays; bits != 0; bits &= bits - 1) {
+                int display = Long.numberOfTrailingZeros(bits);
+                applying[display] = pending[display];
+            }
+        }
+        for (long bits = displays; bits != 0; bits &= bits - 1) {
+            int display = Long.numberOfTrailingZeros(bits);
+            String text = applying[display];
+            if (display == MEMORY) {
+                memoryAdapter.memoryChanged((int) changedFrom, (int) Math.min(changedTo - changedFrom, Integer.MAX_VALUE));
+            } else if (display == PROGRAM_COUNTER) {
+                programCounterDisplay.setText("Program Counter: " + text);
+            } else if (display == INSTRUCTIONS) {
+                instructionDisplay.setText("Instructions:" + text);
+            } else if (display == CACHE_HITS) {
+                cacheHitRateDisplay.setText("Cache Hits: " + text);
+            } else {
+                registers[display].setText(Reference.registerNames[display] + ": " + text);
+            }
+        }
+    }
+
+    /**
+     * Starts a new instruction trace, used when a new machine is created. The trace stays open until the next one is
+     * started so the steps taken after going back are recorded too
+     *
+     * @return The trace to give to the machine, null if it could not be created
+     */
+    public InstructionTrace openInstructionLog() {
+        closeInstructionLog();
+        sharedEvents = -1;
+        try {
+            // The binary trace is stored in internal storage and only turned into text when it is shared
+            instructionTrace = new InstructionTrace(new File(activity.getFilesDir(), instructionTraceFilename));
+        } catch (IOException e) {
+            Log.e("Instruction Log", e.getMessage());
+            instructionTrace = null;
+        }
+        return instructionTrace;
+    }
+
+    /**
+     * Closes the instruction trace to prevent a resource leak, waiting for it to be written
+     */
+    public void closeInstructionLog() {
+        if (instructionTrace != null) {
+            try {
+                instructionTrace.close();
+            } catch (IOException e) {
+                Log.e("Instruction Log", e.getMessage());
+            }
+        }
+    }
 
-        //memoryDisplay.setText("Memory\n" + memory);
+    /**
+     * Method to redraw the rows of the memory display that changed
+     * @param address The first address that changed
+     * @param length The number of bytes that changed
+     */
+    @Override
+    public void updateMemoryDisplay(int address, int length) {
+        long from = Integer.toUnsignedLong(address);
+        boolean schedule;
+        synchronized (pendingLock) {
+            // Changes in the same frame are merged into one range, only the rows on screen get redrawn anyway
+            if ((dirty & 1L << MEMORY) == 0) {
+                memoryFrom = from;
+                memoryTo = from + length;
+            } else {
+                memoryFrom = Math.min(memoryFrom, from);
+                memoryTo = Math.max(memoryTo, from + length);
+            }
+            dirty |= 1L << MEMORY;
+            schedule = !frameScheduled;
+            frameScheduled = true;
+        }
+        if (schedule) {
+            choreographer.postFrameCallback(applyPendingCallback);
+        }
     }
 
     /**
      * Method to update the program counter on the screen
      * @param programCounter The program counter as a string
      */
+    @Override
     public void updateProgramCounter(String programCounter) {
-        programCounterDisplay.post(() -> programCounterDisplay.setText("Program Counter: " + programCounter));
+        publish(PROGRAM_COUNTER, programCounter);
     }
 
 
@@ -93,8 +217,9 @@ public class MachineInterface {
      * Method to update the instructionDisplay TextView
      * @param instructions The instructions to display
      */
+    @Override
     public void updateInstructionDisplay(String instructions) {
-        instructionDisplay.post(() -> instructionDisplay.setText("Instructions:" + instructions));
+        publish(INSTRUCTIONS, instructions);
     }
 
     /**
@@ -102,9 +227,9 @@ public class MachineInterface {
      * @param register The register to update
      * @param registerValue The register value
      */
+    @Override
     public void updateIndividualRegister(int register, String registerValue) {
-        registers[register].post(() -> registers[register].setText(Reference.registerNames[register] + ": " + registerValue));
-        Log.d("Updated Register: " + Reference.registerNames[register], registerValue);
+        publish(register, registerValue);
     }
 
     /**
@@ -112,25 +237,87 @@ public class MachineInterface {
      * @param registerValues The string array containing the value of every register
      */
     public void updateAllRegisters(String[] registerValues) {
-        activity.runOnUiThread(() -> {
-            for (int i = 0; i < registers.length; i++) {
-                try {
-                    registers[i].setText(Reference.registerNames[i] + ": " + registerValues[i]);
-                    Log.d("Updated Register: " + Reference.registerNames[i], registerValues[i]);
-
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    Log.e("Update Register", e.getMessage());
-                }
-            }
-        });
+        for (int i = 0; i < registers.length && i < registerValues.length; i++) {
+            publish(i, registerValues[i]);
+        }
     }
 
     /**
      * Updates the cache hit display
      * @param cacheHitRate The cache hit rate value
      */
+    @Override
     public void updateCacheHitDisplay(String cacheHitRate) {
-        cacheHitRateDisplay.post(() -> cacheHitRateDisplay.setText("Cache Hits: " + cacheHitRate));
+        publish(CACHE_HITS, cacheHitRate);
+    }
+
+    /**
+     * Shows a message from the machine as a Toast
+     * @param message The message
+     */
+    @Override
+    public void showMessage(String message) {
+        activity.runOnUiThread(() -> Toast.makeText(activity, message, Toast.LENGTH_SHORT).show());
+    }
+
+    /**
+     * Shows a Toast message that there is no more instructions to execute
+     * <p>
+     * Renders the instruction trace to the instruction log and calls shareInstructionLog() to share it to the user,
+     * only if something was recorded since it was last shared so pressing step again at the end does not share it again
+     */
+    @Override
+    public void onProgramFinished() {
+        activity.runOnUiThread(() -> Toast.makeText(activity, "No more instructions to execute", Toast.LENGTH_LONG).show());
+        InstructionTrace trace = instructionTrace;
+        if (trace == null || trace.size() == sharedEvents) {
+            return;
+        }
+        sharedEvents = trace.size();
+        // Rendering the log can take a while for a long program so it is not done on the UI thread
+        Thread thread = new Thread(() -> {
+            if (renderInstructionLog(trace)) {
+                activity.runOnUiThread(this::shareInstructionLog);
+            }
+        });
+        thread.start();
+    }
+
+    /**
+     * Writes out the instruction trace recorded so far as the readable instruction log, the trace stays open
+     *
+     * @param trace The trace to write out
+     * @return true if the log was written
+     */
+    private boolean renderInstructionLog(InstructionTrace trace) {
+        File traceFile = new File(activity.getFilesDir(), instructionTraceFilename);
+        try (Writer writer = new BufferedWriter(new FileWriter(new File(activity.getFilesDir(), instructionLogFilename)))) {
+            trace.flush();
+            InstructionTrace.render(traceFile, writer);
+            return true;
+        } catch (IOException e) {
+            Log.e("Instruction Log", e.getMessage());
+            showMessage("Could not write the instruction log");
+            return false;
+        }
+    }
+
+    /**
+     * Shares the instruction log to the user via the system share sheet via Intent
+     * <p>
+     * See <a href="https://developer.android.com/training/sharing/send">...</a>
+     */
+    private void shareInstructionLog() {
+        // Share the instruction log -> pull up share menu
+        Intent instructionShareIntent = new Intent(Intent.ACTION_SEND);
+        // Get a Uri from File
+        Uri instructionUri = FileProvider.getUriForFile(activity, "io.github.danielt3131.mipsemu.provider", new File(activity.getFilesDir(), instructionLogFilename));
+        instructionShareIntent.setType("text/plain");   // Set the type to a plain text file
+        instructionShareIntent.putExtra(Intent.EXTRA_STREAM, instructionUri);   // The file Uri
+        instructionShareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        // Get the share sheet instead of intent resolver see https://developer.android.com/training/sharing/send
+        instructionShareIntent = Intent.createChooser(instructionShareIntent, null);
+        activity.startActivity(instructionShareIntent);
     }
 
     /**
@@ -40,6 +40,8 @@ import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.fragment.app.DialogFragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -49,6 +51,8 @@ import java.io.OutputStream;
 import io.github.danielt3131.mipsemu.MachineInterface;
 import io.github.danielt3131.mipsemu.R;
 import io.github.danielt3131.mipsemu.Reference;
+import io.github.danielt3131.mipsemu.machine.CacheHierarchy;
+import io.github.danielt3131.mipsemu.machine.InstructionTrace;
 import io.github.danielt3131.mipsemu.machine.MipsMachine;
 
 public class MachineActivity extends AppCompatActivity implements ProgramCounterDialog.ProgramCounterDialogListener, MemoryEditDialog.MemoryEditDialogListener {
@@ -56,9 +60,11 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
     Toolbar machineToolbar;
     Button runOneTime, runMicroStep, runContinously;
     RadioButton decimalMode, binaryMode, hexMode;
-    TextView memoryDisplay, programCounterDisplay, instructionDisplay, cacheHitRateDisplay;
+    TextView programCounterDisplay, instructionDisplay, cacheHitRateDisplay;
     TextView[] registerDisplays;
-    ScrollView memoryScrollView, registerScrollView;
+    ScrollView registerScrollView;
+    RecyclerView memoryView;
+    MemoryAdapter memoryAdapter;
     private final int FILE_OPEN_REQUEST = 4;
     Uri inputFileUri;
     Uri outputFileUri;
@@ -66,7 +72,7 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
     MachineInterface machineInterface;
     InputStream fileInputStream;
     private boolean gotInputStream = false;
-    private int memorySize = 1000*100;    // Default limit 100 KB
+    private int memorySize = 1000*100;    // Default 100 KB displayed and saved, the rest of memory is allocated when the program uses it
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -92,15 +98,19 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
         machineToolbar = findViewById(R.id.materialToolbar);
 
         // Set textViews
-        memoryDisplay = findViewById(R.id.memoryView);
         programCounterDisplay = findViewById(R.id.programCounterDisplay);
         instructionDisplay = findViewById(R.id.instructionDisplay);
         cacheHitRateDisplay = findViewById(R.id.cacheHitRate);
 
         // Set ScrollViews
-        memoryScrollView = findViewById(R.id.memoryScrollView);
         registerScrollView = findViewById(R.id.registerScrollView);
 
+        // Set the memory rows
+        memoryView = findViewById(R.id.memoryView);
+        memoryView.setLayoutManager(new LinearLayoutManager(this));
+        memoryAdapter = new MemoryAdapter();
+        memoryView.setAdapter(memoryAdapter);
+
         // Inflate the registers
         inflateRegisters();
 
@@ -118,7 +128,7 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
         setSupportActionBar(machineToolbar);
 
         // Create Machine interface
-        machineInterface = new MachineInterface(memoryDisplay, programCounterDisplay, instructionDisplay, registerDisplays, cacheHitRateDisplay, this);
+        machineInterface = new MachineInterface(memoryAdapter, programCounterDisplay, instructionDisplay, registerDisplays, cacheHitRateDisplay, this);
 
         // Get the amount of memory available -> Java heap limit
         ActivityManager activityManager = (ActivityManager) this.getSystemService(ACTIVITY_SERVICE);
@@ -187,7 +197,12 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
 
     // Create Mips Machine method
     private void createMipsMachine() {
-        mipsMachine = new MipsMachine(memorySize, machineInterface, this);
+        InstructionTrace instructionTrace = machineInterface.openInstructionLog();
+        mipsMachine = new MipsMachine(memorySize, machineInterface);
+        mipsMachine.setInstructionTrace(instructionTrace);
+        mipsMachine.setCache(CacheHierarchy.createDefault());    // For the cache hit display
+        mipsMachine.enableHistory(MipsMachine.DEFAULT_CHECKPOINT_INTERVAL);    // For stepping back
+        memoryAdapter.setMachine(mipsMachine);
     }
 
     /**
@@ -195,7 +210,8 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
      */
     @Override
     protected void onDestroy() {
-        mipsMachine.onDestroy();    // Ensure that the file streams are closed
+        mipsMachine.close();    // Ensure that the file streams are closed
+        machineInterface.closeInstructionLog();
         super.onDestroy();
     }
 
@@ -260,7 +276,7 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
         if (item.getItemId() == R.id.fileOpen) {
             // Summon the needed intent
             Intent openFile = new Intent(Intent.ACTION_OPEN_DOCUMENT);
-            openFile.setType("text/*"); // Limit the file selection to text files -> from .txt to .java
+            openFile.setType("*/*");    // Assembly (.s), program images and ELF files are often not text/* to the picker
             startActivityForResult(openFile, FILE_OPEN_REQUEST);
             return true;
         }
@@ -270,6 +286,14 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
             dialogFragment.show(getSupportFragmentManager(), "pc");
             return true;
         }
+        if (item.getItemId() == R.id.reverseStep) {
+            mipsMachine.runPreviousStep();
+            return true;
+        }
+        if (item.getItemId() == R.id.reverseContinue) {
+            mipsMachine.runContinuouslyBackwards();
+            return true;
+        }
         if (item.getItemId() == R.id.machineReset) {
             resetMachine(true);
             return true;
@@ -282,11 +306,11 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
             startActivity(startCredits);
         }
         if (item.getItemId() == R.id.scrollTop) {
-            memoryScrollView.fullScroll(View.FOCUS_UP);
+            memoryView.scrollToPosition(0);
             registerScrollView.fullScroll(View.FOCUS_UP);
         }
         if (item.getItemId() == R.id.scrollBottom) {
-            memoryScrollView.fullScroll(View.FOCUS_DOWN);
+            memoryView.scrollToPosition(Math.max(memoryAdapter.getItemCount() - 1, 0));
             registerScrollView.fullScroll(View.FOCUS_DOWN);
         }
         if (item.getItemId() == R.id.setMemorySize) {
@@ -302,7 +326,7 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
      */
     private void resetMachine(boolean resetMemoryDisplay) {
         if (gotInputStream) {
-            mipsMachine.onDestroy();    // Ensure that the file streams are closed
+            mipsMachine.close();    // Ensure that the file streams are closed
         }
         mipsMachine = null; // Deallocate the object
         System.gc();// Call the garbage collector to clean up mipsMachine
@@ -343,7 +367,7 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
      */
     private void createOutputStream() {
         Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
-        intent.setType("text/*");
+        intent.setType("application/octet-stream");    // States are binary
         intent.addCategory(Intent.CATEGORY_OPENABLE);
         startActivityForResult(intent, Reference.CREATE_OUTPUTSTREAM);
     }
@@ -372,7 +396,7 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
                 outputFileUri = data.getData();
                 try {
                     OutputStream outputStream = getContentResolver().openOutputStream(outputFileUri);
-                    mipsMachine.saveState(outputStream, outputFileUri, this);
+                    saveState(outputStream, outputFileUri);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -382,6 +406,33 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
             super.onActivityResult(requestCode, resultCode, data);
         }
     }
+    /**
+     * Saves the machine state on a new thread and then shares the saved file
+     * @param outputStream The stream to save the state to
+     * @param outputFileUri The Uri of the saved file
+     */
+    private void saveState(OutputStream outputStream, Uri outputFileUri) {
+        Thread thread = new Thread(() -> {
+            try {
+                mipsMachine.saveState(outputStream);
+            } catch (IOException e) {
+                Log.e("saveState", e.getMessage());
+                return;
+            }
+            runOnUiThread(() -> {
+                // Get share screen | Run on UI thread
+                Intent stateShareIntent = new Intent(Intent.ACTION_SEND);
+                stateShareIntent.setType("application/octet-stream");   // Set the type to a binary file
+                stateShareIntent.putExtra(Intent.EXTRA_STREAM, outputFileUri);   // The file Uri
+                stateShareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                // Get the share sheet instead of intent resolver see https://developer.android.com/training/sharing/send
+                stateShareIntent = Intent.createChooser(stateShareIntent, null);
+                startActivity(stateShareIntent);
+            });
+        });
+        thread.start();
+    }
+
     /**
      * Listeners for all radio buttons
      */
@@ -426,7 +477,7 @@ public class MachineActivity extends AppCompatActivity implements ProgramCounter
     @Override
     public void onPositiveClick(DialogFragment dialog, String programCounterValue) {
         try {
-            mipsMachine.setProgramCounter(Integer.parseInt(programCounterValue));
+            mipsMachine.editProgramCounter(Integer.parseInt(programCounterValue));
         } catch (NumberFormatException e) {
             Log.e("SetPC", e.getMessage());
         }
@@ -0,0 +1,104 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.ui;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import io.github.danielt3131.mipsemu.R;
+import io.github.danielt3131.mipsemu.machine.MipsMachine;
+import io.github.danielt3131.mipsemu.machine.NumberFormatter;
+
+/**
+ * The rows of the memory display, one word per row read straight from the machine when the row is shown
+ * <p>
+ * Only the rows on screen are ever formatted, so the cost of a redraw does not depend on the memory size. Every method
+ * has to be called on the UI thread
+ */
+public class MemoryAdapter extends RecyclerView.Adapter<MemoryAdapter.RowHolder> {
+
+    private MipsMachine machine;
+    private int rows; //the row count the RecyclerView was last told about
+
+    /**
+     * Shows the memory of a machine, used when a new machine is created
+     *
+     * @param machine The machine
+     */
+    public void setMachine(MipsMachine machine) {
+        this.machine = machine;
+        rows = rowCount();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Redraws the rows of some bytes if they are on screen
+     *
+     * @param address The first address that changed
+     * @param length The number of bytes that changed
+     */
+    public void memoryChanged(int address, int length) {
+        if (rowCount() != rows) {
+            // A saved state can change the memory size
+            rows = rowCount();
+            notifyDataSetChanged();
+            return;
+        }
+        long first = Integer.toUnsignedLong(address) / 4;
+        long last = Math.min((Integer.toUnsignedLong(address) + length + 3) / 4, rows);
+        if (first < last) {
+            notifyItemRangeChanged((int) first, (int) (last - first));
+        }
+    }
+
+    private int rowCount() {
+        return machine == null ? 0 : (machine.getMemorySize() + 3) / 4;
+    }
+
+    @NonNull
+    @Override
+    public RowHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_memory_row, parent, false);
+        return new RowHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RowHolder holder, int position) {
+        int length = machine.formatMemoryRow(position * 4, holder.buffer);
+        holder.row.setText(holder.buffer, 0, length);
+    }
+
+    @Override
+    public int getItemCount() {
+        return rows;
+    }
+
+    /**
+     * Holds the text of a recycled row and the characters it shows, which are reused when the row is rebound
+     */
+    static class RowHolder extends RecyclerView.ViewHolder {
+        final TextView row;
+        final char[] buffer = new char[NumberFormatter.MAX_ROW_LENGTH];
+
+        RowHolder(View itemView) {
+            super(itemView);
+            row = itemView.findViewById(R.id.memoryRowText);
+        }
+    }
+}
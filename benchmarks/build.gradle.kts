@@ -0,0 +1,31 @@
+plugins {
+    java
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+// The reference programs are loaded as resources
+sourceSets["main"].resources.srcDir(rootProject.file("mips"))
+
+dependencies {
+    implementation(project(":core"))
+    implementation(libs.jmh.core)
+    annotationProcessor(libs.jmh.generator.annprocess)
+}
+
+// Runs the benchmarks and writes the results to build/jmh/results.json so they can be compared between releases
+// Use -PjmhInclude=<regex> to run only some of the benchmarks
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val results = layout.buildDirectory.file("jmh/results.json").get().asFile
+    args(providers.gradleProperty("jmhInclude").getOrElse(".*"), "-rf", "json", "-rff", results.path)
+    doFirst {
+        results.parentFile.mkdirs()
+    }
+}
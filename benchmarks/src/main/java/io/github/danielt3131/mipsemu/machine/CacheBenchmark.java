@@ -0,0 +1,77 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulating a two level hierarchy for a pattern of loads and stores, per access
+ * <p>
+ * The pattern walks a working set with a stride and stores to every eighth address. The small working set fits in
+ * the first level, the large one only in the second and the huge one in neither
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    private static final int ACCESSES = 4096;
+
+    @Param({"LRU", "PLRU", "RANDOM"})
+    public CacheConfig.Replacement replacement;
+
+    @Param({"WRITE_BACK", "WRITE_THROUGH"})
+    public CacheConfig.WritePolicy writePolicy;
+
+    @Param({"512", "8192", "262144"})
+    public int workingSet;
+
+    private CacheHierarchy cache;
+    private final int[] addresses = new int[ACCESSES];
+
+    @Setup
+    public void setup() {
+        cache = new CacheHierarchy(
+                new CacheConfig("L1", 1024, 16, 4, replacement, writePolicy),
+                new CacheConfig("L2", 16 * 1024, 64, 8, replacement, CacheConfig.WritePolicy.WRITE_BACK));
+        for (int i = 0; i < ACCESSES; i++) {
+            addresses[i] = (i * 36) & (workingSet - 4);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public long access() {
+        for (int i = 0; i < ACCESSES; i++) {
+            cache.access(addresses[i], (i & 7) == 0);
+        }
+        return cache.getAccesses();
+    }
+}
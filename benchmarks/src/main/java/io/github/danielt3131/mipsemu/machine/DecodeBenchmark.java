@@ -0,0 +1,66 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the instructions of the for loop program, from the raw words and through the decode cache
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    private MipsMachine machine;
+    private int[] words;
+
+    @Setup
+    public void setup() {
+        machine = Programs.load(Programs.read(Programs.FOR_LOOP));
+        words = new int[7];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = machine.loadWord(i * 4);
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        for (int word : words) {
+            blackhole.consume(new DecodedInstruction(word));
+        }
+    }
+
+    @Benchmark
+    public void decodeCached(Blackhole blackhole) {
+        for (int i = 0; i < words.length; i++) {
+            blackhole.consume(machine.decodeAt(i * 4));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One instruction of each class, run through the narrated micro steps of runNextStep() and through the handler the
+ * fast engine uses
+ * <p>
+ * Every instruction is the only one in its program and the program counter is put back to 0 before it runs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstructionBenchmark {
+
+    @Param({"add", "sll", "slt", "addi", "mult", "mflo", "lw", "sw", "beq", "j"})
+    public String instruction;
+
+    private MipsMachine machine;
+    private DecodedInstruction decoded;
+
+    @Setup
+    public void setup() {
+        machine = Programs.load(Programs.program(encode(instruction)));
+        machine.register[8] = 7;
+        machine.register[9] = 3;
+        decoded = machine.decodeAt(0);
+    }
+
+    private static int encode(String instruction) {
+        switch (instruction) {
+            case "add":
+                return Programs.rType(0b100000, 8, 9, 10, 0);
+            case "sll":
+                return Programs.rType(0b000000, 0, 9, 10, 2);
+            case "slt":
+                return Programs.rType(0b101010, 8, 9, 10, 0);
+            case "addi":
+                return Programs.iType(0b001000, 8, 10, 5);
+            case "mult":
+                return Programs.rType(0b011000, 8, 9, 0, 0);
+            case "mflo":
+                return Programs.rType(0b010010, 0, 0, 10, 0);
+            case "lw":
+                return Programs.iType(0b100011, 0, 10, -8);
+            case "sw":
+                return Programs.iType(0b101011, 0, 9, -8);
+            case "beq":
+                return Programs.iType(0b000100, 8, 8, 0);
+            case "j":
+                return Programs.jType(0b000010, 0);
+            default:
+                throw new IllegalArgumentException(instruction);
+        }
+    }
+
+    @Benchmark
+    public int microSteps() {
+        machine.pc = 0;
+        machine.runNextStep();
+        return machine.pc;
+    }
+
+    @Benchmark
+    public int execute() {
+        machine.pc = 0;
+        decoded.handler.execute(machine, decoded);
+        return machine.pc;
+    }
+}
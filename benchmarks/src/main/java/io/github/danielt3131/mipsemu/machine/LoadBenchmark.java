@@ -0,0 +1,68 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a program through readFile() into a new machine, either the for loop or a generated image of about 6 MB
+ * of program text
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"for_loop", "image"})
+    public String program;
+
+    private byte[] contents;
+
+    @Setup
+    public void setup() {
+        if (program.equals("image")) {
+            // 128 K lines of one word, about 6 MB of text for 512 KB of memory
+            int[] words = new int[128 * 1024];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = i * 0x9E3779B9;
+            }
+            contents = Programs.program(words);
+        } else {
+            contents = Programs.read(Programs.FOR_LOOP);
+        }
+    }
+
+    @Benchmark
+    public MipsMachine readFile() {
+        MipsMachine machine = new MipsMachine(Programs.MEMORY_SIZE);
+        machine.load(new ByteArrayInputStream(contents));
+        return machine;
+    }
+}
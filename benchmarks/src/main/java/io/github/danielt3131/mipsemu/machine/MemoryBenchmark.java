@@ -0,0 +1,75 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Word and byte accesses through getFromMemory and sendToMemory, on the stack where no block has been translated,
+ * with and without the default cache hierarchy being simulated
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark {
+
+    @Param({"none", "default"})
+    public String cache;
+
+    private MipsMachine machine;
+    private int address;
+    private int value;
+
+    @Setup
+    public void setup() {
+        machine = Programs.load(Programs.read(Programs.FOR_LOOP));
+        address = Programs.MEMORY_SIZE - 64;
+        machine.setCache(cache.equals("none") ? null : CacheHierarchy.createDefault());
+    }
+
+    @Benchmark
+    public int loadWord() {
+        return machine.loadWord(address);
+    }
+
+    @Benchmark
+    public void storeWord() {
+        machine.storeWord(address, value++);
+    }
+
+    @Benchmark
+    public byte getFromMemory() {
+        return machine.getFromMemory(address);
+    }
+
+    @Benchmark
+    public void sendToMemory() {
+        machine.sendToMemory(address, (byte) value++);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running a whole reference program, one step at a time like the step button, on the fast engine and on the fast
+ * engine with the block compiler
+ * <p>
+ * The registers and program counter are reset before every run, so blocks stay translated (and compiled) between
+ * runs like they do in a long running program. The reference programs do not store into memory
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramBenchmark {
+
+    @Param({Programs.FOR_LOOP})
+    public String program;
+
+    @Param({"steps", "blocks", "compiled"})
+    public String engine;
+
+    private MipsMachine machine;
+    private long instructions;
+
+    @Setup
+    public void setup() {
+        byte[] contents = Programs.read(program);
+        instructions = Programs.load(contents).run(Long.MAX_VALUE);
+        machine = Programs.load(contents);
+        machine.fastEngine.setCompileThreshold(engine.equals("compiled") ? FastEngine.DEFAULT_COMPILE_THRESHOLD : 0);
+    }
+
+    private void reset() {
+        Arrays.fill(machine.register, 0);
+        machine.register[29] = Programs.MEMORY_SIZE - 4;
+        machine.pc = 0;
+    }
+
+    @Benchmark
+    public int run() {
+        reset();
+        if (engine.equals("steps")) {
+            // The machine never sees the 0 at the end so it can keep stepping through the program
+            for (long i = 0; i < instructions; i++) {
+                machine.runNextStep();
+            }
+        } else {
+            machine.run(Long.MAX_VALUE);
+        }
+        return machine.pc;
+    }
+}
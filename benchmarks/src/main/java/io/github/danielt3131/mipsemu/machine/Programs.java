@@ -0,0 +1,96 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Programs and machines shared by the benchmarks
+ * <p>
+ * The reference programs in the mips directory are on the classpath, single instruction programs are encoded here
+ */
+final class Programs {
+
+    static final String FOR_LOOP = "for loop.txt";
+    static final int MEMORY_SIZE = 1000 * 100;  // Same default as the app, 100 KB
+
+    private Programs() {
+    }
+
+    /**
+     * Reads a reference program
+     *
+     * @param name The file name in the mips directory
+     * @return The contents of the file
+     */
+    static byte[] read(String name) {
+        try (InputStream inputStream = Programs.class.getResourceAsStream("/" + name)) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("No reference program " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a headless machine with a program loaded
+     *
+     * @param program The program in the format read by {@link ProgramLoader}
+     * @return The machine
+     */
+    static MipsMachine load(byte[] program) {
+        MipsMachine machine = new MipsMachine(MEMORY_SIZE);
+        machine.load(new ByteArrayInputStream(program));
+        return machine;
+    }
+
+    /**
+     * Writes instruction words as a program starting at address 0
+     *
+     * @param words The instruction words
+     * @return The program in the format read by {@link ProgramLoader}
+     */
+    static byte[] program(int... words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words.length; i++) {
+            String bits = String.format("%32s", Integer.toBinaryString(words[i])).replace(' ', '0');
+            text.append(String.format("0x%x: ", i * 4)).append(bits).append('\n');
+        }
+        return text.toString().getBytes();
+    }
+
+    static int rType(int funct, int rs, int rt, int rd, int shamt) {
+        return rs << 21 | rt << 16 | rd << 11 | shamt << 6 | funct;
+    }
+
+    static int iType(int opcode, int rs, int rt, int immediate) {
+        return opcode << 26 | rs << 21 | rt << 16 | (immediate & 0xFFFF);
+    }
+
+    static int jType(int opcode, int target) {
+        return opcode << 26 | target;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and restoring the state of the machine after the for loop program ran, through {@link StateManager} with and
+ * without deflating the memory
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+
+    @Param({"true", "false"})
+    public boolean compress;
+
+    private MipsMachine machine;
+    private byte[] state;
+
+    @Setup
+    public void setup() throws IOException {
+        machine = Programs.load(Programs.read(Programs.FOR_LOOP));
+        machine.run(Long.MAX_VALUE);
+        state = save();
+    }
+
+    @Benchmark
+    public byte[] save() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StateManager.save(machine, out, compress);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public MipsMachine restore() {
+        MipsMachine restored = new MipsMachine(Programs.MEMORY_SIZE);
+        restored.load(new ByteArrayInputStream(state));
+        return restored;
+    }
+}
@@ -0,0 +1,44 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+application {
+    mainClass.set("io.github.danielt3131.mipsemu.cli.BatchRunner")
+}
+
+dependencies {
+    implementation(project(":core"))
+}
+
+// More start scripts next to the batch runner in the distribution
+val traceAnalyzerScripts by tasks.registering(CreateStartScripts::class) {
+    mainClass.set("io.github.danielt3131.mipsemu.cli.TraceAnalyzer")
+    applicationName = "TraceAnalyzer"
+    outputDir = layout.buildDirectory.dir("traceAnalyzerScripts").get().asFile
+    classpath = tasks.named<CreateStartScripts>("startScripts").get().classpath
+}
+
+val imageConverterScripts by tasks.registering(CreateStartScripts::class) {
+    mainClass.set("io.github.danielt3131.mipsemu.cli.ImageConverter")
+    applicationName = "ImageConverter"
+    outputDir = layout.buildDirectory.dir("imageConverterScripts").get().asFile
+    classpath = tasks.named<CreateStartScripts>("startScripts").get().classpath
+}
+
+distributions {
+    main {
+        contents {
+            from(traceAnalyzerScripts) {
+                into("bin")
+            }
+            from(imageConverterScripts) {
+                into("bin")
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.github.danielt3131.mipsemu.Reference;
+import io.github.danielt3131.mipsemu.machine.ElfLoader;
+import io.github.danielt3131.mipsemu.machine.MipsMachine;
+import io.github.danielt3131.mipsemu.machine.ProgramImage;
+import io.github.danielt3131.mipsemu.machine.ProgramLoader;
+
+/**
+ * Runs every program in a directory without the Android UI, one {@link MipsMachine} per program spread over all cores
+ * <p>
+ * The programs use the text format of {@link ProgramLoader} or are {@link ProgramImage} files or MIPS ELF executables,
+ * which are memory mapped. One tab separated line is printed per program
+ * in file name order with the status, program counter, instruction count, wall time and final registers
+ */
+public class BatchRunner {
+
+    private static final String USAGE = "Usage: BatchRunner <directory> [--threads n] [--memory bytes] [--max-instructions n]";
+
+    private final int memorySize;
+    private final long maxInstructions;
+
+    /**
+     * Constructor for the batch runner
+     *
+     * @param memorySize The memory of every machine in bytes
+     * @param maxInstructions The number of instructions after which a program is stopped
+     */
+    public BatchRunner(int memorySize, long maxInstructions) {
+        this.memorySize = memorySize;
+        this.maxInstructions = maxInstructions;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        File directory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int memorySize = 1000 * 100;    // Same default as the app, 100 KB
+        long maxInstructions = 100_000_000L;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--memory")) {
+                    memorySize = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--max-instructions")) {
+                    maxInstructions = Long.parseLong(args[++i]);
+                } else if (directory == null) {
+                    directory = new File(args[i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (directory == null || !directory.isDirectory()) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        File[] programs = directory.listFiles(file -> file.isFile() && !file.isHidden());
+        Arrays.sort(programs);
+        long start = System.nanoTime();
+        List<Result> results = new BatchRunner(memorySize, maxInstructions).runAll(programs, threads);
+        long wallTime = System.nanoTime() - start;
+
+        printHeader(System.out);
+        long instructions = 0;
+        for (Result result : results) {
+            result.print(System.out);
+            instructions += result.instructions;
+        }
+        System.err.printf("%d programs, %d instructions in %.1f ms on %d threads%n", results.size(), instructions, wallTime / 1e6, threads);
+    }
+
+    /**
+     * Runs the programs concurrently
+     *
+     * @param programs The program files
+     * @param threads The number of programs to run at the same time
+     * @return The results in the same order as the programs
+     */
+    public List<Result> runAll(File[] programs, int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (File program : programs) {
+                futures.add(executor.submit(() -> run(program)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Loads and runs one program on its own machine
+     *
+     * @param program The program file
+     * @return The result, with an error status if the program could not be loaded or crashed the machine
+     */
+    public Result run(File program) {
+        Result result = new Result(program.getName());
+        long start = System.nanoTime();
+        MipsMachine machine = new MipsMachine(memorySize);
+        try {
+            if (ProgramImage.isImage(program)) {
+                machine.loadImage(program);
+            } else if (ElfLoader.isElf(program)) {
+                machine.loadElf(program);
+            } else {
+                try (InputStream inputStream = new FileInputStream(program)) {
+                    machine.load(inputStream);
+                }
+            }
+            result.instructions = machine.run(maxInstructions);
+            result.status = machine.isFinished() ? "halted" : result.instructions >= maxInstructions ? "limit" : "stopped";
+        } catch (IOException | RuntimeException e) {
+            result.status = "error: " + e;
+        }
+        result.nanos = System.nanoTime() - start;
+        result.pc = machine.getProgramCounter();
+        for (int i = 0; i < result.registers.length; i++) {
+            result.registers[i] = machine.getRegister(i);
+        }
+        return result;
+    }
+
+    private static void printHeader(PrintStream out) {
+        out.print("program\tstatus\tpc\tinstructions\ttime_ms");
+        for (String name : Reference.registerNames) {
+            out.print('\t');
+            out.print(name);
+        }
+        out.println();
+    }
+
+    /**
+     * The final state of one program
+     */
+    public static class Result {
+        final String program;
+        String status;
+        int pc;
+        long instructions;
+        long nanos;
+        final int[] registers = new int[32];
+
+        Result(String program) {
+            this.program = program;
+        }
+
+        void print(PrintStream out) {
+            StringBuilder line = new StringBuilder();
+            line.append(program).append('\t').append(status).append('\t').append(pc).append('\t')
+                    .append(instructions).append('\t').append(String.format("%.3f", nanos / 1e6));
+            for (int value : registers) {
+                line.append('\t').append(value);
+            }
+            out.println(line);
+        }
+    }
+}
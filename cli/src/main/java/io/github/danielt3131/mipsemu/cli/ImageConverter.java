@@ -0,0 +1,119 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import io.github.danielt3131.mipsemu.machine.ProgramImage;
+import io.github.danielt3131.mipsemu.machine.ProgramLoader;
+
+/**
+ * Converts programs in the text format of {@link ProgramLoader} into {@link ProgramImage} files once, so a corpus can
+ * then be loaded by memory mapping instead of parsing
+ * <p>
+ * Either one program is converted into one image, or every file in a directory is converted into an image with the
+ * same name and the .img extension in the output directory
+ */
+public class ImageConverter {
+
+    private static final String USAGE = "Usage: ImageConverter <program or directory> <image or directory>"
+            + " [--entry address] [--sp address] [--gp address]";
+
+    public static void main(String[] args) {
+        File input = null;
+        File output = null;
+        int entry = 0;
+        int sp = 0;
+        int gp = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--entry")) {
+                    entry = Integer.decode(args[++i]);
+                } else if (args[i].equals("--sp")) {
+                    sp = Integer.decode(args[++i]);
+                } else if (args[i].equals("--gp")) {
+                    gp = Integer.decode(args[++i]);
+                } else if (input == null) {
+                    input = new File(args[i]);
+                } else if (output == null) {
+                    output = new File(args[i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (input == null || output == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        boolean failed = false;
+        int converted = 0;
+        if (input.isDirectory()) {
+            File[] programs = input.listFiles(file -> file.isFile() && !file.isHidden());
+            Arrays.sort(programs);
+            if (!output.isDirectory() && !output.mkdirs()) {
+                System.err.println("Cannot create " + output);
+                System.exit(1);
+            }
+            for (File program : programs) {
+                String name = program.getName();
+                int dot = name.lastIndexOf('.');
+                File image = new File(output, (dot > 0 ? name.substring(0, dot) : name) + ".img");
+                if (convert(program, image, entry, sp, gp)) {
+                    converted++;
+                } else {
+                    failed = true;
+                }
+            }
+        } else if (convert(input, output, entry, sp, gp)) {
+            converted++;
+        } else {
+            failed = true;
+        }
+        System.err.printf("%d programs converted in %.1f ms%n", converted, (System.nanoTime() - start) / 1e6);
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Converts one program, printing why if it cannot
+     *
+     * @return If the image was written
+     */
+    private static boolean convert(File program, File image, int entry, int sp, int gp) {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(program), ProgramLoader.BUFFER_SIZE);
+             OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(image), ProgramLoader.BUFFER_SIZE)) {
+            ProgramImage.convert(inputStream, outputStream, entry, sp, gp);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println(program + ": " + e.getMessage());
+            image.delete();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import io.github.danielt3131.mipsemu.machine.AddressTrace;
+import io.github.danielt3131.mipsemu.machine.CacheSweep;
+import io.github.danielt3131.mipsemu.machine.MipsMachine;
+import io.github.danielt3131.mipsemu.machine.ProgramLoader;
+
+/**
+ * Sizes caches for a program by recording its address trace once and sweeping many LRU cache configurations over it
+ * with {@link CacheSweep}
+ * <p>
+ * The input is either a program, which is run headless to record the trace, or a trace saved with --save. One tab
+ * separated line is printed per configuration
+ */
+public class TraceAnalyzer {
+
+    private static final String USAGE = "Usage: TraceAnalyzer <program or trace> [--save trace] [--line-sizes a,b,..]"
+            + " [--sets a,b,..] [--max-ways n] [--threads n] [--memory bytes] [--max-instructions n]";
+
+    public static void main(String[] args) throws IOException {
+        String input = null;
+        String save = null;
+        int[] lineSizes = {16, 32, 64};
+        int[] setCounts = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096};
+        int maxWays = 16;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int memorySize = 1000 * 100;    // Same default as the app, 100 KB
+        long maxInstructions = 100_000_000L;
+        CacheSweep sweep = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--save")) {
+                    save = args[++i];
+                } else if (args[i].equals("--line-sizes")) {
+                    lineSizes = parseList(args[++i]);
+                } else if (args[i].equals("--sets")) {
+                    setCounts = parseList(args[++i]);
+                } else if (args[i].equals("--max-ways")) {
+                    maxWays = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--memory")) {
+                    memorySize = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--max-instructions")) {
+                    maxInstructions = Long.parseLong(args[++i]);
+                } else if (input == null) {
+                    input = args[i];
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+            sweep = new CacheSweep(lineSizes, setCounts, maxWays);
+        } catch (RuntimeException e) {
+            System.err.println(USAGE);
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        if (input == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        AddressTrace trace;
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(input))) {
+            if (AddressTrace.isTrace(inputStream)) {
+                trace = AddressTrace.readFrom(inputStream);
+            } else {
+                trace = record(inputStream, memorySize, maxInstructions);
+            }
+        }
+        long traced = System.nanoTime();
+        System.err.printf("%d accesses in %d bytes, %.1f ms%n", trace.size(), trace.byteSize(), (traced - start) / 1e6);
+        if (save != null) {
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(save))) {
+                trace.writeTo(outputStream);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<CacheSweep.Result> results;
+        try {
+            results = sweep.run(trace, pool);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("size\tline_size\tsets\tways\thits\tmisses\thit_rate");
+        for (CacheSweep.Result result : results) {
+            System.out.printf("%d\t%d\t%d\t%d\t%d\t%d\t%.4f%n", result.size(), result.lineSize, result.sets,
+                    result.associativity, result.hits, result.misses, result.hitRate());
+        }
+        System.err.printf("%d configurations in %.1f ms on %d threads%n", results.size(),
+                (System.nanoTime() - traced) / 1e6, threads);
+    }
+
+    /**
+     * Runs a program headless while recording its loads and stores
+     *
+     * @param program The program in the same format as {@link ProgramLoader}
+     * @return The trace
+     */
+    private static AddressTrace record(InputStream program, int memorySize, long maxInstructions) {
+        MipsMachine machine = new MipsMachine(memorySize);
+        AddressTrace trace = new AddressTrace();
+        machine.load(program);
+        machine.setTrace(trace);
+        machine.run(maxInstructions);
+        if (!machine.isFinished()) {
+            System.err.println("Program did not halt, the trace stops after " + maxInstructions + " instructions");
+        }
+        return trace;
+    }
+
+    private static int[] parseList(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.danielt3131.mipsemu;
+
+public class Reference {
+    public static final int HEX_MODE = 1;
+    public static final int BINARY_MODE = 0;
+    public static final int DECIMIAL_MODE = 2;
+    public static final int CREATE_OUTPUTSTREAM = 24;
+
+    //  Registers, numbered as in the MIPS calling convention the assembler uses
+    public static final int REGISTER_ZERO = 0;
+    public static final int REGISTER_AT = 1;
+
+    public static final int REGISTER_V0 = 2;
+    public static final int REGISTER_V1 = 3;
+
+    public static final int REGISTER_A0 = 4;
+    public static final int REGISTER_A1 = 5;
+    public static final int REGISTER_A2 = 6;
+    public static final int REGISTER_A3 = 7;
+
+    public static final int REGISTER_T0 = 8;
+    public static final int REGISTER_T1 = 9;
+    public static final int REGISTER_T2 = 10;
+    public static final int REGISTER_T3 = 11;
+    public static final int REGISTER_T4 = 12;
+    public static final int REGISTER_T5 = 13;
+    public static final int REGISTER_T6 = 14;
+    public static final int REGISTER_T7 = 15;
+
+    public static final int REGISTER_S0 = 16;
+    public static final int REGISTER_S1 = 17;
+    public static final int REGISTER_S2 = 18;
+    public static final int REGISTER_S3 = 19;
+    public static final int REGISTER_S4 = 20;
+    public static final int REGISTER_S5 = 21;
+    public static final int REGISTER_S6 = 22;
+    public static final int REGISTER_S7 = 23;
+
+    public static final int REGISTER_T8 = 24;
+    public static final int REGISTER_T9 = 25;
+
+    public static final int REGISTER_K0 = 26;
+    public static final int REGISTER_K1 = 27;
+
+    public static final int REGISTER_GP = 28;
+    public static final int REGISTER_SP = 29;
+    public static final int REGISTER_FP = 30;
+    public static final int REGISTER_RA = 31;
+
+    // The name of each register index to the corresponding spot
+    public static final String[] registerNames = {"$zero", "$at", "$v0", "$v1", "$a0", "$a1", "$a2", "$a3", "$t0", "$t1",
+            "$t2", "$t3", "$t4", "$t5", "$t6", "$t7", "$s0", "$s1", "$s2", "$s3", "$s4", "$s5", "$s6", "$s7", "$t8", "$t9",
+            "$k0", "$k1", "$gp", "$sp", "$fp", "$ra"};
+
+}
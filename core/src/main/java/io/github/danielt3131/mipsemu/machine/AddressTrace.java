@@ -0,0 +1,233 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact record of the loads and stores a program made, in order
+ * <p>
+ * Every access is stored as a varint of the zigzag encoded distance from the previous address with the store flag in
+ * the lowest bit, so the usual small strides take one or two bytes. The bytes are kept in 1 MB chunks so a long trace
+ * never has to be copied to grow
+ * <p>
+ * The file format is the magic MTRC, a version int, the access count and byte count as longs and then the bytes
+ */
+public class AddressTrace {
+
+    private static final int MAGIC = 0x4D545243; //MTRC
+    private static final int VERSION = 1;
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] chunk;
+    private int position = CHUNK_SIZE; //in the current chunk, full so the first record adds a chunk
+    private long byteCount;
+    private long count;
+    private int previous;
+
+    /**
+     * Appends an access
+     *
+     * @param address The address of the first byte
+     * @param write If it is a store
+     */
+    public void record(int address, boolean write) {
+        int delta = address - previous;
+        previous = address;
+        long value = ((long) ((delta << 1) ^ (delta >> 31)) & 0xFFFFFFFFL) << 1 | (write ? 1 : 0);
+        while ((value & ~0x7FL) != 0) {
+            put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        put((byte) value);
+        count++;
+    }
+
+    private void put(byte b) {
+        if (position == CHUNK_SIZE) {
+            chunk = new byte[CHUNK_SIZE];
+            chunks.add(chunk);
+            position = 0;
+        }
+        chunk[position++] = b;
+        byteCount++;
+    }
+
+    /**
+     * Gets the number of accesses
+     *
+     * @return The count
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Gets the size of the encoded trace
+     *
+     * @return The number of bytes
+     */
+    public long byteSize() {
+        return byteCount;
+    }
+
+    /**
+     * Creates a reader that starts at the first access, any number of readers can walk the trace at the same time as
+     * long as nothing is recorded
+     *
+     * @return The reader
+     */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * Writes the trace in the trace file format
+     *
+     * @param outputStream Where to write, it is not closed
+     * @throws IOException If writing fails
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(count);
+        out.writeLong(byteCount);
+        long remaining = byteCount;
+        for (byte[] bytes : chunks) {
+            int length = (int) Math.min(remaining, CHUNK_SIZE);
+            out.write(bytes, 0, length);
+            remaining -= length;
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a trace written by {@link #writeTo(OutputStream)}
+     *
+     * @param inputStream Where to read from, it is not closed
+     * @return The trace
+     * @throws IOException If reading fails or the stream is not a trace
+     */
+    public static AddressTrace readFrom(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an address trace");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported address trace version " + version);
+        }
+        AddressTrace trace = new AddressTrace();
+        trace.count = in.readLong();
+        long remaining = in.readLong();
+        trace.byteCount = remaining;
+        while (remaining > 0) {
+            trace.chunk = new byte[CHUNK_SIZE];
+            trace.position = (int) Math.min(remaining, CHUNK_SIZE);
+            in.readFully(trace.chunk, 0, trace.position);
+            trace.chunks.add(trace.chunk);
+            remaining -= trace.position;
+        }
+        // Find the last address so more accesses can be recorded
+        Reader reader = trace.reader();
+        while (reader.next()) {
+            trace.previous = reader.address();
+        }
+        return trace;
+    }
+
+    /**
+     * Tells if a stream starts like a trace file, without consuming it
+     *
+     * @param inputStream A stream that supports mark and reset
+     * @return If the stream starts with the magic
+     * @throws IOException If reading fails
+     */
+    public static boolean isTrace(InputStream inputStream) throws IOException {
+        inputStream.mark(4);
+        try {
+            return new DataInputStream(inputStream).readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    /**
+     * Walks the accesses of a trace in order
+     */
+    public final class Reader {
+
+        private long remaining = count;
+        private int chunkIndex = -1;
+        private byte[] bytes;
+        private int offset = CHUNK_SIZE;
+        private int address;
+        private boolean write;
+
+        private Reader() {
+        }
+
+        /**
+         * Moves to the next access
+         *
+         * @return False if there are no more
+         */
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (offset == CHUNK_SIZE) {
+                    bytes = chunks.get(++chunkIndex);
+                    offset = 0;
+                }
+                b = bytes[offset++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            write = (value & 1) != 0;
+            int zigzag = (int) (value >>> 1);
+            address += (zigzag >>> 1) ^ -(zigzag & 1);
+            return true;
+        }
+
+        /**
+         * @return The address of the current access
+         */
+        public int address() {
+            return address;
+        }
+
+        /**
+         * @return If the current access is a store
+         */
+        public boolean isWrite() {
+            return write;
+        }
+    }
+}
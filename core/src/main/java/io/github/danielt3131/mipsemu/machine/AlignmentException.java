@@ -0,0 +1,48 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * Thrown when a word or half word is accessed at an address that is not a multiple of its size, the address error
+ * exception of a real MIPS processor
+ * <p>
+ * The program counter is left at the instruction that caused it
+ */
+public class AlignmentException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int address;
+    private final int size;
+
+    /**
+     * Constructor for the alignment exception
+     *
+     * @param address The address that was accessed
+     * @param size The size of the access in bytes
+     */
+    public AlignmentException(int address, int size) {
+        super(String.format("Unaligned %d byte access at 0x%08x", size, address));
+        this.address = address;
+        this.size = size;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
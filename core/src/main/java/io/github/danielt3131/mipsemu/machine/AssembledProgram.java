@@ -0,0 +1,117 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The memory image made by {@link Assembler}, one segment of bytes per run of a section and the symbol table
+ */
+public class AssembledProgram {
+
+    private final int entry;
+    private final int[] addresses;
+    private final byte[][] segments;
+    private final Map<String, Integer> symbols;
+    private final int lineCount;
+    private final int encodedLines;
+
+    AssembledProgram(int entry, int[] addresses, byte[][] segments, Map<String, Integer> symbols, int lineCount,
+                     int encodedLines) {
+        this.entry = entry;
+        this.addresses = addresses;
+        this.segments = segments;
+        this.symbols = Collections.unmodifiableMap(symbols);
+        this.lineCount = lineCount;
+        this.encodedLines = encodedLines;
+    }
+
+    /**
+     * Copies the segments into the memory of a machine and sets the program counter to the entry
+     *
+     * @param machine The machine
+     */
+    public void load(MipsMachine machine) {
+        for (int i = 0; i < segments.length; i++) {
+            machine.memory.write(addresses[i], ByteBuffer.wrap(segments[i]));
+            machine.invalidateCode(addresses[i], segments[i].length);
+        }
+        machine.pc = entry;
+    }
+
+    /**
+     * Writes the program as a {@link ProgramImage}
+     *
+     * @param out Where to write, it is not closed
+     * @throws IOException If writing fails
+     */
+    public void writeImage(OutputStream out) throws IOException {
+        ProgramImage.write(out, entry, 0, 0, addresses, segments);
+    }
+
+    /**
+     * @return The address of the main label, or of the first text if there is none
+     */
+    public int getEntry() {
+        return entry;
+    }
+
+    /**
+     * @return The number of segments
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * @param index The segment, in address order
+     * @return The address of its first byte
+     */
+    public int getSegmentAddress(int index) {
+        return addresses[index];
+    }
+
+    /**
+     * @param index The segment, in address order
+     * @return A copy of its bytes
+     */
+    public byte[] getSegment(int index) {
+        return segments[index].clone();
+    }
+
+    /**
+     * @return Every label with its address
+     */
+    public Map<String, Integer> getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return The number of lines in the source
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return The number of lines that had to be encoded, the rest were reused from the last assembly
+     */
+    public int getEncodedLines() {
+        return encodedLines;
+    }
+}
@@ -0,0 +1,770 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.github.danielt3131.mipsemu.Reference;
+
+/**
+ * A two pass assembler from MIPS assembly source to an {@link AssembledProgram}
+ * <p>
+ * The first pass lays out every line in its section and fills the symbol table, the second encodes the lines. An
+ * assembler remembers the lines of its last assembly, so assembling an edited source again only parses the lines
+ * whose text changed and only encodes the lines that are new or whose encoding depends on something that moved: the
+ * address of a label for most lines, the distance to it for branches and nothing for register only instructions
+ * <p>
+ * The instructions are the ones {@link InstructionSet} has, with the registers written by number ($8) or by their
+ * MIPS ABI name ($t0, $sp is 29 and $ra is 31). lw and sw always address from $sp on this machine, so their base can
+ * only be $sp or left out, and branches are relative to the branch itself. The directives are .text and .data with an
+ * optional address, .word, .space, .align and .globl, and the pseudo instructions are li, la, move, neg, b, beqz,
+ * bnez, blt, bgt, ble, bge and halt, which is the zero word that stops the machine. Comments start with #
+ */
+public class Assembler {
+
+    public static final int TEXT_START = 0; //where the machine starts running
+    public static final int DATA_START = 0x10000; //64 KB, room for 16 K instructions before it
+
+    private static final int AT = Reference.REGISTER_AT; //used by the pseudo instructions that need a scratch register
+    private static final int SP = Reference.REGISTER_SP;
+    private static final Map<String, Integer> REGISTERS = new HashMap<>();
+    private static final Map<String, Spec> INSTRUCTIONS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < 32; i++) {
+            REGISTERS.put(Reference.registerNames[i].substring(1), i);  // The display names without the $
+            REGISTERS.put(Integer.toString(i), i);
+        }
+        REGISTERS.put("s8", 30);
+
+        register(Format.RD_RS_RT, 0, 0b100000, "add");
+        register(Format.RD_RS_RT, 0, 0b100001, "addu");
+        register(Format.RD_RS_RT, 0, 0b100010, "sub");
+        register(Format.RD_RS_RT, 0, 0b100011, "subu");
+        register(Format.RD_RS_RT, 0, 0b100100, "and");
+        register(Format.RD_RS_RT, 0, 0b100101, "or");
+        register(Format.RD_RS_RT, 0, 0b100110, "xor");
+        register(Format.RD_RS_RT, 0, 0b101010, "slt");
+        register(Format.RD_RS_RT, 0, 0b101011, "sltu");
+        register(Format.RD_RT_SHAMT, 0, 0b000000, "sll");
+        register(Format.RD_RT_SHAMT, 0, 0b000010, "srl");
+        register(Format.RD_RT_SHAMT, 0, 0b000011, "sra");
+        register(Format.RD_RS, 0, 0b100111, "not");
+        register(Format.RS_RT, 0, 0b011000, "mult");
+        register(Format.RD, 0, 0b010000, "mfhi");
+        register(Format.RD, 0, 0b010010, "mflo");
+        register(Format.RS, 0, 0b001000, "jr");
+        register(Format.RT_RS_SIGNED, 0b001000, 0, "addi");
+        register(Format.RT_RS_SIGNED, 0b001001, 0, "addiu");
+        register(Format.RT_RS_SIGNED, 0b001010, 0, "slti");
+        register(Format.RT_RS_SIGNED, 0b001011, 0, "sltiu");
+        register(Format.RT_RS_UNSIGNED, 0b001100, 0, "andi");
+        register(Format.RT_RS_UNSIGNED, 0b001101, 0, "ori");
+        register(Format.RT_RS_UNSIGNED, 0b001110, 0, "xori");
+        register(Format.RT_UNSIGNED, 0b001111, 0, "lui");
+        register(Format.RT_MEMORY, 0b100011, 0, "lw");
+        register(Format.RT_MEMORY, 0b101011, 0, "sw");
+        register(Format.TARGET, 0b000010, 0, "j");
+        register(Format.TARGET, 0b000011, 0, "jal");
+        register(Format.RS_RT_LABEL, 0b000100, 0, "beq");
+        register(Format.RS_RT_LABEL, 0b000101, 0, "bne");
+        register(Format.RS_LABEL, 0b000110, 0, "blez");
+        register(Format.RS_LABEL, 0b000001, 0, "bgtz");
+    }
+
+    /**
+     * Adds a real instruction, checking it against the handler the machine has for it
+     */
+    private static void register(Format format, int opcode, int funct, String name) {
+        InstructionHandler handler = InstructionSet.lookup(opcode, funct);
+        if (handler == null || !handler.getName().equals(name)) {
+            throw new IllegalStateException("The instruction set has no " + name);
+        }
+        INSTRUCTIONS.put(name, new Spec(format, opcode, funct));
+    }
+
+    private Line[] lines = new Line[0]; //the lines of the last assembly, reused when their text comes back
+
+    /**
+     * Assembles a whole source, reusing what it can from the last source this assembler assembled
+     *
+     * @param source The assembly source
+     * @return The program
+     * @throws AssemblyException If a line cannot be assembled, the state of the last assembly is kept
+     */
+    public AssembledProgram assemble(CharSequence source) {
+        // Match every line to an unused old line with the same text to keep its parse and encoding
+        Map<String, ArrayDeque<Line>> old = new HashMap<>();
+        for (Line line : lines) {
+            old.computeIfAbsent(line.text, text -> new ArrayDeque<>()).add(line);
+        }
+        List<Line> current = new ArrayList<>();
+        int length = source.length();
+        for (int start = 0, number = 1; start <= length; number++) {
+            int end = start;
+            while (end < length && source.charAt(end) != '\n') {
+                end++;
+            }
+            String text = source.subSequence(start, end).toString();
+            ArrayDeque<Line> same = old.get(text);
+            Line previous = same == null ? null : same.poll();
+            current.add(previous != null ? previous.reuse(number) : new Line(text, number, parse(text, number)));
+            start = end + 1;
+        }
+        Line[] next = current.toArray(new Line[0]);
+
+        // Pass 1, lay out the lines and define the labels
+        Map<String, Integer> symbols = new HashMap<>();
+        List<Segment> segments = new ArrayList<>();
+        Section text = new Section(TEXT_START);
+        Section data = new Section(DATA_START);
+        Section section = text;
+        Integer firstText = null; //the entry when there is no main label
+        for (Line line : next) {
+            Statement statement = line.statement;
+            if (statement.section != null) {
+                section = statement.section.equals(".text") ? text : data;
+                if (statement.operands.length > 0) {
+                    section.location = statement.operands[0].value;
+                    section.segment = null;     // A new segment starts at the address
+                }
+            }
+            for (String label : statement.labels) {
+                if (symbols.put(label, section.location) != null) {
+                    throw new AssemblyException(line.number, "Label " + label + " is already defined");
+                }
+            }
+            int size = statement.size;
+            if (statement.mnemonic != null && statement.mnemonic.equals(".align")) {
+                int alignment = 1 << statement.operands[0].value;
+                size = (alignment - (section.location & (alignment - 1))) & (alignment - 1);
+            } else if (statement.size > 0 && (statement.spec != null || statement.mnemonic.equals(".word"))
+                    && (section.location & 3) != 0) {
+                throw new AssemblyException(line.number, "Words must be at a multiple of 4, use .align 2");
+            }
+            line.size = size;
+            if (size > 0) {
+                if (section.segment == null) {
+                    section.segment = new Segment(section.location, line.number);
+                    segments.add(section.segment);
+                }
+                line.segment = section.segment;
+                line.address = section.location;
+                if (section == text && firstText == null) {
+                    firstText = section.location;
+                }
+                section.location += size;
+                section.segment.end = section.location;
+            } else {
+                line.segment = null;
+                line.address = section.location;
+            }
+        }
+
+        // Pass 2, encode the lines that are new or whose address or symbols changed
+        int encoded = 0;
+        for (Line line : next) {
+            if (line.size > 0 && line.statement.words > 0 && !line.isCurrent(symbols)) {
+                line.encode(symbols);
+                encoded++;
+            }
+        }
+
+        // Copy the words into one array per segment
+        segments.sort((a, b) -> Integer.compareUnsigned(a.start, b.start));
+        for (int i = 1; i < segments.size(); i++) {
+            if (Integer.compareUnsigned(segments.get(i - 1).end, segments.get(i).start) > 0) {
+                throw new AssemblyException(segments.get(i).firstLine, "Overlaps the code or data before it");
+            }
+        }
+        int[] addresses = new int[segments.size()];
+        byte[][] bytes = new byte[segments.size()][];
+        for (int i = 0; i < addresses.length; i++) {
+            Segment segment = segments.get(i);
+            addresses[i] = segment.start;
+            segment.bytes = bytes[i] = new byte[segment.end - segment.start];
+        }
+        for (Line line : next) {
+            if (line.words != null && line.segment != null) {
+                int offset = line.address - line.segment.start;
+                for (int word : line.words) {
+                    line.segment.bytes[offset] = (byte) (word >>> 24);
+                    line.segment.bytes[offset + 1] = (byte) (word >>> 16);
+                    line.segment.bytes[offset + 2] = (byte) (word >>> 8);
+                    line.segment.bytes[offset + 3] = (byte) word;
+                    offset += 4;
+                }
+            }
+        }
+        lines = next;
+        Integer main = symbols.get("main");
+        int entry = main != null ? main : firstText != null ? firstText : TEXT_START;
+        return new AssembledProgram(entry, addresses, bytes, symbols, next.length, encoded);
+    }
+
+    /**
+     * Parses one line into its labels, mnemonic and operands, which do not depend on where the line is
+     */
+    private static Statement parse(String text, int number) {
+        int end = text.indexOf('#');
+        String code = (end < 0 ? text : text.substring(0, end)).trim();
+        List<String> labels = new ArrayList<>();
+        int colon;
+        while ((colon = code.indexOf(':')) >= 0 && isIdentifier(code.substring(0, colon).trim())) {
+            labels.add(code.substring(0, colon).trim());
+            code = code.substring(colon + 1).trim();
+        }
+        if (code.isEmpty()) {
+            return new Statement(labels, null, new Operand[0], null, 0, 0);
+        }
+        int space = 0;
+        while (space < code.length() && !Character.isWhitespace(code.charAt(space))) {
+            space++;
+        }
+        String mnemonic = code.substring(0, space).toLowerCase(Locale.ROOT);
+        String rest = code.substring(space).trim();
+        String[] parts = rest.isEmpty() ? new String[0] : rest.split(",", -1);
+        Operand[] operands = new Operand[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            operands[i] = Operand.parse(parts[i].trim(), number);
+        }
+        if (mnemonic.startsWith(".")) {
+            return directive(labels, mnemonic, operands, number);
+        }
+        Spec spec = INSTRUCTIONS.get(mnemonic);
+        if (spec == null) {
+            spec = Spec.pseudo(mnemonic);
+            if (spec == null) {
+                throw new AssemblyException(number, "Unknown instruction " + mnemonic);
+            }
+        }
+        spec.format.check(operands, mnemonic, number);
+        int words = spec.format == Format.LOAD_IMMEDIATE ? loadImmediateWords(operands[1]) : spec.format.words;
+        return new Statement(labels, mnemonic, operands, spec, words * 4, words);
+    }
+
+    private static Statement directive(List<String> labels, String mnemonic, Operand[] operands, int number) {
+        switch (mnemonic) {
+            case ".text":
+            case ".data":
+                if (operands.length > 1 || (operands.length == 1 && operands[0].kind != Operand.NUMBER)) {
+                    throw new AssemblyException(number, mnemonic + " takes an optional address");
+                }
+                Statement section = new Statement(labels, mnemonic, operands, null, 0, 0);
+                section.section = mnemonic;
+                return section;
+            case ".word":
+                if (operands.length == 0) {
+                    throw new AssemblyException(number, ".word needs at least one value");
+                }
+                for (Operand operand : operands) {
+                    operand.expectValue(number);
+                }
+                return new Statement(labels, mnemonic, operands, null, operands.length * 4, operands.length);
+            case ".space":
+                if (operands.length != 1 || operands[0].kind != Operand.NUMBER || operands[0].value < 0) {
+                    throw new AssemblyException(number, ".space takes a number of bytes");
+                }
+                return new Statement(labels, mnemonic, operands, null, operands[0].value, 0);
+            case ".align":
+                if (operands.length != 1 || operands[0].kind != Operand.NUMBER || operands[0].value < 0
+                        || operands[0].value > 12) {
+                    throw new AssemblyException(number, ".align takes a power of 2 from 0 to 12");
+                }
+                return new Statement(labels, mnemonic, operands, null, 0, 0);
+            case ".globl":
+            case ".global":
+                return new Statement(labels, mnemonic, new Operand[0], null, 0, 0);
+            default:
+                throw new AssemblyException(number, "Unknown directive " + mnemonic);
+        }
+    }
+
+    /**
+     * li takes one word when a constant fits in 16 bits and two otherwise, and always two for a symbol
+     */
+    private static int loadImmediateWords(Operand operand) {
+        if (operand.kind == Operand.NUMBER) {
+            int value = operand.value;
+            return value == (short) value || (value & 0xFFFF0000) == 0 || (value & 0xFFFF) == 0 ? 1 : 2;
+        }
+        return 2;
+    }
+
+    static boolean isIdentifier(String text) {
+        if (text.isEmpty() || !(Character.isLetter(text.charAt(0)) || text.charAt(0) == '_' || text.charAt(0) == '.')) {
+            return false;
+        }
+        for (int i = 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '.' && c != '$') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One line of the source, kept between assemblies with its encoding
+     */
+    private static final class Line {
+        final String text;
+        final Statement statement;
+        int number;
+        int address;
+        int size;
+        Segment segment;
+        int[] words; //the encoding, null until encoded
+        int encodedAddress;
+        int[] encodedSymbols; //the values of the statement's symbols when it was encoded, from the line for branches
+
+        Line(String text, int number, Statement statement) {
+            this.text = text;
+            this.number = number;
+            this.statement = statement;
+        }
+
+        Line reuse(int number) {
+            this.number = number;
+            return this;
+        }
+
+        boolean isCurrent(Map<String, Integer> symbols) {
+            if (words == null) {
+                return false;
+            }
+            if (statement.spec != null && statement.spec.format == Format.TARGET
+                    && (encodedAddress & 0xF0000000) != (address & 0xF0000000)) {
+                return false;   // Moved to another 256 MB region, the target may no longer be reachable
+            }
+            if (statement.isRelative() && statement.symbols.length == 0 && encodedAddress != address) {
+                return false;   // A branch to a number is a distance that changes when the branch moves
+            }
+            int base = statement.isRelative() ? address : 0;
+            String[] names = statement.symbols;
+            for (int i = 0; i < names.length; i++) {
+                Integer value = symbols.get(names[i]);
+                if (value == null || value - base != encodedSymbols[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void encode(Map<String, Integer> symbols) {
+            String[] names = statement.symbols;
+            int[] values = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                Integer value = symbols.get(names[i]);
+                if (value == null) {
+                    throw new AssemblyException(number, "Undefined label " + names[i]);
+                }
+                values[i] = value - (statement.isRelative() ? address : 0);
+            }
+            words = statement.encode(address, symbols, number);
+            encodedAddress = address;
+            encodedSymbols = values;
+        }
+    }
+
+    /**
+     * The parsed form of a line
+     */
+    private static final class Statement {
+        final String[] labels;
+        final String mnemonic; //null for a line with only labels or nothing
+        final Operand[] operands;
+        final Spec spec; //null for a directive
+        final int size; //bytes, except for .align which depends on the address
+        final int words; //words that have to be encoded, 0 for lines that are only zero bytes
+        final String[] symbols; //the symbols the operands refer to
+        String section; //.text or .data if the line switches section
+
+        Statement(List<String> labels, String mnemonic, Operand[] operands, Spec spec, int size, int words) {
+            this.labels = labels.toArray(new String[0]);
+            this.mnemonic = mnemonic;
+            this.operands = operands;
+            this.spec = spec;
+            this.size = size;
+            this.words = words;
+            List<String> names = new ArrayList<>();
+            for (Operand operand : operands) {
+                if (operand.symbol != null && !names.contains(operand.symbol)) {
+                    names.add(operand.symbol);
+                }
+            }
+            symbols = names.toArray(new String[0]);
+        }
+
+        /**
+         * @return If the encoding depends on the distance from the line to its symbols instead of their addresses
+         */
+        boolean isRelative() {
+            return spec != null && spec.format.relative;
+        }
+
+        int[] encode(int address, Map<String, Integer> symbolTable, int number) {
+            if (spec == null) {
+                // .word
+                int[] values = new int[operands.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = operands[i].resolve(symbolTable);
+                }
+                return values;
+            }
+            return spec.format.encode(spec, operands, address, symbolTable, number, words);
+        }
+    }
+
+    /**
+     * A register, number, symbol or offset(base) operand
+     */
+    private static final class Operand {
+        static final int REGISTER = 0;
+        static final int NUMBER = 1;
+        static final int SYMBOL = 2;
+        static final int MEMORY = 3;
+
+        final int kind;
+        final int value; //the register, the number or the offset of a symbol or memory operand
+        final String symbol; //the symbol of a symbol or memory operand, may be null for memory
+        final int base; //the base register of a memory operand
+
+        Operand(int kind, int value, String symbol, int base) {
+            this.kind = kind;
+            this.value = value;
+            this.symbol = symbol;
+            this.base = base;
+        }
+
+        static Operand parse(String text, int number) {
+            if (text.isEmpty()) {
+                throw new AssemblyException(number, "Missing operand");
+            }
+            if (text.startsWith("$")) {
+                return new Operand(REGISTER, register(text, number), null, 0);
+            }
+            int open = text.indexOf('(');
+            if (open >= 0) {
+                if (!text.endsWith(")")) {
+                    throw new AssemblyException(number, "Expected offset(base) but found " + text);
+                }
+                int base = register(text.substring(open + 1, text.length() - 1).trim(), number);
+                String offset = text.substring(0, open).trim();
+                Operand value = offset.isEmpty() ? new Operand(NUMBER, 0, null, 0) : parse(offset, number);
+                value.expectValue(number);
+                return new Operand(MEMORY, value.value, value.symbol, base);
+            }
+            // A symbol with an optional constant after it, like table+8
+            int split = 1;
+            while (split < text.length() && text.charAt(split) != '+' && text.charAt(split) != '-') {
+                split++;
+            }
+            String name = text.substring(0, split).trim();
+            if (isIdentifier(name)) {
+                int offset = split < text.length() ? number(text.substring(split).replace(" ", ""), number) : 0;
+                return new Operand(SYMBOL, offset, name, 0);
+            }
+            return new Operand(NUMBER, number(text, number), null, 0);
+        }
+
+        private static int register(String text, int number) {
+            Integer register = text.startsWith("$") ? REGISTERS.get(text.substring(1)) : null;
+            if (register == null) {
+                throw new AssemblyException(number, "Unknown register " + text);
+            }
+            return register;
+        }
+
+        /**
+         * Parses a decimal, 0x hex or 0b binary number that fits in 32 bits signed or unsigned
+         */
+        private static int number(String text, int number) {
+            boolean negative = text.startsWith("-");
+            String digits = negative || text.startsWith("+") ? text.substring(1) : text;
+            int radix = 10;
+            if (digits.startsWith("0x") || digits.startsWith("0X")) {
+                radix = 16;
+                digits = digits.substring(2);
+            } else if (digits.startsWith("0b") || digits.startsWith("0B")) {
+                radix = 2;
+                digits = digits.substring(2);
+            }
+            try {
+                long value = Long.parseLong(digits, radix);
+                if (value > 0xFFFFFFFFL || (negative && value > 0x80000000L)) {
+                    throw new AssemblyException(number, "Number does not fit in 32 bits: " + text);
+                }
+                return (int) (negative ? -value : value);
+            } catch (NumberFormatException e) {
+                throw new AssemblyException(number, "Expected a number, label or register but found " + text);
+            }
+        }
+
+        void expectValue(int number) {
+            if (kind != NUMBER && kind != SYMBOL) {
+                throw new AssemblyException(number, "Expected a number or label");
+            }
+        }
+
+        int resolve(Map<String, Integer> symbols) {
+            return symbol == null ? value : symbols.get(symbol) + value;
+        }
+    }
+
+    /**
+     * The encoding of a mnemonic
+     */
+    private static final class Spec {
+        final Format format;
+        final int opcode;
+        final int funct;
+
+        Spec(Format format, int opcode, int funct) {
+            this.format = format;
+            this.opcode = opcode;
+            this.funct = funct;
+        }
+
+        static Spec pseudo(String mnemonic) {
+            switch (mnemonic) {
+                case "li":
+                    return new Spec(Format.LOAD_IMMEDIATE, 0, 0);
+                case "la":
+                    return new Spec(Format.LOAD_ADDRESS, 0, 0);
+                case "move":
+                    return new Spec(Format.MOVE, 0, 0);
+                case "neg":
+                    return new Spec(Format.NEGATE, 0, 0);
+                case "b":
+                    return new Spec(Format.LABEL, 0b000100, 0);
+                case "beqz":
+                    return new Spec(Format.RS_LABEL, 0b000100, 0);
+                case "bnez":
+                    return new Spec(Format.RS_LABEL, 0b000101, 0);
+                // Set $at with slt, the funct says which operand comes first, then branch on it with beq or bne
+                case "blt":
+                    return new Spec(Format.COMPARE_LABEL, 0b000101, 0);
+                case "bgt":
+                    return new Spec(Format.COMPARE_LABEL, 0b000101, 1);
+                case "ble":
+                    return new Spec(Format.COMPARE_LABEL, 0b000100, 1);
+                case "bge":
+                    return new Spec(Format.COMPARE_LABEL, 0b000100, 0);
+                case "halt":
+                    return new Spec(Format.HALT, 0, 0);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * The operands of a mnemonic and how they are encoded
+     */
+    private enum Format {
+        RD_RS_RT(1, Operand.REGISTER, Operand.REGISTER, Operand.REGISTER),
+        RD_RT_SHAMT(1, Operand.REGISTER, Operand.REGISTER, Operand.NUMBER),
+        RD_RS(1, Operand.REGISTER, Operand.REGISTER),
+        RS_RT(1, Operand.REGISTER, Operand.REGISTER),
+        RD(1, Operand.REGISTER),
+        RS(1, Operand.REGISTER),
+        RT_RS_SIGNED(1, Operand.REGISTER, Operand.REGISTER, Operand.SYMBOL),
+        RT_RS_UNSIGNED(1, Operand.REGISTER, Operand.REGISTER, Operand.SYMBOL),
+        RT_UNSIGNED(1, Operand.REGISTER, Operand.SYMBOL),
+        RT_MEMORY(1, Operand.REGISTER, Operand.MEMORY),
+        TARGET(1, Operand.SYMBOL),
+        RS_RT_LABEL(true, 1, Operand.REGISTER, Operand.REGISTER, Operand.SYMBOL),
+        RS_LABEL(true, 1, Operand.REGISTER, Operand.SYMBOL),
+        LOAD_IMMEDIATE(2, Operand.REGISTER, Operand.SYMBOL),
+        LOAD_ADDRESS(2, Operand.REGISTER, Operand.SYMBOL),
+        MOVE(1, Operand.REGISTER, Operand.REGISTER),
+        NEGATE(1, Operand.REGISTER, Operand.REGISTER),
+        LABEL(true, 1, Operand.SYMBOL),
+        COMPARE_LABEL(true, 2, Operand.REGISTER, Operand.REGISTER, Operand.SYMBOL),
+        HALT(1);
+
+        final boolean relative; //if it is a branch, encoded as the distance to its label
+        final int words; //the most words it takes
+        private final int[] kinds; //SYMBOL also accepts a number, MEMORY also accepts a number or symbol
+
+        Format(int words, int... kinds) {
+            this(false, words, kinds);
+        }
+
+        Format(boolean relative, int words, int... kinds) {
+            this.relative = relative;
+            this.words = words;
+            this.kinds = kinds;
+        }
+
+        void check(Operand[] operands, String mnemonic, int number) {
+            if (operands.length != kinds.length) {
+                throw new AssemblyException(number, mnemonic + " takes " + kinds.length + " operands");
+            }
+            for (int i = 0; i < kinds.length; i++) {
+                int kind = operands[i].kind;
+                boolean ok = kind == kinds[i]
+                        || (kinds[i] == Operand.SYMBOL && kind == Operand.NUMBER)
+                        || (kinds[i] == Operand.MEMORY && (kind == Operand.NUMBER || kind == Operand.SYMBOL));
+                if (!ok) {
+                    throw new AssemblyException(number, "Operand " + (i + 1) + " of " + mnemonic + " should be "
+                            + (kinds[i] == Operand.REGISTER ? "a register" : kinds[i] == Operand.MEMORY ? "offset($sp)"
+                            : kinds[i] == Operand.NUMBER ? "a number" : "a number or label"));
+                }
+            }
+            if (kinds.length > 0 && kinds[kinds.length - 1] == Operand.MEMORY) {
+                Operand memory = operands[kinds.length - 1];
+                if (memory.kind == Operand.MEMORY && memory.base != SP) {
+                    throw new AssemblyException(number, mnemonic + " always addresses from $sp on this machine");
+                }
+            }
+        }
+
+        int[] encode(Spec spec, Operand[] operands, int address, Map<String, Integer> symbols, int number, int words) {
+            int op = spec.opcode;
+            int funct = spec.funct;
+            switch (this) {
+                case RD_RS_RT:
+                    return one(r(operands[1].value, operands[2].value, operands[0].value, 0, funct));
+                case RD_RT_SHAMT:
+                    return one(r(0, operands[1].value, operands[0].value, range(operands[2].value, 0, 31, number), funct));
+                case RD_RS:
+                    return one(r(operands[1].value, 0, operands[0].value, 0, funct));
+                case RS_RT:
+                    return one(r(operands[0].value, operands[1].value, 0, 0, funct));
+                case RD:
+                    return one(r(0, 0, operands[0].value, 0, funct));
+                case RS:
+                    return one(r(operands[0].value, 0, 0, 0, funct));
+                case RT_RS_SIGNED:
+                    return one(i(op, operands[1].value, operands[0].value,
+                            range(operands[2].resolve(symbols), -0x8000, 0x7FFF, number)));
+                case RT_RS_UNSIGNED:
+                    return one(i(op, operands[1].value, operands[0].value,
+                            range(operands[2].resolve(symbols), 0, 0xFFFF, number)));
+                case RT_UNSIGNED:
+                    return one(i(op, 0, operands[0].value, range(operands[1].resolve(symbols), 0, 0xFFFF, number)));
+                case RT_MEMORY:
+                    return one(i(op, SP, operands[0].value, range(operands[1].resolve(symbols), -0x8000, 0x7FFF, number)));
+                case TARGET: {
+                    int target = operands[0].resolve(symbols);
+                    if ((target & 3) != 0 || (target & 0xF0000000) != (address & 0xF0000000)) {
+                        throw new AssemblyException(number, "Jump target is not a word in the same 256 MB");
+                    }
+                    return one(op << 26 | (target >>> 2 & 0x03FFFFFF));
+                }
+                case RS_RT_LABEL:
+                    return one(i(op, operands[0].value, operands[1].value, branch(operands[2], address, symbols, number)));
+                case RS_LABEL:
+                    return one(i(op, operands[0].value, 0, branch(operands[1], address, symbols, number)));
+                case LOAD_IMMEDIATE:
+                case LOAD_ADDRESS: {
+                    int t = operands[0].value;
+                    int value = operands[1].resolve(symbols);
+                    if (words == 1) {
+                        // A constant that fits one instruction
+                        if (value == (short) value) {
+                            return one(i(0b001001, 0, t, value));   // addiu
+                        }
+                        if ((value & 0xFFFF0000) == 0) {
+                            return one(i(0b001101, 0, t, value));   // ori
+                        }
+                        return one(i(0b001111, 0, t, value >>> 16));   // lui
+                    }
+                    return new int[]{i(0b001111, 0, t, value >>> 16), i(0b001101, t, t, value)};   // lui, ori
+                }
+                case MOVE:
+                    return one(r(operands[1].value, 0, operands[0].value, 0, 0b100001));  // addu rd, rs, $zero
+                case NEGATE:
+                    return one(r(0, operands[1].value, operands[0].value, 0, 0b100010));  // sub rd, $zero, rs
+                case LABEL:
+                    return one(i(op, 0, 0, branch(operands[0], address, symbols, number)));
+                case COMPARE_LABEL: {
+                    int first = funct == 0 ? operands[0].value : operands[1].value;
+                    int second = funct == 0 ? operands[1].value : operands[0].value;
+                    // The branch is the second word, its offset is from itself
+                    return new int[]{r(first, second, AT, 0, 0b101010),
+                            i(op, AT, 0, branch(operands[2], address + 4, symbols, number))};
+                }
+                default:
+                    return one(0);  // halt
+            }
+        }
+
+        private static int[] one(int word) {
+            return new int[]{word};
+        }
+
+        private static int r(int rs, int rt, int rd, int shamt, int funct) {
+            return rs << 21 | rt << 16 | rd << 11 | shamt << 6 | funct;
+        }
+
+        private static int i(int opcode, int rs, int rt, int immediate) {
+            return opcode << 26 | rs << 21 | rt << 16 | (immediate & 0xFFFF);
+        }
+
+        /**
+         * The offset of a branch in words, the machine adds it to the address of the branch
+         */
+        private static int branch(Operand label, int address, Map<String, Integer> symbols, int number) {
+            int distance = label.resolve(symbols) - address;
+            if ((distance & 3) != 0) {
+                throw new AssemblyException(number, "Branch target is not a multiple of 4 away");
+            }
+            return range(distance >> 2, -0x8000, 0x7FFF, number);
+        }
+
+        private static int range(int value, int min, int max, int number) {
+            if (value < min || value > max) {
+                throw new AssemblyException(number, value + " does not fit, it must be from " + min + " to " + max);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Where the next line of a section goes
+     */
+    private static final class Section {
+        int location;
+        Segment segment; //the segment the section is filling, null until it has bytes at its location
+
+        Section(int location) {
+            this.location = location;
+        }
+    }
+
+    /**
+     * A run of bytes at consecutive addresses
+     */
+    private static final class Segment {
+        final int start;
+        final int firstLine;
+        int end;
+        byte[] bytes;
+
+        Segment(int start, int firstLine) {
+            this.start = start;
+            this.firstLine = firstLine;
+            this.end = start;
+        }
+    }
+}
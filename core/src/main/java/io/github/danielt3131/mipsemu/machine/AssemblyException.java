@@ -0,0 +1,39 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * Thrown when a line of assembly cannot be assembled by {@link Assembler}
+ */
+public class AssemblyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int lineNumber;
+
+    /**
+     * Constructor for the assembly exception
+     *
+     * @param lineNumber The line with the error, starting at 1
+     * @param message What is wrong with the line
+     */
+    public AssemblyException(int lineNumber, String message) {
+        super("Line " + lineNumber + ": " + message);
+        this.lineNumber = lineNumber;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
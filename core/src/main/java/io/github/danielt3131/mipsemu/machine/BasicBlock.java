@@ -0,0 +1,93 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * A straight line run of instructions that ends with a branch or jump, translated once by {@link BlockCache}
+ * <p>
+ * Each block remembers the blocks that ran after it so the {@link FastEngine} can go from block to block without
+ * looking them up again
+ */
+public class BasicBlock {
+
+    final int start; //address of the first instruction
+    final int end; //address after the last instruction
+    final DecodedInstruction[] instructions; //the instructions, already bound to their handlers
+    boolean valid = true; //false once a store has hit the block
+    int executions; //times the block was interpreted, used to find hot blocks
+    CompiledBlock compiled; //set once the block has been compiled by the BlockCompiler
+
+    // The blocks that followed this one, usually the fall through and the branch target
+    private BasicBlock link0, link1;
+
+    /**
+     * Constructor for a basic block
+     *
+     * @param start The address of the first instruction
+     * @param instructions The decoded instructions in order
+     */
+    BasicBlock(int start, DecodedInstruction[] instructions) {
+        this.start = start;
+        this.end = start + instructions.length * 4;
+        this.instructions = instructions;
+    }
+
+    /**
+     * Executes every instruction in the block
+     * <p>
+     * Stops early if one of the instructions stores into the block, the program counter is then left at the next
+     * instruction so it can be translated again
+     *
+     * @param machine The machine to execute on
+     * @return The number of instructions executed
+     */
+    int execute(MipsMachine machine) {
+        DecodedInstruction[] instructions = this.instructions;
+        for (int i = 0; i < instructions.length; i++) {
+            DecodedInstruction instruction = instructions[i];
+            instruction.handler.execute(machine, instruction);
+            if (!valid) {
+                return i + 1;
+            }
+        }
+        return instructions.length;
+    }
+
+    /**
+     * Finds the block to run after this one, following the chained blocks before asking the cache
+     *
+     * @param pc The program counter after this block ran
+     * @param cache The cache to translate the block from if it is not chained yet
+     * @return The next block or null if no block can start at the program counter
+     */
+    BasicBlock next(int pc, BlockCache cache) {
+        BasicBlock next = link0;
+        if (next != null && next.start == pc && next.valid) {
+            return next;
+        }
+        next = link1;
+        if (next != null && next.start == pc && next.valid) {
+            return next;
+        }
+        next = cache.lookup(pc);
+        if (next != null) {
+            if (link0 == null || !link0.valid) {
+                link0 = next;
+            } else {
+                link1 = next;
+            }
+        }
+        return next;
+    }
+}
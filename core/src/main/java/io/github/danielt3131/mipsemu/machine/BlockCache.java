@@ -0,0 +1,145 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.ArrayList;
+
+/**
+ * Finds and translates {@link BasicBlock}s, indexed by the word address they start at
+ * <p>
+ * Every word that is part of a block is marked so a store to it can invalidate the blocks covering it. Both are kept
+ * per page so only the pages that hold code take up room
+ */
+public class BlockCache {
+
+    static final int MAX_BLOCK_LENGTH = 64; //instructions
+
+    private static final int WORD_MASK = PageTable.WORDS_PER_PAGE - 1;
+    private static final int WORD_SHIFT = PageTable.PAGE_SHIFT - 2; //word index to page number
+
+    private final MipsMachine machine;
+    private final PageTable<BasicBlock[]> blocks = new PageTable<>();
+    private final PageTable<boolean[]> translated = new PageTable<>(); //words that are part of at least one block
+
+    /**
+     * Constructor for the block cache
+     *
+     * @param machine The machine to decode instructions from
+     */
+    public BlockCache(MipsMachine machine) {
+        this.machine = machine;
+    }
+
+    /**
+     * Gets the block starting at an address, translating it the first time
+     *
+     * @param address The address of the first instruction
+     * @return The block or null if no instruction can be executed at the address
+     */
+    public BasicBlock lookup(int address) {
+        if ((address & 3) != 0) {
+            return null;
+        }
+        int index = address >>> 2;
+        BasicBlock[] page = blocks.get(index >>> WORD_SHIFT);
+        BasicBlock block = page == null ? null : page[index & WORD_MASK];
+        if (block == null) {
+            block = translate(address);
+            if (block != null) {
+                if (page == null) {
+                    page = new BasicBlock[PageTable.WORDS_PER_PAGE];
+                    blocks.put(index >>> WORD_SHIFT, page);
+                }
+                page[index & WORD_MASK] = block;
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Decodes instructions from the address up to and including the first branch or jump
+     * <p>
+     * The block also ends before a 0 word or an unknown instruction so the engine stops there
+     */
+    private BasicBlock translate(int address) {
+        ArrayList<DecodedInstruction> instructions = new ArrayList<>();
+        int pointer = address;
+        while (instructions.size() < MAX_BLOCK_LENGTH) {
+            DecodedInstruction instruction = machine.decodeAt(pointer);
+            if (instruction.code == 0 || instruction.handler == null) {
+                break;
+            }
+            instructions.add(instruction);
+            markTranslated(pointer >>> 2);
+            pointer += 4;
+            if (instruction.handler.changesControlFlow() || pointer == 0) {
+                break;  // Also stop at the end of the address space
+            }
+        }
+        if (instructions.isEmpty()) {
+            return null;
+        }
+        return new BasicBlock(address, instructions.toArray(new DecodedInstruction[0]));
+    }
+
+    private void markTranslated(int index) {
+        boolean[] page = translated.get(index >>> WORD_SHIFT);
+        if (page == null) {
+            page = new boolean[PageTable.WORDS_PER_PAGE];
+            translated.put(index >>> WORD_SHIFT, page);
+        }
+        page[index & WORD_MASK] = true;
+    }
+
+    /**
+     * Invalidates every block that contains the address
+     *
+     * @param address The byte address that was written to
+     */
+    public void invalidate(int address) {
+        int index = address >>> 2;
+        boolean[] page = translated.get(index >>> WORD_SHIFT);
+        if (page == null || !page[index & WORD_MASK]) {
+            return;
+        }
+        page[index & WORD_MASK] = false;
+        // A block containing this word starts at most MAX_BLOCK_LENGTH - 1 words before it
+        for (int i = index; i >= 0 && i > index - MAX_BLOCK_LENGTH; i--) {
+            BasicBlock[] blockPage = blocks.get(i >>> WORD_SHIFT);
+            if (blockPage == null) {
+                continue;
+            }
+            BasicBlock block = blockPage[i & WORD_MASK];
+            if (block != null && Integer.compareUnsigned(address - block.start, block.end - block.start) < 0) {
+                block.valid = false;
+                blockPage[i & WORD_MASK] = null;
+            }
+        }
+    }
+
+    /**
+     * Drops every block, used when the whole memory is replaced
+     */
+    public void clear() {
+        blocks.forEach(page -> {
+            for (BasicBlock block : page) {
+                if (block != null) {
+                    block.valid = false;
+                }
+            }
+        });
+        blocks.clear();
+        translated.clear();
+    }
+}
@@ -0,0 +1,664 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compiles hot {@link BasicBlock}s into generated JVM classes extending {@link CompiledBlock}
+ * <p>
+ * Every register the block uses is copied into a local variable on entry and written back on exit, and a branch back
+ * to the start of the block becomes a jump inside the generated method, so a tight loop runs without leaving it.
+ * Stores that hit the block itself end the compiled code so the interpreter can take over
+ * <p>
+ * Only works where classes can be defined at runtime (desktop and server JVMs), Android does not run JVM bytecode
+ */
+public class BlockCompiler {
+
+    static final int LOOP_BUDGET = 1 << 20; //most passes through a looping block before returning to the engine
+
+    private static final String PACKAGE = "io/github/danielt3131/mipsemu/machine/jit/";
+    private static final String SUPER = "io/github/danielt3131/mipsemu/machine/CompiledBlock";
+    private static final String MACHINE = "Lio/github/danielt3131/mipsemu/machine/MipsMachine;";
+    private static final String ALIGNMENT_EXCEPTION = "io/github/danielt3131/mipsemu/machine/AlignmentException";
+
+    // Local variable slots of the generated run method
+    private static final int THIS = 0, MACHINE_ARG = 1, REGISTER_ARG = 2, MAX_PASSES_ARG = 3, PASSES = 4, FIRST_REGISTER = 5;
+    private static final int EXCEPTION = FIRST_REGISTER + 32;
+
+    private final BlockClassLoader classLoader = new BlockClassLoader();
+    private int classCount = 0;
+
+    /**
+     * Checks if the running VM can load generated JVM classes
+     *
+     * @return false on Android
+     */
+    public static boolean isAvailable() {
+        return !"Dalvik".equals(System.getProperty("java.vm.name"));
+    }
+
+    /**
+     * Compiles a block
+     *
+     * @param block The block to compile
+     * @return The compiled block or null if the block contains an instruction the compiler does not handle
+     */
+    public CompiledBlock compile(BasicBlock block) {
+        String name = PACKAGE + "Block_" + Integer.toHexString(block.start) + "_" + classCount++;
+        byte[] classFile;
+        try {
+            classFile = new ClassWriter(name, block).write();
+        } catch (UnsupportedOperationException | IOException e) {
+            return null;
+        }
+        try {
+            Class<?> compiledClass = classLoader.define(name.replace('/', '.'), classFile);
+            CompiledBlock compiled = (CompiledBlock) compiledClass.getDeclaredConstructor().newInstance();
+            compiled.source = block;
+            return compiled;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static class BlockClassLoader extends ClassLoader {
+
+        BlockClassLoader() {
+            super(CompiledBlock.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+
+    /**
+     * Writes the class file for one block
+     * <p>
+     * Uses class file version 49 so no stack map frames have to be generated
+     */
+    private static class ClassWriter {
+        private final String name;
+        private final BasicBlock block;
+        private final ConstantPool pool = new ConstantPool();
+        private final Code code = new Code();
+        private final boolean[] used = new boolean[32];
+        private final boolean[] written = new boolean[32];
+        private final ArrayList<int[]> memoryAccesses = new ArrayList<>(); //{start, end, index, address} of every lw and sw
+        private final ArrayList<int[]> exceptionTable = new ArrayList<>(); //{start, end, handler, catch type}
+        private int head; //position of the start of the loop body
+
+        ClassWriter(String name, BasicBlock block) {
+            this.name = name;
+            this.block = block;
+        }
+
+        byte[] write() throws IOException {
+            for (DecodedInstruction instruction : block.instructions) {
+                markRegisters(instruction);
+            }
+            int thisClass = pool.classRef(name);
+            int superClass = pool.classRef(SUPER);
+            int init = pool.utf8("<init>");
+            int voidDescriptor = pool.utf8("()V");
+            int superInit = pool.methodRef(SUPER, "<init>", "()V");
+            int run = pool.utf8("run");
+            int runDescriptor = pool.utf8("(" + MACHINE + "[II)I");
+            byte[] runCode = compileRun();
+            int codeAttribute = pool.utf8("Code");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            pool.write(out);
+            out.writeShort(0x0031); //public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); //interfaces
+            out.writeShort(0); //fields
+            out.writeShort(2); //methods
+
+            // Constructor, only calls super()
+            byte[] initCode = {0x2A, (byte) 0xB7, (byte) (superInit >> 8), (byte) superInit, (byte) 0xB1};
+            writeMethod(out, init, voidDescriptor, codeAttribute, 1, 1, initCode, new ArrayList<>());
+            writeMethod(out, run, runDescriptor, codeAttribute, 8, EXCEPTION + 1, runCode, exceptionTable);
+
+            out.writeShort(0); //attributes
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute, int maxStack, int maxLocals, byte[] code, ArrayList<int[]> exceptionTable) throws IOException {
+            out.writeShort(0x0001); //public
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + code.length + exceptionTable.size() * 8);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(exceptionTable.size());
+            for (int[] entry : exceptionTable) {
+                for (int value : entry) {
+                    out.writeShort(value);
+                }
+            }
+            out.writeShort(0); //attributes
+        }
+
+        private void markRegisters(DecodedInstruction instruction) {
+            int opcode = instruction.opcode;
+            if (opcode == 0) {
+                used[instruction.rs] = used[instruction.rt] = true;
+                if (instruction.funct != 0b011000 && instruction.funct != 0b001000) {
+                    used[instruction.rd] = written[instruction.rd] = true;
+                }
+            } else if (opcode == 0b000010) {
+                // j uses no registers
+            } else if (opcode == 0b000011) {
+                used[31] = written[31] = true;
+            } else if (opcode == 0b100011) {
+                used[29] = true;
+                used[instruction.rt] = written[instruction.rt] = true;
+            } else if (opcode == 0b101011) {
+                used[29] = used[instruction.rt] = true;
+            } else if (opcode >= 0b001000 && opcode <= 0b001111) {
+                used[instruction.rs] = true;
+                used[instruction.rt] = written[instruction.rt] = true;
+            } else {
+                used[instruction.rs] = used[instruction.rt] = true;
+            }
+        }
+
+        private byte[] compileRun() {
+            code.pushInt(0);
+            code.op(0x36, PASSES); //istore
+            for (int r = 0; r < 32; r++) {
+                if (used[r]) {
+                    code.op(0x19, REGISTER_ARG); //aload
+                    code.pushInt(r);
+                    code.op(0x2E); //iaload
+                    code.op(0x36, FIRST_REGISTER + r); //istore
+                }
+            }
+            head = code.position();
+
+            DecodedInstruction[] instructions = block.instructions;
+            for (int i = 0; i < instructions.length; i++) {
+                int address = block.start + i * 4;
+                DecodedInstruction instruction = instructions[i];
+                if (instruction.handler.changesControlFlow()) {
+                    compileControlFlow(instruction, address);
+                    compileAddressErrors();
+                    return code.toByteArray();
+                }
+                compileInstruction(instruction, address, i);
+            }
+            // Block ended without a branch, continue after it
+            exit(instructions.length, block.end);
+            compileAddressErrors();
+            return code.toByteArray();
+        }
+
+        /**
+         * Adds a handler for every lw and sw that writes the registers back and leaves the program counter at the
+         * instruction before passing an {@link AlignmentException} on, the same state the interpreter leaves
+         */
+        private void compileAddressErrors() {
+            int catchType = pool.classRef(ALIGNMENT_EXCEPTION);
+            for (int[] access : memoryAccesses) {
+                exceptionTable.add(new int[]{access[0], access[1], code.position(), catchType});
+                code.op(0x3A, EXCEPTION); //astore
+                writeBack();
+                setExecuted(access[2]);
+                code.op(0x19, MACHINE_ARG);
+                pushConstant(access[3]);
+                code.invokeStatic(pool.methodRef(SUPER, "setPc", "(" + MACHINE + "I)V"));
+                code.op(0x19, EXCEPTION);
+                code.op(0xBF); //athrow
+            }
+        }
+
+        private void compileInstruction(DecodedInstruction instruction, int address, int index) {
+            int s = FIRST_REGISTER + instruction.rs;
+            int t = FIRST_REGISTER + instruction.rt;
+            int d = FIRST_REGISTER + instruction.rd;
+            switch (instruction.opcode) {
+                case 0b000000:
+                    switch (instruction.funct) {
+                        case 0b100000: //add
+                        case 0b100001: //addu
+                            binary(s, t, 0x60, d);
+                            break;
+                        case 0b100010: //sub
+                        case 0b100011: //subu
+                            binary(s, t, 0x64, d);
+                            break;
+                        case 0b100100: //and
+                            binary(s, t, 0x7E, d);
+                            break;
+                        case 0b100101: //or
+                            binary(s, t, 0x80, d);
+                            break;
+                        case 0b100110: //xor
+                            binary(s, t, 0x82, d);
+                            break;
+                        case 0b101010: //slt
+                            code.op(0x15, s);
+                            code.op(0x15, t);
+                            code.invokeStatic(pool.methodRef(SUPER, "lessThan", "(II)I"));
+                            code.op(0x36, d);
+                            break;
+                        case 0b101011: //sltu
+                            code.op(0x15, s);
+                            code.op(0x15, t);
+                            code.invokeStatic(pool.methodRef(SUPER, "lessThanUnsigned", "(II)I"));
+                            code.op(0x36, d);
+                            break;
+                        case 0b000000: //sll
+                            shift(t, instruction.shamt, 0x78, d);
+                            break;
+                        case 0b000010: //srl
+                            shift(t, instruction.shamt, 0x7C, d);
+                            break;
+                        case 0b000011: //sra
+                            shift(t, instruction.shamt, 0x7A, d);
+                            break;
+                        case 0b100111: //not
+                            code.op(0x15, s);
+                            code.op(0x02); //iconst_m1
+                            code.op(0x82); //ixor
+                            code.op(0x36, d);
+                            break;
+                        case 0b011000: //mult
+                            code.op(0x19, MACHINE_ARG);
+                            code.op(0x15, s);
+                            code.op(0x15, t);
+                            code.invokeStatic(pool.methodRef(SUPER, "multiply", "(" + MACHINE + "II)V"));
+                            break;
+                        case 0b010000: //mfhi
+                            code.op(0x19, MACHINE_ARG);
+                            code.invokeStatic(pool.methodRef(SUPER, "hi", "(" + MACHINE + ")I"));
+                            code.op(0x36, d);
+                            break;
+                        case 0b010010: //mflo
+                            code.op(0x19, MACHINE_ARG);
+                            code.invokeStatic(pool.methodRef(SUPER, "lo", "(" + MACHINE + ")I"));
+                            code.op(0x36, d);
+                            break;
+                        default:
+                            throw new UnsupportedOperationException(instruction.handler.getName());
+                    }
+                    break;
+                case 0b001000: //addi
+                case 0b001001: //addiu
+                    immediate(s, instruction.signedImmediate, 0x60, t);
+                    break;
+                case 0b001010: //slti
+                    code.op(0x15, s);
+                    pushConstant(instruction.signedImmediate);
+                    code.invokeStatic(pool.methodRef(SUPER, "lessThan", "(II)I"));
+                    code.op(0x36, t);
+                    break;
+                case 0b001011: //sltiu
+                    code.op(0x15, s);
+                    pushConstant(instruction.signedImmediate);
+                    code.invokeStatic(pool.methodRef(SUPER, "lessThanUnsigned", "(II)I"));
+                    code.op(0x36, t);
+                    break;
+                case 0b001100: //andi
+                    immediate(s, instruction.immediate, 0x7E, t);
+                    break;
+                case 0b001101: //ori
+                    immediate(s, instruction.immediate, 0x80, t);
+                    break;
+                case 0b001110: //xori
+                    immediate(s, instruction.immediate, 0x82, t);
+                    break;
+                case 0b001111: //lui
+                    pushConstant(instruction.immediate << 16);
+                    code.op(0x36, t);
+                    break;
+                case 0b100011: //lw, the address is $sp plus the offset
+                    int loadStart = code.position();
+                    code.op(0x19, MACHINE_ARG);
+                    immediateAddress(instruction);
+                    code.invokeStatic(pool.methodRef(SUPER, "load", "(" + MACHINE + "I)I"));
+                    memoryAccesses.add(new int[]{loadStart, code.position(), index, address});
+                    code.op(0x36, t);
+                    break;
+                case 0b101011: //sw, stop if the store hit this block
+                    int storeStart = code.position();
+                    code.op(0x2A); //aload_0
+                    code.op(0x19, MACHINE_ARG);
+                    immediateAddress(instruction);
+                    code.op(0x15, t);
+                    code.invokeVirtual(pool.methodRef(SUPER, "store", "(" + MACHINE + "II)Z"));
+                    memoryAccesses.add(new int[]{storeStart, code.position(), index, address});
+                    int skip = code.jump(0x9A); //ifne
+                    exit(index + 1, address + 4);
+                    code.bind(skip);
+                    break;
+                default:
+                    throw new UnsupportedOperationException(instruction.handler.getName());
+            }
+        }
+
+        private void compileControlFlow(DecodedInstruction instruction, int address) {
+            int s = FIRST_REGISTER + instruction.rs;
+            int t = FIRST_REGISTER + instruction.rt;
+            int branchTarget = address + (instruction.signedImmediate << 2);
+            int jumpTarget = (address & 0xF0000000) | (instruction.target << 2);
+            switch (instruction.opcode) {
+                case 0b000000: //jr
+                    if (instruction.funct != 0b001000) {
+                        throw new UnsupportedOperationException(instruction.handler.getName());
+                    }
+                    writeBack();
+                    setExecuted(block.instructions.length);
+                    code.op(0x15, s);
+                    code.op(0xAC); //ireturn
+                    return;
+                case 0b000011: //jal
+                    pushConstant(address + 4);
+                    code.op(0x36, FIRST_REGISTER + 31);
+                    goTo(jumpTarget);
+                    return;
+                case 0b000010: //j
+                    goTo(jumpTarget);
+                    return;
+                case 0b000100: //beq
+                    branch(s, t, 0x9F, address, branchTarget);
+                    return;
+                case 0b000101: //bne
+                    branch(s, t, 0xA0, address, branchTarget);
+                    return;
+                case 0b000110: //blez
+                    branch(s, -1, 0x9E, address, branchTarget);
+                    return;
+                case 0b000001: //bgtz
+                    branch(s, -1, 0x9D, address, branchTarget);
+                    return;
+                default:
+                    throw new UnsupportedOperationException(instruction.handler.getName());
+            }
+        }
+
+        /**
+         * Compares one register to another (or to 0 if t is negative) and goes to the target if the comparison holds
+         */
+        private void branch(int s, int t, int comparison, int address, int target) {
+            code.op(0x15, s);
+            if (t >= 0) {
+                code.op(0x15, t);
+            }
+            int taken = code.jump(comparison);
+            goTo(address + 4);
+            code.bind(taken);
+            goTo(target);
+        }
+
+        /**
+         * Continues at an address, looping back inside the method when it is the start of this block and the passes
+         * given to run are not used up
+         */
+        private void goTo(int target) {
+            if (target != block.start) {
+                exit(block.instructions.length, target);
+                return;
+            }
+            code.iinc(PASSES, 1);
+            code.op(0x15, PASSES);
+            code.op(0x15, MAX_PASSES_ARG);
+            code.jumpTo(0xA1, head); //if_icmplt
+            exit(0, block.start);
+        }
+
+        /**
+         * Writes the registers back, records the instructions executed and returns the next program counter
+         *
+         * @param executedThisPass The instructions executed since the last pass through the block
+         * @param pc The program counter to return
+         */
+        private void exit(int executedThisPass, int pc) {
+            writeBack();
+            setExecuted(executedThisPass);
+            pushConstant(pc);
+            code.op(0xAC); //ireturn
+        }
+
+        private void writeBack() {
+            for (int r = 0; r < 32; r++) {
+                if (written[r]) {
+                    code.op(0x19, REGISTER_ARG);
+                    code.pushInt(r);
+                    code.op(0x15, FIRST_REGISTER + r);
+                    code.op(0x4F); //iastore
+                }
+            }
+        }
+
+        private void setExecuted(int executedThisPass) {
+            code.op(0x2A); //aload_0
+            code.op(0x15, PASSES);
+            pushConstant(block.instructions.length);
+            code.op(0x68); //imul
+            pushConstant(executedThisPass);
+            code.op(0x60); //iadd
+            code.op(0xB5); //putfield
+            code.u2(pool.fieldRef(SUPER, "executed", "I"));
+        }
+
+        private void binary(int a, int b, int operation, int destination) {
+            code.op(0x15, a);
+            code.op(0x15, b);
+            code.op(operation);
+            code.op(0x36, destination);
+        }
+
+        private void shift(int a, int amount, int operation, int destination) {
+            code.op(0x15, a);
+            code.pushInt(amount);
+            code.op(operation);
+            code.op(0x36, destination);
+        }
+
+        private void immediate(int a, int value, int operation, int destination) {
+            code.op(0x15, a);
+            pushConstant(value);
+            code.op(operation);
+            code.op(0x36, destination);
+        }
+
+        private void immediateAddress(DecodedInstruction instruction) {
+            code.op(0x15, FIRST_REGISTER + 29);
+            pushConstant(instruction.signedImmediate);
+            code.op(0x60); //iadd
+        }
+
+        private void pushConstant(int value) {
+            if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                code.pushInt(value);
+            } else {
+                code.op(0x13); //ldc_w
+                code.u2(pool.integer(value));
+            }
+        }
+    }
+
+    /**
+     * The bytes of a method body with forward jumps patched once their target is known
+     */
+    private static class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ArrayList<int[]> patches = new ArrayList<>(); //{jump position, target position}
+
+        int position() {
+            return bytes.size();
+        }
+
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        void op(int opcode, int local) {
+            bytes.write(opcode);
+            bytes.write(local);
+        }
+
+        void u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+
+        void iinc(int local, int amount) {
+            bytes.write(0x84);
+            bytes.write(local);
+            bytes.write(amount);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value); //iconst
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(0x10, value & 0xFF); //bipush
+            } else {
+                op(0x11); //sipush
+                u2(value & 0xFFFF);
+            }
+        }
+
+        void invokeStatic(int method) {
+            op(0xB8);
+            u2(method);
+        }
+
+        void invokeVirtual(int method) {
+            op(0xB6);
+            u2(method);
+        }
+
+        /**
+         * Writes a jump whose target is bound later
+         *
+         * @return The handle to pass to bind
+         */
+        int jump(int opcode) {
+            int at = position();
+            op(opcode);
+            u2(0);
+            patches.add(new int[]{at, -1});
+            return patches.size() - 1;
+        }
+
+        void bind(int handle) {
+            patches.get(handle)[1] = position();
+        }
+
+        void jumpTo(int opcode, int target) {
+            int at = position();
+            op(opcode);
+            u2((target - at) & 0xFFFF);
+        }
+
+        byte[] toByteArray() {
+            byte[] code = bytes.toByteArray();
+            for (int[] patch : patches) {
+                int offset = patch[1] - patch[0];
+                code[patch[0] + 1] = (byte) (offset >> 8);
+                code[patch[0] + 2] = (byte) offset;
+            }
+            return code;
+        }
+    }
+
+    /**
+     * The constant pool of a class file, entries are shared when they are added twice
+     */
+    private static class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final HashMap<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        private int add(String key, int tag, Object... parts) {
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(tag);
+                for (Object part : parts) {
+                    if (part instanceof String) {
+                        out.writeUTF((String) part);
+                    } else if (tag == 3) {
+                        out.writeInt((Integer) part);
+                    } else {
+                        out.writeShort((Integer) part);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            entries.put(key, count);
+            return count++;
+        }
+
+        int utf8(String value) {
+            return add("U" + value, 1, value);
+        }
+
+        int integer(int value) {
+            return add("I" + value, 3, value);
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return add("C" + name, 7, nameIndex);
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            return add("N" + name + descriptor, 12, nameIndex, descriptorIndex);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            return add("M" + owner + name + descriptor, 10, ownerIndex, nameAndType);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            return add("F" + owner + name + descriptor, 9, ownerIndex, nameAndType);
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(count);
+            target.write(bytes.toByteArray());
+        }
+    }
+}
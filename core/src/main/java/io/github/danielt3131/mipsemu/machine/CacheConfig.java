@@ -0,0 +1,114 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * The shape and policies of one level of a {@link CacheHierarchy}
+ */
+public final class CacheConfig {
+
+    /**
+     * How the line to evict is picked when a set is full
+     */
+    public enum Replacement {
+        /** The least recently used line */
+        LRU,
+        /** A binary tree of one bit per pair of ways that points away from the most recently used line */
+        PLRU,
+        /** Any line */
+        RANDOM
+    }
+
+    /**
+     * What happens when a line is written to
+     */
+    public enum WritePolicy {
+        /** The line is marked dirty and only written to the next level when it is evicted, misses allocate a line */
+        WRITE_BACK,
+        /** The write goes straight to the next level and misses do not allocate a line */
+        WRITE_THROUGH
+    }
+
+    static final int MAX_ASSOCIATIVITY = 64; //the PLRU tree of a set fits in a long
+
+    final String name;
+    final int size;
+    final int lineSize;
+    final int associativity;
+    final Replacement replacement;
+    final WritePolicy writePolicy;
+
+    /**
+     * Constructor for a cache level
+     *
+     * @param name The name shown with the statistics, like L1
+     * @param size The capacity in bytes, a power of 2
+     * @param lineSize The bytes per line, a power of 2 of at least 4 so a word never spans two lines
+     * @param associativity The lines per set, a power of 2 up to 64, size / lineSize for a fully associative cache
+     * @param replacement How the line to evict is picked
+     * @param writePolicy What happens on a write
+     * @throws IllegalArgumentException If the sizes do not describe a cache
+     */
+    public CacheConfig(String name, int size, int lineSize, int associativity, Replacement replacement, WritePolicy writePolicy) {
+        if (!isPowerOfTwo(lineSize) || lineSize < 4) {
+            throw new IllegalArgumentException("Line size must be a power of 2 of at least 4: " + lineSize);
+        }
+        if (!isPowerOfTwo(size) || size < lineSize || size > 1 << 30) {
+            throw new IllegalArgumentException("Size must be a power of 2 between the line size and 1 GB: " + size);
+        }
+        if (!isPowerOfTwo(associativity) || associativity > MAX_ASSOCIATIVITY || associativity > size / lineSize) {
+            throw new IllegalArgumentException("Associativity must be a power of 2 up to " + MAX_ASSOCIATIVITY
+                    + " and the number of lines: " + associativity);
+        }
+        this.name = name;
+        this.size = size;
+        this.lineSize = lineSize;
+        this.associativity = associativity;
+        this.replacement = replacement;
+        this.writePolicy = writePolicy;
+    }
+
+    private static boolean isPowerOfTwo(int value) {
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getLineSize() {
+        return lineSize;
+    }
+
+    public int getAssociativity() {
+        return associativity;
+    }
+
+    public Replacement getReplacement() {
+        return replacement;
+    }
+
+    public WritePolicy getWritePolicy() {
+        return writePolicy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d B, %d B lines, %d-way, %s, %s", name, size, lineSize, associativity, replacement, writePolicy);
+    }
+}
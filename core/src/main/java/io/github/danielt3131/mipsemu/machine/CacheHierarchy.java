@@ -0,0 +1,221 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.Arrays;
+
+/**
+ * Simulates the data caches between a {@link MipsMachine} and its memory to count hits and misses
+ * <p>
+ * Level 0 is the one closest to the processor. A miss in one level reads the line from the next, and memory sits
+ * below the last level. Only addresses are tracked, so the simulation never changes what a program reads
+ * <p>
+ * The counters are kept per level in primitive arrays. Writes propagated by a write-through level and dirty lines
+ * written back on eviction count as accesses to the level below
+ */
+public class CacheHierarchy {
+
+    private final CacheLevel[] levels;
+
+    private final long[] hits;
+    private final long[] misses;
+    private final long[] evictions;
+    private final long[] writeBacks;
+    private long accesses; //made by the program, not by other levels
+    private long memoryAccesses; //accesses made by the program that no level could serve
+
+    /**
+     * Constructor for a cache hierarchy
+     *
+     * @param levels The levels from closest to the processor to closest to memory, none for no cache at all
+     */
+    public CacheHierarchy(CacheConfig... levels) {
+        this.levels = new CacheLevel[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            this.levels[i] = new CacheLevel(levels[i]);
+        }
+        hits = new long[levels.length];
+        misses = new long[levels.length];
+        evictions = new long[levels.length];
+        writeBacks = new long[levels.length];
+    }
+
+    /**
+     * Creates the hierarchy the app shows the hit rate of, a 1 KB L1, 4 KB L2 and 16 KB L3, all write-back
+     *
+     * @return The new hierarchy
+     */
+    public static CacheHierarchy createDefault() {
+        return new CacheHierarchy(
+                new CacheConfig("L1", 1024, 16, 2, CacheConfig.Replacement.LRU, CacheConfig.WritePolicy.WRITE_BACK),
+                new CacheConfig("L2", 4 * 1024, 32, 4, CacheConfig.Replacement.LRU, CacheConfig.WritePolicy.WRITE_BACK),
+                new CacheConfig("L3", 16 * 1024, 64, 8, CacheConfig.Replacement.PLRU, CacheConfig.WritePolicy.WRITE_BACK));
+    }
+
+    /**
+     * Records a load or store made by the program
+     *
+     * @param address The address of the first byte, any access fits in one line as long as it is aligned
+     * @param write If it is a store
+     */
+    public void access(int address, boolean write) {
+        accesses++;
+        // Most accesses hit the first level, handle those without walking the hierarchy
+        if (levels.length != 0) {
+            CacheLevel first = levels[0];
+            int line = first.find(address);
+            if (line >= 0 && (!write || first.writeBack)) {
+                hits[0]++;
+                first.touch(line);
+                if (write) {
+                    first.markDirty(line);
+                }
+                return;
+            }
+        }
+        if (access(0, address, write) == levels.length) {
+            memoryAccesses++;
+        }
+    }
+
+    /**
+     * Passes an access to a level
+     *
+     * @return The level that had the line, the number of levels if it came from memory
+     */
+    private int access(int level, int address, boolean write) {
+        if (level == levels.length) {
+            return level;
+        }
+        CacheLevel cache = levels[level];
+        int line = cache.find(address);
+        int servedBy = level;
+        if (line >= 0) {
+            hits[level]++;
+        } else {
+            misses[level]++;
+            if (write && !cache.writeBack) {
+                // No write allocate, the write just goes through
+                return access(level + 1, address, true);
+            }
+            servedBy = access(level + 1, address, false);
+            line = allocate(level, address);
+        }
+        cache.touch(line);
+        if (write) {
+            if (cache.writeBack) {
+                cache.markDirty(line);
+            } else {
+                access(level + 1, address, true);
+            }
+        }
+        return servedBy;
+    }
+
+    /**
+     * Makes room for an address in a level, writing a dirty victim to the next level
+     *
+     * @return The line for the address
+     */
+    private int allocate(int level, int address) {
+        CacheLevel cache = levels[level];
+        int line = cache.victim(address);
+        if (cache.isValid(line)) {
+            evictions[level]++;
+            if (cache.isDirty(line)) {
+                writeBacks[level]++;
+                access(level + 1, cache.lineAddress(line), true);
+            }
+        }
+        cache.install(line, address);
+        return line;
+    }
+
+    /**
+     * Empties every level and zeroes the counters, for when the machine gets a new program or state
+     */
+    public void reset() {
+        for (CacheLevel level : levels) {
+            level.clear();
+        }
+        Arrays.fill(hits, 0);
+        Arrays.fill(misses, 0);
+        Arrays.fill(evictions, 0);
+        Arrays.fill(writeBacks, 0);
+        accesses = 0;
+        memoryAccesses = 0;
+    }
+
+    /**
+     * Gets the share of the program's accesses that were served by any level
+     *
+     * @return The hit rate from 0 to 1, 0 if there were no accesses
+     */
+    public double hitRate() {
+        if (accesses == 0) {
+            return 0;
+        }
+        return (double) (accesses - memoryAccesses) / accesses;
+    }
+
+    /**
+     * Gets the share of the accesses to one level that hit
+     *
+     * @param level The level, 0 is closest to the processor
+     * @return The hit rate from 0 to 1, 0 if the level was never accessed
+     */
+    public double hitRate(int level) {
+        long total = hits[level] + misses[level];
+        return total == 0 ? 0 : (double) hits[level] / total;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public CacheConfig getConfig(int level) {
+        return levels[level].config;
+    }
+
+    public long getAccesses() {
+        return accesses;
+    }
+
+    public long getHits(int level) {
+        return hits[level];
+    }
+
+    public long getMisses(int level) {
+        return misses[level];
+    }
+
+    public long getEvictions(int level) {
+        return evictions[level];
+    }
+
+    public long getWriteBacks(int level) {
+        return writeBacks[level];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < levels.length; i++) {
+            builder.append(String.format("%s: %d hits, %d misses, %d evictions, %d write-backs, %.2f%% hit rate%n",
+                    levels[i].config.name, hits[i], misses[i], evictions[i], writeBacks[i], hitRate(i) * 100));
+        }
+        builder.append(String.format("Overall: %d accesses, %.2f%% hit rate", accesses, hitRate() * 100));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.Arrays;
+
+/**
+ * The tags and replacement state of one level of a {@link CacheHierarchy}
+ * <p>
+ * Only tags are simulated, the data stays in {@link Memory}. Lines are numbered set * associativity + way and every
+ * piece of state is a primitive array indexed by line (or by set for the PLRU trees). Tags never use the top bits of
+ * an address, so an invalid line has a tag of -1
+ */
+final class CacheLevel {
+
+    private static final int INVALID = -1;
+    private static final int LRU = 0;
+    private static final int PLRU = 1;
+    private static final int RANDOM = 2;
+
+    final CacheConfig config;
+    final boolean writeBack;
+
+    private final int replacement;
+    private final int offsetBits; //address bits inside a line
+    private final int setBits;
+    private final int setMask;
+    private final int wayBits;
+    private final int ways;
+
+    private final int[] tags;
+    private final boolean[] dirty;
+    private final long[] lastUsed; //LRU only, the clock when each line was last used
+    private final long[] trees; //PLRU only, one tree per set with node n at bit n
+    private long clock;
+    private int seed = 0x2545F491; //RANDOM only, xorshift state
+
+    // The most recently used line, using it again changes nothing so repeated accesses skip the search
+    private int lastBlock = INVALID;
+    private int lastLine;
+
+    CacheLevel(CacheConfig config) {
+        this.config = config;
+        writeBack = config.writePolicy == CacheConfig.WritePolicy.WRITE_BACK;
+        replacement = config.replacement == CacheConfig.Replacement.LRU ? LRU
+                : config.replacement == CacheConfig.Replacement.PLRU ? PLRU : RANDOM;
+        int lines = config.size / config.lineSize;
+        int sets = lines / config.associativity;
+        offsetBits = Integer.numberOfTrailingZeros(config.lineSize);
+        setBits = Integer.numberOfTrailingZeros(sets);
+        setMask = sets - 1;
+        wayBits = Integer.numberOfTrailingZeros(config.associativity);
+        ways = config.associativity;
+        tags = new int[lines];
+        Arrays.fill(tags, INVALID);
+        dirty = new boolean[lines];
+        lastUsed = replacement == LRU ? new long[lines] : null;
+        trees = replacement == PLRU ? new long[sets] : null;
+    }
+
+    /**
+     * Looks for the line holding an address
+     *
+     * @param address Any 32-bit address
+     * @return The line or -1 on a miss
+     */
+    int find(int address) {
+        int block = address >>> offsetBits;
+        if (block == lastBlock) {
+            return lastLine;
+        }
+        int tag = block >>> setBits;
+        int base = (block & setMask) << wayBits;
+        for (int line = base; line < base + ways; line++) {
+            if (tags[line] == tag) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Picks the line of the set of an address to replace, an invalid one if there is one
+     *
+     * @param address Any 32-bit address
+     * @return The line, which may still hold another address
+     */
+    int victim(int address) {
+        int set = (address >>> offsetBits) & setMask;
+        int base = set << wayBits;
+        for (int line = base; line < base + ways; line++) {
+            if (tags[line] == INVALID) {
+                return line;
+            }
+        }
+        switch (replacement) {
+            case LRU: {
+                int oldest = base;
+                for (int line = base + 1; line < base + ways; line++) {
+                    if (lastUsed[line] < lastUsed[oldest]) {
+                        oldest = line;
+                    }
+                }
+                return oldest;
+            }
+            case PLRU: {
+                long tree = trees[set];
+                int node = 1;
+                for (int i = 0; i < wayBits; i++) {
+                    node = (node << 1) | (int) ((tree >>> node) & 1);
+                }
+                return base + node - ways;
+            }
+            default: {
+                seed ^= seed << 13;
+                seed ^= seed >>> 17;
+                seed ^= seed << 5;
+                return base + (seed & (ways - 1));
+            }
+        }
+    }
+
+    /**
+     * Marks a line as the most recently used in its set
+     *
+     * @param line The line
+     */
+    void touch(int line) {
+        if (line == lastLine && lastBlock != INVALID) {
+            return;
+        }
+        lastLine = line;
+        lastBlock = (tags[line] << setBits) | (line >>> wayBits);
+        if (lastUsed != null) {
+            lastUsed[line] = ++clock;
+        } else if (trees != null) {
+            int set = line >>> wayBits;
+            long tree = trees[set];
+            // Walk from the leaf to the root pointing every node at the other half
+            for (int node = (line & (ways - 1)) + ways; node > 1; node >>>= 1) {
+                if ((node & 1) == 0) {
+                    tree |= 1L << (node >>> 1);
+                } else {
+                    tree &= ~(1L << (node >>> 1));
+                }
+            }
+            trees[set] = tree;
+        }
+    }
+
+    /**
+     * Puts an address in a line, which becomes clean
+     *
+     * @param line The line from {@link #victim(int)}
+     * @param address Any address in the line
+     */
+    void install(int line, int address) {
+        if (line == lastLine) {
+            lastBlock = INVALID;
+        }
+        tags[line] = address >>> offsetBits >>> setBits;
+        dirty[line] = false;
+    }
+
+    boolean isValid(int line) {
+        return tags[line] != INVALID;
+    }
+
+    boolean isDirty(int line) {
+        return dirty[line];
+    }
+
+    void markDirty(int line) {
+        dirty[line] = true;
+    }
+
+    /**
+     * Rebuilds the address of the first byte of a valid line
+     *
+     * @param line The line
+     * @return The address
+     */
+    int lineAddress(int line) {
+        return ((tags[line] << setBits) | (line >>> wayBits)) << offsetBits;
+    }
+
+    /**
+     * Empties the level
+     */
+    void clear() {
+        Arrays.fill(tags, INVALID);
+        Arrays.fill(dirty, false);
+        if (lastUsed != null) {
+            Arrays.fill(lastUsed, 0);
+        }
+        if (trees != null) {
+            Arrays.fill(trees, 0);
+        }
+        clock = 0;
+        lastBlock = INVALID;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the hit rates of many LRU caches from one {@link AddressTrace}
+ * <p>
+ * An LRU set holding n lines always holds the n most recently used lines of the set, so a cache with a given line
+ * size and number of sets hits exactly when the line is among the first ways of its set's recency stack. One replay
+ * with a stack per set, counting how deep each access is found, gives the hit rate of every associativity at once.
+ * Each line size and set count pair is replayed as its own fork-join task
+ * <p>
+ * Stores count like loads, which matches a write-back write-allocate cache. Only single level LRU caches are covered,
+ * PLRU, random replacement and write-through need a {@link CacheHierarchy}
+ */
+public class CacheSweep {
+
+    private final int[] lineSizes;
+    private final int[] setCounts;
+    private final int maxAssociativity;
+
+    /**
+     * Constructor for a sweep over every combination of the line sizes, set counts and power of 2 associativities
+     *
+     * @param lineSizes The bytes per line, powers of 2 of at least 4
+     * @param setCounts The numbers of sets, powers of 2
+     * @param maxAssociativity The largest associativity, a power of 2 up to {@link CacheConfig#MAX_ASSOCIATIVITY}
+     * @throws IllegalArgumentException If a combination is not a valid {@link CacheConfig}
+     */
+    public CacheSweep(int[] lineSizes, int[] setCounts, int maxAssociativity) {
+        for (int lineSize : lineSizes) {
+            for (int sets : setCounts) {
+                if (sets <= 0 || (sets & (sets - 1)) != 0 || (long) sets * lineSize * maxAssociativity > 1 << 30) {
+                    throw new IllegalArgumentException("Set count must be a power of 2 and the cache at most 1 GB: " + sets);
+                }
+                // Checks the line size and associativity
+                new CacheConfig("", sets * lineSize * maxAssociativity, lineSize, maxAssociativity,
+                        CacheConfig.Replacement.LRU, CacheConfig.WritePolicy.WRITE_BACK);
+            }
+        }
+        this.lineSizes = lineSizes.clone();
+        this.setCounts = setCounts.clone();
+        this.maxAssociativity = maxAssociativity;
+    }
+
+    /**
+     * Replays a trace on the common fork-join pool
+     *
+     * @param trace The trace, which must not be recorded to during the sweep
+     * @return One result per configuration ordered by line size, set count and associativity
+     */
+    public List<Result> run(AddressTrace trace) {
+        return run(trace, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Replays a trace
+     *
+     * @param trace The trace, which must not be recorded to during the sweep
+     * @param pool The pool that runs the replays
+     * @return One result per configuration ordered by line size, set count and associativity
+     */
+    public List<Result> run(AddressTrace trace, ForkJoinPool pool) {
+        int[][] geometries = new int[lineSizes.length * setCounts.length][];
+        int i = 0;
+        for (int lineSize : lineSizes) {
+            for (int sets : setCounts) {
+                geometries[i++] = new int[]{lineSize, sets};
+            }
+        }
+        return pool.invoke(new Replay(trace, geometries, 0, geometries.length));
+    }
+
+    /**
+     * Replays the trace for a range of line size and set count pairs, splitting the range until it is one pair
+     */
+    private class Replay extends RecursiveTask<List<Result>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AddressTrace trace;
+        private final int[][] geometries;
+        private final int from;
+        private final int to;
+
+        Replay(AddressTrace trace, int[][] geometries, int from, int to) {
+            this.trace = trace;
+            this.geometries = geometries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Result> compute() {
+            if (to == from) {
+                return new ArrayList<>();
+            }
+            if (to - from == 1) {
+                return replay(trace, geometries[from][0], geometries[from][1]);
+            }
+            int middle = (from + to) >>> 1;
+            Replay second = new Replay(trace, geometries, middle, to);
+            second.fork();
+            List<Result> results = new Replay(trace, geometries, from, middle).compute();
+            results.addAll(second.join());
+            return results;
+        }
+    }
+
+    /**
+     * Replays a trace with one recency stack per set
+     *
+     * @return The results for every associativity
+     */
+    private List<Result> replay(AddressTrace trace, int lineSize, int sets) {
+        int offsetBits = Integer.numberOfTrailingZeros(lineSize);
+        int setMask = sets - 1;
+        int ways = maxAssociativity;
+        // The blocks of each set from most to least recently used, -1 for empty
+        int[] stacks = new int[sets * ways];
+        Arrays.fill(stacks, -1);
+        long[] depths = new long[ways]; //accesses found at each depth, the rest miss in every associativity
+        AddressTrace.Reader reader = trace.reader();
+        while (reader.next()) {
+            int block = reader.address() >>> offsetBits;
+            int base = (block & setMask) * ways;
+            int depth = 0;
+            int moving = block;
+            // Push the block on top, shifting everything above where it was down by one
+            while (depth < ways) {
+                int current = stacks[base + depth];
+                stacks[base + depth] = moving;
+                if (current == block) {
+                    depths[depth]++;
+                    break;
+                }
+                if (current == -1) {
+                    break;
+                }
+                moving = current;
+                depth++;
+            }
+        }
+        List<Result> results = new ArrayList<>();
+        long hits = 0;
+        for (int associativity = 1, depth = 0; associativity <= ways; associativity <<= 1) {
+            for (; depth < associativity; depth++) {
+                hits += depths[depth];
+            }
+            results.add(new Result(lineSize, sets, associativity, hits, trace.size() - hits));
+        }
+        return results;
+    }
+
+    /**
+     * The hits and misses of one cache configuration
+     */
+    public static class Result {
+        public final int lineSize;
+        public final int sets;
+        public final int associativity;
+        public final long hits;
+        public final long misses;
+
+        Result(int lineSize, int sets, int associativity, long hits, long misses) {
+            this.lineSize = lineSize;
+            this.sets = sets;
+            this.associativity = associativity;
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        /**
+         * @return The capacity in bytes
+         */
+        public int size() {
+            return lineSize * sets * associativity;
+        }
+
+        /**
+         * @return The hit rate from 0 to 1, 0 for an empty trace
+         */
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The state of a {@link MipsMachine} between two instructions, taken with {@link MipsMachine#checkpoint()}
+ * <p>
+ * A checkpoint only holds the pages written since the previous checkpoint, which it shares with the memory until a
+ * store copies them, and finds the other pages through the previous checkpoints. When the machine drops the older
+ * checkpoints, the oldest one it keeps takes over their pages. The memory a checkpoint stands for never changes, so
+ * it can be saved with {@link StateManager#save(Checkpoint, java.io.OutputStream, boolean)} on another thread while
+ * the machine keeps running
+ */
+public final class Checkpoint {
+
+    private final long instructionCount;
+    final int memorySize;
+    final int[] register;
+    final int hi;
+    final int lo;
+    final int pc;
+    private volatile Frozen frozen; //replaced as a whole when the previous checkpoints are dropped
+
+    /**
+     * The pages a checkpoint holds and the checkpoint that finds the rest
+     */
+    private static final class Frozen {
+
+        final Checkpoint previous;
+        final int[] pageNumbers;
+        final byte[][] pages;
+
+        Frozen(Checkpoint previous, List<Integer> pageNumbers, List<byte[]> pages) {
+            this.previous = previous;
+            this.pageNumbers = pageNumbers.stream().mapToInt(Integer::intValue).toArray();
+            this.pages = pages.toArray(new byte[0][]);
+        }
+    }
+
+    /**
+     * Constructor that freezes the memory of a machine, only called by the machine between instructions
+     */
+    Checkpoint(MipsMachine machine, Checkpoint previous, long instructionCount) {
+        this.instructionCount = instructionCount;
+        memorySize = machine.memorySize;
+        register = machine.register.clone();
+        hi = machine.hi;
+        lo = machine.lo;
+        pc = machine.pc;
+        List<byte[]> written = new ArrayList<>();
+        List<Integer> writtenNumbers = new ArrayList<>();
+        machine.memory.freeze((page, pageNumber) -> {
+            written.add(page);
+            writtenNumbers.add(pageNumber);
+        });
+        frozen = new Frozen(previous, writtenNumbers, written);
+    }
+
+    /**
+     * Runs an action on every page of memory at the time of the checkpoint, the newest copy of each page only
+     *
+     * @param action Takes the page, which must not be changed, and its page number
+     */
+    void forEachPage(ObjIntConsumer<byte[]> action) {
+        PageBitmap seen = new PageBitmap();
+        Checkpoint checkpoint = this;
+        while (checkpoint != null) {
+            Frozen frozen = checkpoint.frozen;  // Read once, the machine may drop the previous checkpoints meanwhile
+            for (int i = 0; i < frozen.pages.length; i++) {
+                int pageNumber = frozen.pageNumbers[i];
+                if (!seen.get(pageNumber)) {
+                    seen.set(pageNumber);
+                    action.accept(frozen.pages[i], pageNumber);
+                }
+            }
+            checkpoint = frozen.previous;
+        }
+    }
+
+    /**
+     * Takes over every page this checkpoint finds through the previous checkpoints, so they can be dropped. Only
+     * called by the machine, the memory at this checkpoint stays the same
+     */
+    void dropPrevious() {
+        if (frozen.previous == null) {
+            return;
+        }
+        List<byte[]> pages = new ArrayList<>();
+        List<Integer> pageNumbers = new ArrayList<>();
+        forEachPage((page, pageNumber) -> {
+            pages.add(page);
+            pageNumbers.add(pageNumber);
+        });
+        frozen = new Frozen(null, pageNumbers, pages);
+    }
+
+    /**
+     * Gets the checkpoint taken before this one
+     *
+     * @return The checkpoint or null if this is the first since the machine was created or restored from a state, or
+     * the oldest one kept
+     */
+    public Checkpoint getPrevious() {
+        return frozen.previous;
+    }
+
+    /**
+     * Gets how far the program had run when the checkpoint was taken
+     *
+     * @return The number of instructions the machine had executed
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * Getter for the program counter
+     *
+     * @return The program counter at the checkpoint
+     */
+    public int getProgramCounter() {
+        return pc;
+    }
+
+    /**
+     * Gets what the checkpoint cost
+     *
+     * @return The number of pages written since the previous checkpoint, or every page for the oldest one kept
+     */
+    public int getPageCount() {
+        return frozen.pages.length;
+    }
+
+    /**
+     * Gets the number of pages held by this checkpoint and the ones before it
+     *
+     * @return The number of pages, a page frozen by several checkpoints counts once for each
+     */
+    public int getTotalPageCount() {
+        int totalPages = 0;
+        for (Checkpoint checkpoint = this; checkpoint != null; checkpoint = checkpoint.getPrevious()) {
+            totalPages += checkpoint.getPageCount();
+        }
+        return totalPages;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * Superclass of the JVM classes generated by {@link BlockCompiler} for hot {@link BasicBlock}s
+ * <p>
+ * The generated classes live in their own class loader, so everything they need from the machine goes through the
+ * protected helpers here
+ */
+public abstract class CompiledBlock {
+
+    BasicBlock source; //the block this was compiled from
+    protected int executed; //instructions executed by the last call to run
+
+    protected CompiledBlock() {
+    }
+
+    /**
+     * Runs the compiled block, looping inside it while its branch jumps back to its own start
+     *
+     * @param machine The machine to execute on
+     * @param register The register array of the machine
+     * @param maxPasses The most passes through the block, so at most this times its length instructions are executed
+     * @return The program counter to continue from
+     */
+    public abstract int run(MipsMachine machine, int[] register, int maxPasses);
+
+    protected static int load(MipsMachine machine, int address) {
+        return machine.loadWord(address);
+    }
+
+    /**
+     * Stores a word and reports whether the block is still valid, if it is not the compiled code has to stop
+     *
+     * @return false if the store hit the block
+     */
+    protected final boolean store(MipsMachine machine, int address, int value) {
+        machine.storeWord(address, value);
+        return source.valid;
+    }
+
+    /**
+     * Leaves the program counter at an instruction, used when a load or store throws an {@link AlignmentException}
+     */
+    protected static void setPc(MipsMachine machine, int pc) {
+        machine.pc = pc;
+    }
+
+    protected static void multiply(MipsMachine machine, int a, int b) {
+        long results = (long) a * b;
+        machine.hi = (int) (results >> 32);
+        machine.lo = (int) results;
+    }
+
+    protected static int hi(MipsMachine machine) {
+        return machine.hi;
+    }
+
+    protected static int lo(MipsMachine machine) {
+        return machine.lo;
+    }
+
+    protected static int lessThan(int a, int b) {
+        return a < b ? 1 : 0;
+    }
+
+    protected static int lessThanUnsigned(int a, int b) {
+        return Integer.compareUnsigned(a, b) < 0 ? 1 : 0;
+    }
+}
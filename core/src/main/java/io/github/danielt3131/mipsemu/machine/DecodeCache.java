@@ -0,0 +1,77 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * Holds the {@link DecodedInstruction} for every word of memory that has been executed, indexed by word address
+ * <p>
+ * Entries are dropped when the word they were decoded from is written to. The entries are kept per page so only the
+ * pages that hold code take up room
+ */
+public class DecodeCache {
+
+    private final PageTable<DecodedInstruction[]> pages = new PageTable<>();
+
+    /**
+     * Gets the decoded instruction at an address
+     *
+     * @param address The byte address of the instruction, must be word aligned
+     * @return The decoded instruction or null if it has not been decoded yet
+     */
+    public DecodedInstruction get(int address) {
+        if ((address & 3) != 0) {
+            return null;
+        }
+        DecodedInstruction[] page = pages.get(address >>> PageTable.PAGE_SHIFT);
+        return page == null ? null : page[(address >>> 2) & (PageTable.WORDS_PER_PAGE - 1)];
+    }
+
+    /**
+     * Stores a decoded instruction, unaligned addresses are not cached
+     *
+     * @param address The byte address the instruction was read from
+     * @param instruction The decoded instruction
+     */
+    public void put(int address, DecodedInstruction instruction) {
+        if ((address & 3) != 0) {
+            return;
+        }
+        int pageNumber = address >>> PageTable.PAGE_SHIFT;
+        DecodedInstruction[] page = pages.get(pageNumber);
+        if (page == null) {
+            page = new DecodedInstruction[PageTable.WORDS_PER_PAGE];
+            pages.put(pageNumber, page);
+        }
+        page[(address >>> 2) & (PageTable.WORDS_PER_PAGE - 1)] = instruction;
+    }
+
+    /**
+     * Drops the entry for the word that contains the address
+     *
+     * @param address The byte address that was written to
+     */
+    public void invalidate(int address) {
+        DecodedInstruction[] page = pages.get(address >>> PageTable.PAGE_SHIFT);
+        if (page != null) {
+            page[(address >>> 2) & (PageTable.WORDS_PER_PAGE - 1)] = null;
+        }
+    }
+
+    /**
+     * Drops every entry, used when the whole memory is replaced
+     */
+    public void clear() {
+        pages.clear();
+    }
+}
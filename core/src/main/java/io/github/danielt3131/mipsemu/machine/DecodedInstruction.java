@@ -0,0 +1,52 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * An instruction word that has been split into its fields once so {@link MipsMachine} does not have to
+ * re-extract them on every micro step
+ */
+public class DecodedInstruction {
+
+    final int code; //the full instruction word
+    final int opcode; //bits 31-26
+    final int rs; //bits 25-21
+    final int rt; //bits 20-16
+    final int rd; //bits 15-11
+    final int shamt; //bits 10-6
+    final int funct; //bits 5-0
+    final int immediate; //bits 15-0, zero extended
+    final int signedImmediate; //bits 15-0, sign extended
+    final int target; //bits 25-0 of a jump
+    final InstructionHandler handler; //what the instruction does, null if it is unknown
+
+    /**
+     * Decodes an instruction word
+     *
+     * @param code The instruction word to decode
+     */
+    public DecodedInstruction(int code) {
+        this.code = code;
+        opcode = code >>> 26;
+        rs = (code >>> 21) & 0x1F;
+        rt = (code >>> 16) & 0x1F;
+        rd = (code >>> 11) & 0x1F;
+        shamt = (code >>> 6) & 0x1F;
+        funct = code & 0x3F;
+        immediate = code & 0xFFFF;
+        signedImmediate = (short) code;
+        target = code & 0x03FFFFFF;
+        handler = InstructionSet.lookup(opcode, funct);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads big-endian 32-bit MIPS ELF executables into a {@link MipsMachine}
+ * <p>
+ * Only code written for this machine runs as intended. lw and sw always address from $sp (register 29) plus their
+ * offset, whatever base register they name, and branches and jumps have no delay slot, so the instruction after one
+ * only runs when it falls through. Code built by a MIPS cross toolchain relies on both, so an executable whose code
+ * has a lw or sw with another base is rejected. Delay slots cannot be told apart from code for this machine, so code
+ * that only relies on them loads but does not run as compiled
+ * <p>
+ * Every PT_LOAD segment is copied to its virtual address and the part of it past the file bytes, the .bss, is zeroed.
+ * The program counter is set to e_entry and register 28 ($gp in the MIPS ABI) to the _gp symbol, or to the gp value
+ * of the .reginfo segment when there is no symbol table. The file is read through one {@link ByteBuffer}, memory
+ * mapped for files, and the segments are copied straight from it
+ */
+public final class ElfLoader {
+
+    static final byte[] MAGIC_BYTES = {0x7F, 'E', 'L', 'F'};
+    private static final int MAGIC = 0x7F454C46; //\x7FELF
+    private static final int ELFCLASS32 = 1;
+    private static final int ELFDATA2MSB = 2;
+    private static final int ET_EXEC = 2;
+    private static final int EM_MIPS = 8;
+    private static final int HEADER_SIZE = 52;
+    private static final int PT_LOAD = 1;
+    private static final int PT_MIPS_REGINFO = 0x70000000;
+    private static final int PF_X = 1;
+    private static final int SHF_EXECINSTR = 4;
+    private static final int SHT_NOBITS = 8;
+    private static final int LW = 0b100011;
+    private static final int SW = 0b101011;
+    private static final int SP = 29;
+    private static final int SHT_SYMTAB = 2;
+    private static final int SYMBOL_SIZE = 16;
+    private static final byte[] GP_SYMBOL = {'_', 'g', 'p'};
+
+    private ElfLoader() {
+    }
+
+    /**
+     * Loads an executable file into a machine by memory mapping it
+     *
+     * @param file The executable
+     * @param machine The machine
+     * @throws IOException If the file cannot be read or is not a big-endian MIPS ELF32 executable
+     */
+    public static void load(File file, MipsMachine machine) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("ELF file is larger than 2 GB");
+            }
+            load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), machine);
+        }
+    }
+
+    /**
+     * Loads an executable into a machine
+     *
+     * @param elf The whole file starting at index 0
+     * @param machine The machine
+     * @throws IOException If it is not a big-endian MIPS ELF32 executable, a header points outside the file or the code
+     * has a lw or sw this machine would run differently, nothing is loaded then
+     */
+    static void load(ByteBuffer elf, MipsMachine machine) throws IOException {
+        elf = elf.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int size = elf.limit();
+        if (size < HEADER_SIZE || elf.getInt(0) != MAGIC) {
+            throw new IOException("Not an ELF file");
+        }
+        if (elf.get(4) != ELFCLASS32 || elf.get(5) != ELFDATA2MSB) {
+            throw new IOException("Only 32-bit big-endian ELF files can be loaded");
+        }
+        if (elf.getShort(16) != ET_EXEC || elf.getShort(18) != EM_MIPS) {
+            throw new IOException("Not a MIPS executable");
+        }
+        int entry = elf.getInt(24);
+        int programHeaders = elf.getInt(28);
+        int sectionHeaders = elf.getInt(32);
+        int programHeaderSize = elf.getShort(42) & 0xFFFF;
+        int programHeaderCount = elf.getShort(44) & 0xFFFF;
+        int sectionHeaderSize = elf.getShort(46) & 0xFFFF;
+        int sectionHeaderCount = elf.getShort(48) & 0xFFFF;
+        checkTable(programHeaders, programHeaderSize, programHeaderCount, 32, size, "Program header");
+        if (sectionHeaders != 0) {
+            checkTable(sectionHeaders, sectionHeaderSize, sectionHeaderCount, 40, size, "Section header");
+        }
+
+        // Check every segment first so a bad file leaves memory alone
+        Integer gp = null;
+        for (int i = 0; i < programHeaderCount; i++) {
+            int header = programHeaders + i * programHeaderSize;
+            int type = elf.getInt(header);
+            int offset = elf.getInt(header + 4);
+            int fileSize = elf.getInt(header + 16);
+            int memorySize = elf.getInt(header + 20);
+            if (type != PT_LOAD && type != PT_MIPS_REGINFO) {
+                continue;
+            }
+            if (offset < 0 || fileSize < 0 || (long) offset + fileSize > size) {
+                throw new IOException("Segment " + i + " is outside the file");
+            }
+            if (type == PT_LOAD && Integer.compareUnsigned(fileSize, memorySize) > 0) {
+                throw new IOException("Segment " + i + " has more file bytes than memory bytes");
+            }
+            if (type == PT_MIPS_REGINFO && fileSize >= 24) {
+                gp = elf.getInt(offset + 20);   // ri_gp_value
+            }
+        }
+        Integer symbol = findGp(elf, sectionHeaders, sectionHeaderSize, sectionHeaderCount);
+        if (symbol != null) {
+            gp = symbol;
+        }
+        checkCode(elf, programHeaders, programHeaderSize, programHeaderCount, sectionHeaders, sectionHeaderSize,
+                sectionHeaderCount);
+
+        for (int i = 0; i < programHeaderCount; i++) {
+            int header = programHeaders + i * programHeaderSize;
+            if (elf.getInt(header) != PT_LOAD) {
+                continue;
+            }
+            int offset = elf.getInt(header + 4);
+            int address = elf.getInt(header + 8);
+            int fileSize = elf.getInt(header + 16);
+            int memorySize = elf.getInt(header + 20);
+            elf.limit(offset + fileSize).position(offset);
+            machine.memory.write(address, elf);
+            elf.limit(size);
+            machine.memory.zero(address + fileSize, memorySize - fileSize);     // .bss
+            machine.invalidateCode(address, memorySize);
+        }
+        machine.pc = entry;
+        if (gp != null) {
+            machine.register[28] = gp;
+        }
+    }
+
+    private static void checkTable(int offset, int entrySize, int count, int minimumEntrySize, int size, String name)
+            throws IOException {
+        if (count > 0 && (entrySize < minimumEntrySize || offset < 0 || (long) offset + (long) entrySize * count > size)) {
+            throw new IOException(name + " table is outside the file");
+        }
+    }
+
+    /**
+     * Rejects code with a lw or sw whose base is not $sp, as this machine would read or write somewhere else
+     * <p>
+     * The executable sections are checked when the file has them, otherwise the executable segments, which may also
+     * hold read only data
+     */
+    private static void checkCode(ByteBuffer elf, int programHeaders, int programHeaderSize, int programHeaderCount,
+                                  int sectionHeaders, int sectionHeaderSize, int sectionHeaderCount)
+            throws IOException {
+        int size = elf.limit();
+        boolean sections = false;
+        for (int i = 0; sectionHeaders != 0 && i < sectionHeaderCount; i++) {
+            int header = sectionHeaders + i * sectionHeaderSize;
+            if ((elf.getInt(header + 8) & SHF_EXECINSTR) == 0 || elf.getInt(header + 4) == SHT_NOBITS) {
+                continue;
+            }
+            int offset = elf.getInt(header + 16);
+            int codeSize = elf.getInt(header + 20);
+            if (offset < 0 || codeSize < 0 || (long) offset + codeSize > size) {
+                throw new IOException("Section " + i + " is outside the file");
+            }
+            checkLoadsAndStores(elf, offset, codeSize, elf.getInt(header + 12));
+            sections = true;
+        }
+        for (int i = 0; !sections && i < programHeaderCount; i++) {
+            int header = programHeaders + i * programHeaderSize;
+            if (elf.getInt(header) == PT_LOAD && (elf.getInt(header + 24) & PF_X) != 0) {
+                checkLoadsAndStores(elf, elf.getInt(header + 4), elf.getInt(header + 16), elf.getInt(header + 8));
+            }
+        }
+    }
+
+    /**
+     * Rejects a lw or sw whose base is not $sp in some code, which was checked to be inside the file
+     */
+    private static void checkLoadsAndStores(ByteBuffer elf, int offset, int codeSize, int address) throws IOException {
+        for (int i = 0; i + 4 <= codeSize; i += 4) {
+            int code = elf.getInt(offset + i);
+            int opcode = code >>> 26;
+            int base = (code >>> 21) & 31;
+            if ((opcode == LW || opcode == SW) && base != SP) {
+                throw new IOException((opcode == LW ? "lw" : "sw") + " at 0x" + Integer.toHexString(address + i)
+                        + " addresses from register " + base + ", this machine always uses $sp so the program would"
+                        + " not run as compiled");
+            }
+        }
+    }
+
+    /**
+     * Looks up the _gp symbol in the symbol tables, comparing the names in place
+     *
+     * @return The value of the symbol, null if there is none
+     */
+    private static Integer findGp(ByteBuffer elf, int sectionHeaders, int sectionHeaderSize, int sectionHeaderCount)
+            throws IOException {
+        if (sectionHeaders == 0) {
+            return null;
+        }
+        int size = elf.limit();
+        for (int i = 0; i < sectionHeaderCount; i++) {
+            int header = sectionHeaders + i * sectionHeaderSize;
+            if (elf.getInt(header + 4) != SHT_SYMTAB) {
+                continue;
+            }
+            int symbols = elf.getInt(header + 16);
+            int symbolsSize = elf.getInt(header + 20);
+            int link = elf.getInt(header + 24);
+            if (symbols < 0 || symbolsSize < 0 || (long) symbols + symbolsSize > size
+                    || link < 0 || link >= sectionHeaderCount) {
+                throw new IOException("Symbol table " + i + " is outside the file");
+            }
+            int strings = elf.getInt(sectionHeaders + link * sectionHeaderSize + 16);
+            int stringsSize = elf.getInt(sectionHeaders + link * sectionHeaderSize + 20);
+            if (strings < 0 || stringsSize < 0 || (long) strings + stringsSize > size) {
+                throw new IOException("String table " + link + " is outside the file");
+            }
+            for (int symbol = symbols; symbol + SYMBOL_SIZE <= symbols + symbolsSize; symbol += SYMBOL_SIZE) {
+                int name = elf.getInt(symbol);
+                if (name >= 0 && nameEquals(elf, strings + name, strings + stringsSize, GP_SYMBOL)) {
+                    return elf.getInt(symbol + 4);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tells if the null terminated string at an offset is a name
+     */
+    private static boolean nameEquals(ByteBuffer elf, int offset, int end, byte[] name) {
+        if ((long) offset + name.length >= end) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (elf.get(offset + i) != name[i]) {
+                return false;
+            }
+        }
+        return elf.get(offset + name.length) == 0;
+    }
+
+    /**
+     * Tells if a file starts with the ELF magic
+     *
+     * @param file The file
+     * @return If it is an ELF file
+     * @throws IOException If the file cannot be read
+     */
+    public static boolean isElf(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    return false;
+                }
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * Executes whole instructions on the state of a {@link MipsMachine} without any of the narration, display updates or
+ * logging done by the micro steps
+ * <p>
+ * The machine is responsible for sending its state to the display once the engine stops
+ */
+public class FastEngine {
+
+    static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+
+    private final MipsMachine machine;
+    private final BlockCompiler compiler; //null where generated classes cannot be loaded
+    private int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+
+    /**
+     * Constructor for the fast engine
+     *
+     * @param machine The machine whose registers, program counter and memory will be used
+     */
+    public FastEngine(MipsMachine machine) {
+        this.machine = machine;
+        compiler = BlockCompiler.isAvailable() ? new BlockCompiler() : null;
+    }
+
+    /**
+     * Sets how many times a block is interpreted before it is compiled
+     *
+     * @param compileThreshold The number of executions, 0 or less turns the compiler off
+     */
+    public void setCompileThreshold(int compileThreshold) {
+        this.compileThreshold = compileThreshold;
+    }
+
+    /**
+     * Runs instructions until there are none left to execute
+     * <p>
+     * Whole {@link BasicBlock}s are executed at a time, following the links between them, and single instructions
+     * are only used where no block can be translated. Blocks that run often enough are compiled to JVM bytecode by
+     * the {@link BlockCompiler} when it is available
+     *
+     * @return The number of instructions executed
+     */
+    public long run() {
+        return run(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs instructions until there are none left to execute or the limit is reached
+     * <p>
+     * Never runs more than the limit: a block longer than what is left is single stepped and a compiled block is only
+     * allowed as many passes as fit
+     *
+     * @param limit The number of instructions after which the engine stops
+     * @return The number of instructions executed
+     */
+    public long run(long limit) {
+        long count = 0;
+        BlockCache blockCache = machine.blockCache;
+        BasicBlock block = blockCache.lookup(machine.pc);
+        while (count < limit) {
+            if (block == null || block.instructions.length > limit - count) {
+                if (!step()) {
+                    return count;
+                }
+                count++;
+                block = blockCache.lookup(machine.pc);
+                continue;
+            }
+            CompiledBlock compiled = block.compiled;
+            if (compiled != null) {
+                int maxPasses = (int) Math.min((limit - count) / block.instructions.length, BlockCompiler.LOOP_BUDGET);
+                machine.pc = compiled.run(machine, machine.register, maxPasses);
+                count += compiled.executed;
+            } else {
+                count += block.execute(machine);
+                if (compiler != null && compileThreshold > 0 && ++block.executions == compileThreshold && block.valid) {
+                    block.compiled = compiler.compile(block);
+                }
+            }
+            block = block.next(machine.pc, blockCache);
+        }
+        return count;
+    }
+
+    /**
+     * Executes the instruction at the program counter through its {@link InstructionHandler}
+     *
+     * @return false if the machine has stopped, either because the word at the program counter is 0 or the
+     * instruction is unknown
+     */
+    public boolean step() {
+        DecodedInstruction instruction = machine.fetch();
+        if (instruction.code == 0) {
+            return false;
+        }
+        if (instruction.handler == null) {
+            Log.e("UNKOWN OP CODE", Integer.toBinaryString(instruction.code));
+            return false;
+        }
+        instruction.handler.execute(machine, instruction);
+        return true;
+    }
+}
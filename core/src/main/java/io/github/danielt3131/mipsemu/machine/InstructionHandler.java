@@ -0,0 +1,53 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * The behaviour of one instruction, looked up from the opcode and funct tables in {@link InstructionSet}
+ */
+public interface InstructionHandler {
+
+    /**
+     * Getter for the mnemonic of the instruction
+     *
+     * @return The mnemonic, for example "add"
+     */
+    String getName();
+
+    /**
+     * Whether the instruction can move the program counter somewhere other than the next word, which ends a
+     * {@link BasicBlock}
+     *
+     * @return true for branches and jumps
+     */
+    boolean changesControlFlow();
+
+    /**
+     * Executes the whole instruction, including moving the program counter, without narrating it
+     *
+     * @param machine The machine to execute on
+     * @param instruction The decoded instruction
+     */
+    void execute(MipsMachine machine, DecodedInstruction instruction);
+
+    /**
+     * Runs one micro step of the instruction and narrates it to the display
+     *
+     * @param machine The machine to execute on
+     * @param instruction The decoded instruction
+     * @param mstep The micro step to run, starting at 0
+     * @return true if that was the last micro step of the instruction
+     */
+    boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep);
+}
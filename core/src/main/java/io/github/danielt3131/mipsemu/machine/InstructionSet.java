@@ -0,0 +1,683 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.Locale;
+
+import io.github.danielt3131.mipsemu.Reference;
+
+/**
+ * The instructions the machine understands, kept in two 64 entry tables: one indexed by opcode and one indexed by the
+ * funct field of R-type (opcode 0) instructions
+ * <p>
+ * To add an instruction register a handler for its opcode or funct in the static block below, most instructions only
+ * need to extend one of the handler shapes at the bottom of this class
+ */
+public final class InstructionSet {
+
+    private static final InstructionHandler[] OPCODE_TABLE = new InstructionHandler[64];
+    private static final InstructionHandler[] FUNCT_TABLE = new InstructionHandler[64];
+
+    static {
+        // R-type, selected by funct
+        funct(0b100000, new RegisterAlu("add") {
+            @Override
+            int compute(int a, int b) {
+                return a + b;
+            }
+        });
+        funct(0b100001, new RegisterAlu("addu") {
+            @Override
+            int compute(int a, int b) {
+                return a + b;
+            }
+        });
+        funct(0b100010, new RegisterAlu("sub") {
+            @Override
+            int compute(int a, int b) {
+                return a - b;
+            }
+        });
+        funct(0b100011, new RegisterAlu("subu") {
+            @Override
+            int compute(int a, int b) {
+                return a - b;
+            }
+        });
+        funct(0b100100, new RegisterAlu("and") {
+            @Override
+            int compute(int a, int b) {
+                return a & b;
+            }
+        });
+        funct(0b100101, new RegisterAlu("or") {
+            @Override
+            int compute(int a, int b) {
+                return a | b;
+            }
+        });
+        funct(0b100110, new RegisterAlu("xor") {
+            @Override
+            int compute(int a, int b) {
+                return a ^ b;
+            }
+        });
+        funct(0b101010, new RegisterAlu("slt") {
+            @Override
+            int compute(int a, int b) {
+                return a < b ? 1 : 0;
+            }
+        });
+        funct(0b101011, new RegisterAlu("sltu") {
+            @Override
+            int compute(int a, int b) {
+                return Integer.compareUnsigned(a, b) < 0 ? 1 : 0;
+            }
+        });
+        funct(0b000000, new ShiftAlu("sll") {
+            @Override
+            int compute(int a, int b) {
+                return a << b;
+            }
+        });
+        funct(0b000010, new ShiftAlu("srl") {
+            @Override
+            int compute(int a, int b) {
+                return a >>> b;
+            }
+        });
+        funct(0b000011, new ShiftAlu("sra") {
+            @Override
+            int compute(int a, int b) {
+                return a >> b;
+            }
+        });
+        funct(0b100111, new Not());
+        funct(0b011000, new Multiply());
+        funct(0b010000, new MoveFrom("mfhi", true));
+        funct(0b010010, new MoveFrom("mflo", false));
+        funct(0b001000, new JumpRegister());
+
+        // I-type and J-type, selected by opcode
+        opcode(0b001000, new ImmediateAlu("addi", true) {
+            @Override
+            int compute(int a, int b) {
+                return a + b;
+            }
+        });
+        opcode(0b001001, new ImmediateAlu("addiu", true) {
+            @Override
+            int compute(int a, int b) {
+                return a + b;
+            }
+        });
+        opcode(0b001010, new ImmediateAlu("slti", true) {
+            @Override
+            int compute(int a, int b) {
+                return a < b ? 1 : 0;
+            }
+        });
+        opcode(0b001011, new ImmediateAlu("sltiu", true) {
+            @Override
+            int compute(int a, int b) {
+                return Integer.compareUnsigned(a, b) < 0 ? 1 : 0;
+            }
+        });
+        opcode(0b001100, new ImmediateAlu("andi", false) {
+            @Override
+            int compute(int a, int b) {
+                return a & b;
+            }
+        });
+        opcode(0b001101, new ImmediateAlu("ori", false) {
+            @Override
+            int compute(int a, int b) {
+                return a | b;
+            }
+        });
+        opcode(0b001110, new ImmediateAlu("xori", false) {
+            @Override
+            int compute(int a, int b) {
+                return a ^ b;
+            }
+        });
+        opcode(0b001111, new ImmediateAlu("lui", false) {
+            @Override
+            int compute(int a, int b) {
+                return b << 16;
+            }
+        });
+        opcode(0b100011, new LoadWord());
+        opcode(0b101011, new StoreWord());
+        opcode(0b000010, new Jump("j", false));
+        opcode(0b000011, new Jump("jal", true));
+        opcode(0b000100, new Branch("beq", "=", false, "register %s and %s match, will branch", "register %s and %s do NOT match, will NOT branch") {
+            @Override
+            boolean taken(int a, int b) {
+                return a == b;
+            }
+        });
+        opcode(0b000101, new Branch("bne", "!=", false, "register %s and %s do NOT match, will branch", "register %s and %s do match, will NOT branch") {
+            @Override
+            boolean taken(int a, int b) {
+                return a != b;
+            }
+        });
+        opcode(0b000110, new Branch("blez", "<=", true, "register %s is less than or equal to %s, will branch", "register %s is NOT less than or equal to %s, will NOT branch") {
+            @Override
+            boolean taken(int a, int b) {
+                return a <= b;
+            }
+        });
+        opcode(0b000001, new Branch("bgtz", ">", true, "register %s is greater than %s, will branch", "register %s is NOT greater than %s, will NOT branch") {
+            @Override
+            boolean taken(int a, int b) {
+                return a > b;
+            }
+        });
+    }
+
+    private InstructionSet() {
+    }
+
+    /**
+     * Finds the handler for an instruction
+     *
+     * @param opcode The opcode of the instruction
+     * @param funct The funct field of the instruction, only used when the opcode is 0
+     * @return The handler or null if the instruction is unknown
+     */
+    public static InstructionHandler lookup(int opcode, int funct) {
+        return opcode == 0 ? FUNCT_TABLE[funct] : OPCODE_TABLE[opcode];
+    }
+
+    private static void opcode(int opcode, InstructionHandler handler) {
+        OPCODE_TABLE[opcode] = handler;
+    }
+
+    private static void funct(int funct, InstructionHandler handler) {
+        FUNCT_TABLE[funct] = handler;
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(Locale.US, format, args);
+    }
+
+    /**
+     * Base for every handler, holds the mnemonic
+     */
+    abstract static class Handler implements InstructionHandler {
+        final String name;
+
+        Handler(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean changesControlFlow() {
+            return false;
+        }
+    }
+
+    /**
+     * R-type instruction that puts the result of two registers through the ALU into rd
+     */
+    abstract static class RegisterAlu extends Handler {
+
+        RegisterAlu(String name) {
+            super(name);
+        }
+
+        abstract int compute(int a, int b);
+
+        int left(MipsMachine machine, DecodedInstruction instruction) {
+            return machine.register[instruction.rs];
+        }
+
+        int right(MipsMachine machine, DecodedInstruction instruction) {
+            return machine.register[instruction.rt];
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            machine.register[instruction.rd] = compute(left(machine, instruction), right(machine, instruction));
+            machine.pc += 4;
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            int d = instruction.rd;
+            int result = compute(left(machine, instruction), right(machine, instruction));
+            if (mstep == 0) {
+                machine.sendToDisplay(format("Sending %d to ALU", left(machine, instruction)));
+            } else if (mstep == 1) {
+                machine.sendToDisplay(format("Sending %d to ALU", right(machine, instruction)));
+            } else if (mstep == 2) {
+                machine.sendToDisplay("Sending \"" + name + "\" to ALU");
+            } else if (mstep == 3) {
+                machine.sendToDisplay(format("Retrieved %d from ALU", result));
+            } else if (mstep == 4) {
+                machine.sendToDisplay(format("Placing %d in register %s", result, Reference.registerNames[d]));
+                machine.register[d] = result;
+                machine.sendIndividualRegisterToDisplay(d);
+            } else {
+                machine.sendToDisplay("Increasing PC by 4");
+                machine.increaseProgramCounter(4);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * R-type shift that puts rt and the shift amount through the ALU into rd
+     */
+    abstract static class ShiftAlu extends RegisterAlu {
+
+        ShiftAlu(String name) {
+            super(name);
+        }
+
+        @Override
+        int left(MipsMachine machine, DecodedInstruction instruction) {
+            return machine.register[instruction.rt];
+        }
+
+        @Override
+        int right(MipsMachine machine, DecodedInstruction instruction) {
+            return instruction.shamt;
+        }
+    }
+
+    /**
+     * I-type instruction that puts rs and the immediate through the ALU into rt
+     */
+    abstract static class ImmediateAlu extends Handler {
+        private final boolean signed;
+
+        /**
+         * @param name The mnemonic
+         * @param signed If true the immediate is sign extended otherwise it is zero extended
+         */
+        ImmediateAlu(String name, boolean signed) {
+            super(name);
+            this.signed = signed;
+        }
+
+        abstract int compute(int a, int b);
+
+        int immediate(DecodedInstruction instruction) {
+            return signed ? instruction.signedImmediate : instruction.immediate;
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            machine.register[instruction.rt] = compute(machine.register[instruction.rs], immediate(instruction));
+            machine.pc += 4;
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            int s = instruction.rs;
+            int t = instruction.rt;
+            int i = immediate(instruction);
+            int result = compute(machine.register[s], i);
+            if (mstep == 0) {
+                machine.sendToDisplay(format("Sending %d to ALU", machine.register[s]));
+            } else if (mstep == 1) {
+                machine.sendToDisplay(format("Sending %d to ALU", i));
+            } else if (mstep == 2) {
+                machine.sendToDisplay("Sending \"" + name + "\" to ALU");
+            } else if (mstep == 3) {
+                machine.sendToDisplay(format("Retrieved %d from ALU", result));
+            } else if (mstep == 4) {
+                machine.sendToDisplay(format("Placing %d in register %s", result, Reference.registerNames[t]));
+                machine.register[t] = result;
+                machine.sendIndividualRegisterToDisplay(t);
+            } else {
+                machine.sendToDisplay("Increasing PC by 4");
+                machine.increaseProgramCounter(4);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Bitwise not of rs into rd
+     */
+    static class Not extends Handler {
+
+        Not() {
+            super("not");
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            machine.register[instruction.rd] = ~machine.register[instruction.rs];
+            machine.pc += 4;
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            int d = instruction.rd;
+            int result = ~machine.register[instruction.rs]; //Compute bitwise NOT from source register
+            if (mstep == 0) {
+                machine.sendToDisplay(format("Sending %d to ALU for NOT operation", machine.register[instruction.rs]));
+            } else if (mstep == 1) {
+                machine.sendToDisplay(format("NOT result: %d", result));
+            } else if (mstep == 2) {
+                machine.sendToDisplay(format("Placing %d in register %s", result, Reference.registerNames[d]));
+                machine.register[d] = result;
+                machine.sendIndividualRegisterToDisplay(d);
+            } else {
+                machine.sendToDisplay("Increasing PC by 4");
+                machine.increaseProgramCounter(4);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Multiplies rs and rt into hi and lo
+     */
+    static class Multiply extends Handler {
+
+        Multiply() {
+            super("mult");
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            long results = (long) machine.register[instruction.rs] * machine.register[instruction.rt];
+            machine.hi = (int) (results >> 32);
+            machine.lo = (int) results;
+            machine.pc += 4;
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            int val1 = machine.register[instruction.rs];
+            int val2 = machine.register[instruction.rt];
+            long results = (long) val1 * val2;
+            if (mstep == 0) {
+                machine.sendToDisplay(format("Sending %d to ALU", val1));
+            } else if (mstep == 1) {
+                machine.sendToDisplay(format("Sending %d to ALU", val2));
+            } else if (mstep == 2) {
+                machine.sendToDisplay("Sending \"mul\" to ALU");
+            } else if (mstep == 3) {
+                machine.sendToDisplay(format("Retrieved %d from ALU", results));
+            } else if (mstep == 4) {
+                machine.hi = (int) (results >> 32);
+                machine.sendToDisplay(format("Placing %d in register hi", machine.hi));
+            } else if (mstep == 5) {
+                machine.lo = (int) results;
+                machine.sendToDisplay(format("Placing %d in register lo", machine.lo));
+            } else {
+                machine.sendToDisplay("Increasing PC by 4");
+                machine.increaseProgramCounter(4);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Copies hi or lo into rd
+     */
+    static class MoveFrom extends Handler {
+        private final boolean fromHi;
+
+        MoveFrom(String name, boolean fromHi) {
+            super(name);
+            this.fromHi = fromHi;
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            machine.register[instruction.rd] = fromHi ? machine.hi : machine.lo;
+            machine.pc += 4;
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            int d = instruction.rd;
+            if (mstep == 0) {
+                int value = fromHi ? machine.hi : machine.lo;
+                machine.sendToDisplay(format("Placing %d from register %s in register %s", value, fromHi ? "hi" : "lo", Reference.registerNames[d]));
+                machine.register[d] = value;
+                machine.sendIndividualRegisterToDisplay(d);
+                return false;
+            }
+            machine.sendToDisplay("Increasing PC by 4");
+            machine.increaseProgramCounter(4);
+            return true;
+        }
+    }
+
+    /**
+     * Loads a word from memory into rt, the address is $sp plus the offset
+     */
+    static class LoadWord extends Handler {
+
+        LoadWord() {
+            super("lw");
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            machine.register[instruction.rt] = machine.loadWord(machine.register[29] + instruction.signedImmediate);
+            machine.pc += 4;
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            int t = instruction.rt;
+            int address = machine.register[29] + instruction.signedImmediate;
+            if (mstep == 0) {
+                // Peek at memory directly so the narration is not counted as a load
+                machine.sendToDisplay(format("Grabbing %d from memory %s", machine.memory.loadWord(address), Integer.toHexString(address)));
+            } else if (mstep == 1) {
+                int value = machine.loadWord(address);
+                machine.traceLoad(address, value);
+                machine.sendToDisplay(format("Putting %d to register %s", value, Reference.registerNames[t]));
+                machine.register[t] = value;
+            } else {
+                machine.sendToDisplay("Increasing PC by 4");
+                machine.increaseProgramCounter(4);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Stores rt to memory, the address is $sp plus the offset
+     */
+    static class StoreWord extends Handler {
+
+        StoreWord() {
+            super("sw");
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            machine.storeWord(machine.register[29] + instruction.signedImmediate, machine.register[instruction.rt]);
+            machine.pc += 4;
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            int s = instruction.rt;
+            int address = machine.register[29] + instruction.signedImmediate;
+            if (mstep == 0) {
+                machine.sendToDisplay(format("Grabbing %d from register %s", machine.register[s], Reference.registerNames[s]));
+            } else if (mstep == 1) {
+                machine.sendToDisplay(format("Putting %d into memory %s", machine.register[s], Integer.toHexString(address)));
+                machine.storeWord(address, machine.register[s]);
+                machine.traceStore(address, machine.register[s]);
+                machine.sendMemory(address, 4);   // Only the row of the word needs redrawing
+            } else {
+                machine.sendToDisplay("Increasing PC by 4");
+                machine.increaseProgramCounter(4);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Jumps to the target, keeping the top 4 bits of the program counter, and optionally links to $ra
+     */
+    static class Jump extends Handler {
+        private final boolean link;
+
+        Jump(String name, boolean link) {
+            super(name);
+            this.link = link;
+        }
+
+        static int target(int pc, DecodedInstruction instruction) {
+            return (pc & 0xF0000000) | (instruction.target << 2);
+        }
+
+        @Override
+        public boolean changesControlFlow() {
+            return true;
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            if (link) {
+                machine.register[31] = machine.pc + 4;
+            }
+            machine.pc = target(machine.pc, instruction);
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            if (link && mstep == 0) {
+                machine.sendToDisplay(format("Placing %d in register %s", machine.pc + 4, Reference.registerNames[31]));
+                machine.register[31] = machine.pc + 4;
+                return false;
+            }
+            int t = target(machine.pc, instruction);
+            machine.sendToDisplay(format("Setting pc to %d", t));
+            machine.setProgramCounter(t);
+            return true;
+        }
+    }
+
+    /**
+     * Jumps to the address in rs
+     */
+    static class JumpRegister extends Handler {
+
+        JumpRegister() {
+            super("jr");
+        }
+
+        @Override
+        public boolean changesControlFlow() {
+            return true;
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            machine.pc = machine.register[instruction.rs];
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            int t = machine.register[instruction.rs];
+            machine.sendToDisplay(format("Setting pc to %d from register %s", t, Reference.registerNames[instruction.rs]));
+            machine.setProgramCounter(t);
+            return true;
+        }
+    }
+
+    /**
+     * Conditional branch comparing rs to rt (or to 0), the target is the program counter of the branch plus the offset
+     */
+    abstract static class Branch extends Handler {
+        private final String operation;
+        private final boolean compareToZero;
+        private final String takenMessage, notTakenMessage;
+
+        /**
+         * @param name The mnemonic
+         * @param operation The comparison sent to the ALU
+         * @param compareToZero If true rs is compared to 0 instead of rt
+         * @param takenMessage The narration when the branch is taken, formatted with the two register names
+         * @param notTakenMessage The narration when the branch is not taken, formatted with the two register names
+         */
+        Branch(String name, String operation, boolean compareToZero, String takenMessage, String notTakenMessage) {
+            super(name);
+            this.operation = operation;
+            this.compareToZero = compareToZero;
+            this.takenMessage = takenMessage;
+            this.notTakenMessage = notTakenMessage;
+        }
+
+        abstract boolean taken(int a, int b);
+
+        int right(MipsMachine machine, DecodedInstruction instruction) {
+            return compareToZero ? 0 : machine.register[instruction.rt];
+        }
+
+        @Override
+        public boolean changesControlFlow() {
+            return true;
+        }
+
+        @Override
+        public void execute(MipsMachine machine, DecodedInstruction instruction) {
+            machine.pc += taken(machine.register[instruction.rs], right(machine, instruction)) ? instruction.signedImmediate << 2 : 4;
+        }
+
+        @Override
+        public boolean microStep(MipsMachine machine, DecodedInstruction instruction, int mstep) {
+            int s = instruction.rs;
+            int offset = instruction.signedImmediate << 2;
+            boolean taken = taken(machine.register[s], right(machine, instruction));
+            String rightName = Reference.registerNames[compareToZero ? 0 : instruction.rt];
+            if (mstep == 0) {
+                machine.sendToDisplay(format("Sending %d to ALU", machine.register[s]));
+            } else if (mstep == 1) {
+                machine.sendToDisplay(format("Sending %d to ALU", right(machine, instruction)));
+            } else if (mstep == 2) {
+                machine.sendToDisplay("Sending \"" + operation + "\" to ALU");
+            } else if (mstep == 3) {
+                machine.sendToDisplay(format(taken ? takenMessage : notTakenMessage, Reference.registerNames[s], rightName));
+            } else {
+                if (taken) {
+                    machine.sendToDisplay("Setting PC to " + (machine.pc + offset));
+                    machine.setProgramCounter(machine.pc + offset);
+                } else {
+                    machine.sendToDisplay("Increasing PC by 4");
+                    machine.increaseProgramCounter(4);
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+import io.github.danielt3131.mipsemu.Reference;
+
+/**
+ * A binary log of the instructions a {@link MipsMachine} steps through, replacing the narration text log
+ * <p>
+ * Every event is 16 bytes: the kind, the program counter of the instruction and two values. The machine thread puts
+ * events in a preallocated ring buffer and a background thread drains it to the file through a {@link FileChannel},
+ * so recording never formats text or waits on the disk unless the ring is full. The drain thread sleeps while fewer
+ * than a write's worth of events are waiting, until {@link #flush()} or {@link #close()}. The readable log is made
+ * with {@link #render(File, Writer)} when it is needed
+ * <p>
+ * The file starts with the magic MITR and a version int, then the events until the end of the file
+ */
+public class InstructionTrace implements Closeable {
+
+    public static final int EVENT_SIZE = 16;
+    public static final int DEFAULT_CAPACITY = 1 << 16; //events, 1 MB
+
+    static final int INSTRUCTION = 1; //the instruction word
+    static final int REGISTER = 2; //the register index, 32 for hi and 33 for lo, and the new value
+    static final int LOAD = 3; //the address and the word loaded
+    static final int STORE = 4; //the address and the word stored
+
+    private static final int MAGIC = 0x4D495452; //MITR
+    private static final int VERSION = 1;
+    private static final int DRAIN_EVENTS = 4096; //written per channel write, also what wakes the drain thread
+
+    private final int[] ring; //4 ints per event
+    private final int mask;
+    private volatile long head; //events put, only written by the machine thread
+    private volatile long tail; //events taken from the ring, only written by the drain thread
+    private volatile long written; //events in the file, only written by the drain thread
+    private volatile boolean closed;
+    private volatile boolean sleeping; //if the drain thread is parked until woken
+    private volatile IOException failure;
+
+    private final FileChannel channel;
+    final Thread drainer;
+
+    /**
+     * Constructor for a trace with the default capacity that starts draining to a file right away
+     *
+     * @param file The file to create or overwrite
+     * @throws IOException If the file cannot be written
+     */
+    public InstructionTrace(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for a trace that starts draining to a file right away
+     *
+     * @param file The file to create or overwrite
+     * @param capacity The number of events the ring holds, a power of 2
+     * @throws IOException If the file cannot be written
+     */
+    public InstructionTrace(File file, int capacity) throws IOException {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        }
+        ring = new int[capacity * 4];
+        mask = capacity - 1;
+        channel = new FileOutputStream(file).getChannel();
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        writeFully(header);
+        drainer = new Thread(this::drain, "instruction-trace");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    void instruction(int pc, int code) {
+        put(INSTRUCTION, pc, code, 0);
+    }
+
+    void register(int pc, int index, int value) {
+        put(REGISTER, pc, index, value);
+    }
+
+    void load(int pc, int address, int value) {
+        put(LOAD, pc, address, value);
+    }
+
+    void store(int pc, int address, int value) {
+        put(STORE, pc, address, value);
+    }
+
+    /**
+     * Puts an event in the ring, waiting for the drain thread if it is full
+     */
+    private void put(int kind, int pc, int a, int b) {
+        long position = head;
+        while (position - tail > mask) {
+            if (closed || failure != null) {
+                return;     // Nothing will drain it any more
+            }
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(10_000);
+        }
+        if (closed) {
+            return;
+        }
+        int i = (int) (position & mask) << 2;
+        ring[i] = kind;
+        ring[i + 1] = pc;
+        ring[i + 2] = a;
+        ring[i + 3] = b;
+        head = position + 1;    // Publishes the event to the drain thread
+        if (sleeping && position + 1 - tail >= DRAIN_EVENTS) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    /**
+     * The drain thread, writes whatever is in the ring and sleeps when it is empty until {@link #put} has a write's
+     * worth of events, {@link #flush()} or {@link #close()}
+     */
+    private void drain() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DRAIN_EVENTS * EVENT_SIZE);
+        try {
+            while (true) {
+                boolean stopping = closed;  // Read before head so the last events are not missed
+                long start = tail;
+                long end = Math.min(head, start + DRAIN_EVENTS);
+                if (start == end) {
+                    if (stopping) {
+                        return;
+                    }
+                    sleeping = true;
+                    // Checked again after sleeping is set, a put that missed it has already moved head
+                    if (head == tail && !closed) {
+                        LockSupport.park(this);
+                    }
+                    sleeping = false;
+                    continue;
+                }
+                buffer.clear();
+                for (long position = start; position < end; position++) {
+                    int i = (int) (position & mask) << 2;
+                    buffer.putInt(ring[i]).putInt(ring[i + 1]).putInt(ring[i + 2]).putInt(ring[i + 3]);
+                }
+                tail = end;     // The slots can be reused once copied
+                buffer.flip();
+                writeFully(buffer);
+                written = end;
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Gets the number of events recorded so far
+     *
+     * @return The count
+     */
+    public long size() {
+        return head;
+    }
+
+    /**
+     * Waits for every event recorded so far to be written to the file, recording can go on afterwards
+     *
+     * @throws IOException If writing the trace failed
+     */
+    public void flush() throws IOException {
+        long target = head;
+        while (written < target && !closed && failure == null) {
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(100_000);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Stops recording, waits for every event to be written and closes the file, does nothing if already closed
+     *
+     * @throws IOException If writing the trace failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            LockSupport.unpark(drainer);
+            try {
+                drainer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes a readable log of a closed or flushed trace, one line per instruction followed by the registers and memory
+     * it changed
+     *
+     * @param trace The trace file
+     * @param out Where to write the log, it is not closed
+     * @throws IOException If reading or writing fails or the file is not a trace
+     */
+    public static void render(File trace, Writer out) throws IOException {
+        try (FileChannel in = new FileInputStream(trace).getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(DRAIN_EVENTS * EVENT_SIZE);
+            buffer.limit(0);
+            if (!readAtLeast(in, buffer, 8) || buffer.getInt() != MAGIC) {
+                throw new IOException("Not an instruction trace");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported instruction trace version " + version);
+            }
+            StringBuilder line = new StringBuilder();
+            while (buffer.remaining() >= EVENT_SIZE || readAtLeast(in, buffer, EVENT_SIZE)) {
+                int kind = buffer.getInt();
+                int pc = buffer.getInt();
+                int a = buffer.getInt();
+                int b = buffer.getInt();
+                line.setLength(0);
+                switch (kind) {
+                    case INSTRUCTION: {
+                        DecodedInstruction instruction = new DecodedInstruction(a);
+                        line.append(String.format(Locale.US, "0x%08x: %08x %s", pc, a,
+                                instruction.handler == null ? "unknown" : instruction.handler.getName()));
+                        break;
+                    }
+                    case REGISTER:
+                        line.append("    ").append(a == 32 ? "hi" : a == 33 ? "lo" : Reference.registerNames[a])
+                                .append(" = ").append(b);
+                        break;
+                    case LOAD:
+                        line.append(String.format(Locale.US, "    loaded %d from memory 0x%08x", b, a));
+                        break;
+                    case STORE:
+                        line.append(String.format(Locale.US, "    stored %d to memory 0x%08x", b, a));
+                        break;
+                    default:
+                        throw new IOException("Unknown instruction trace event " + kind);
+                }
+                out.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * Keeps the unread bytes of the buffer and reads until there are at least some bytes to read
+     *
+     * @return false if the file ended first, a partly written last event is ignored
+     */
+    private static boolean readAtLeast(FileChannel in, ByteBuffer buffer, int bytes) throws IOException {
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (in.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logging for the machine package with the same calls as android.util.Log, backed by java.util.logging so the core
+ * does not depend on Android
+ * <p>
+ * Debug messages are logged at {@link Level#FINE} so they are off unless the logging configuration turns them on
+ */
+final class Log {
+
+    private static final Logger LOGGER = Logger.getLogger("io.github.danielt3131.mipsemu.machine");
+
+    private Log() {
+    }
+
+    static void d(String tag, String message) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(tag + ": " + message);
+        }
+    }
+
+    static void e(String tag, String message) {
+        LOGGER.severe(tag + ": " + message);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * Receives everything a {@link MipsMachine} wants to show the user
+ * <p>
+ * The values are already formatted in the display format of the machine. Every method does nothing by default so a
+ * headless machine can use {@link #NONE} and a display only needs to override what it shows. The methods can be called
+ * from any thread
+ */
+public interface MachineListener {
+
+    /**
+     * A listener that ignores everything
+     */
+    MachineListener NONE = new MachineListener() {
+    };
+
+    /**
+     * Called when part of the memory changed, the display reads the rows it shows with
+     * {@link MipsMachine#formatMemoryRow(int)}
+     *
+     * @param address The first address that changed
+     * @param length The number of bytes that changed
+     */
+    default void updateMemoryDisplay(int address, int length) {
+    }
+
+    /**
+     * Called when the program counter changed
+     *
+     * @param programCounter The formatted program counter
+     */
+    default void updateProgramCounter(String programCounter) {
+    }
+
+    /**
+     * Called when a micro step narrated what it did
+     *
+     * @param instructions The narration of the current instruction so far
+     */
+    default void updateInstructionDisplay(String instructions) {
+    }
+
+    /**
+     * Called when a register changed
+     *
+     * @param register The register number
+     * @param registerValue The formatted value
+     */
+    default void updateIndividualRegister(int register, String registerValue) {
+    }
+
+    /**
+     * Called when the cache hit rate changed
+     *
+     * @param cacheHitRate The hit rate
+     */
+    default void updateCacheHitDisplay(String cacheHitRate) {
+    }
+
+    /**
+     * Called with a short status message for the user, such as a file finished loading
+     *
+     * @param message The message
+     */
+    default void showMessage(String message) {
+    }
+
+    /**
+     * Called when the machine reaches the end of the program
+     */
+    default void onProgramFinished() {
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The memory of a {@link MipsMachine}, covering the full 32-bit address space
+ * <p>
+ * Memory is split into 4 KB pages that are only allocated the first time they are written to. Reads of a page that
+ * was never written return zeros from a shared zero page, and the last page used is remembered so accesses that stay
+ * on one page skip the page table
+ * <p>
+ * Every page written to is marked in a dirty bitmap until {@link #clearDirty()}, so what changed can be found in time
+ * proportional to the pages used instead of the memory size. Only the first store to a page after a clear or after
+ * another page was used marks it
+ * <p>
+ * A {@link Checkpoint} freezes the pages written since the previous one instead of copying them. A frozen page is
+ * shared with the checkpoint and only copied the first time a store changes it afterwards, so the pages that were not
+ * written cost nothing
+ * <p>
+ * Words and half words are big-endian and read or written in one access through a view of the page, so they have to
+ * be aligned and never cross a page
+ */
+public class Memory {
+
+    public static final int PAGE_SIZE = PageTable.PAGE_SIZE;
+
+    private static final int PAGE_SHIFT = PageTable.PAGE_SHIFT;
+    private static final int OFFSET_MASK = PAGE_SIZE - 1;
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE]; //never written to
+    private static final VarHandle WORD = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle HALF = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+
+    private final PageTable<byte[]> pages = new PageTable<>();
+    private int pageCount;
+    private final PageBitmap dirty = new PageBitmap(); //pages written since the last clear
+    private final PageBitmap owned = new PageBitmap(); //pages not shared with a checkpoint, stores change them in place
+
+    // The last page used by the loads and stores, may be the zero page
+    private int lastPageNumber = -1;
+    private byte[] lastPage;
+    private boolean lastPageMarked; //if a store reached the last page, marked it dirty and owns it
+
+    /**
+     * Constructor for memory that has never been written to
+     */
+    public Memory() {
+    }
+
+    /**
+     * Constructor for memory holding what it held when a checkpoint was taken, sharing the pages of the checkpoint
+     *
+     * @param checkpoint The checkpoint
+     */
+    Memory(Checkpoint checkpoint) {
+        checkpoint.forEachPage((page, pageNumber) -> {
+            pages.put(pageNumber, page);
+            pageCount++;
+        });
+    }
+
+    /**
+     * Reads a byte
+     *
+     * @param address Any 32-bit address
+     * @return The byte, 0 if the address was never written to
+     */
+    public byte loadByte(int address) {
+        return readPage(address)[address & OFFSET_MASK];
+    }
+
+    /**
+     * Writes a byte, allocating its page if needed
+     *
+     * @param address Any 32-bit address
+     * @param value The byte
+     */
+    public void storeByte(int address, byte value) {
+        writePage(address)[address & OFFSET_MASK] = value;
+    }
+
+    /**
+     * Reads a big-endian word
+     *
+     * @param address A multiple of 4
+     * @return The word, 0 if the address was never written to
+     * @throws AlignmentException If the address is not a multiple of 4
+     */
+    public int loadWord(int address) {
+        if ((address & 3) != 0) {
+            throw new AlignmentException(address, 4);
+        }
+        return (int) WORD.get(readPage(address), address & OFFSET_MASK);
+    }
+
+    /**
+     * Writes a big-endian word, allocating its page if needed
+     *
+     * @param address A multiple of 4
+     * @param value The word
+     * @throws AlignmentException If the address is not a multiple of 4
+     */
+    public void storeWord(int address, int value) {
+        if ((address & 3) != 0) {
+            throw new AlignmentException(address, 4);
+        }
+        WORD.set(writePage(address), address & OFFSET_MASK, value);
+    }
+
+    /**
+     * Reads a big-endian half word
+     *
+     * @param address A multiple of 2
+     * @return The half word, 0 if the address was never written to
+     * @throws AlignmentException If the address is not a multiple of 2
+     */
+    public short loadHalf(int address) {
+        if ((address & 1) != 0) {
+            throw new AlignmentException(address, 2);
+        }
+        return (short) HALF.get(readPage(address), address & OFFSET_MASK);
+    }
+
+    /**
+     * Writes a big-endian half word, allocating its page if needed
+     *
+     * @param address A multiple of 2
+     * @param value The half word
+     * @throws AlignmentException If the address is not a multiple of 2
+     */
+    public void storeHalf(int address, short value) {
+        if ((address & 1) != 0) {
+            throw new AlignmentException(address, 2);
+        }
+        HALF.set(writePage(address), address & OFFSET_MASK, value);
+    }
+
+    /**
+     * Copies a range of memory into a new array
+     * <p>
+     * Does not use the last page so it can be called from a display thread while the machine runs
+     *
+     * @param address The first address
+     * @param length The number of bytes
+     * @return The bytes
+     */
+    public byte[] read(int address, int length) {
+        byte[] bytes = new byte[length];
+        int done = 0;
+        while (done < length) {
+            int current = address + done;
+            int offset = current & OFFSET_MASK;
+            int count = Math.min(PAGE_SIZE - offset, length - done);
+            byte[] page = pages.get(current >>> PAGE_SHIFT);
+            if (page != null) {
+                System.arraycopy(page, offset, bytes, done, count);
+            }
+            done += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * Copies bytes into memory a page at a time, allocating the pages as needed
+     *
+     * @param address The first address
+     * @param bytes The bytes from their position to their limit, the position is moved to the limit
+     */
+    public void write(int address, ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            int offset = address & OFFSET_MASK;
+            int count = Math.min(PAGE_SIZE - offset, bytes.remaining());
+            bytes.get(writePage(address), offset, count);
+            address += count;
+        }
+    }
+
+    /**
+     * Sets a range of memory to zero, pages that were never written to already read as zero and are left unallocated
+     *
+     * @param address The first address
+     * @param length The number of bytes
+     */
+    public void zero(int address, int length) {
+        while (length > 0) {
+            int offset = address & OFFSET_MASK;
+            int count = Math.min(PAGE_SIZE - offset, length);
+            if (pages.get(address >>> PAGE_SHIFT) != null) {
+                Arrays.fill(writePage(address), offset, offset + count, (byte) 0);
+            }
+            address += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads a big-endian word without copying
+     * <p>
+     * Does not use the last page so it can be called from a display thread while the machine runs
+     *
+     * @param address A multiple of 4
+     * @return The word, 0 if the address was never written to
+     * @throws AlignmentException If the address is not a multiple of 4
+     */
+    public int peekWord(int address) {
+        if ((address & 3) != 0) {
+            throw new AlignmentException(address, 4);
+        }
+        byte[] page = pages.get(address >>> PAGE_SHIFT);
+        return page == null ? 0 : (int) WORD.get(page, address & OFFSET_MASK);
+    }
+
+    /**
+     * Gets the number of pages that have been allocated
+     *
+     * @return The number of 4 KB pages
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Runs an action on every allocated page and its page number, in order of address, the pages are not copied and
+     * may be shared with a checkpoint so they must not be changed
+     *
+     * @param action Takes the page and the address shifted right by 12
+     */
+    void forEachPage(ObjIntConsumer<byte[]> action) {
+        pages.forEachPage(action);
+    }
+
+    /**
+     * Runs an action on every page written since the dirty pages were last cleared, in order of address
+     *
+     * @param action Takes the address of the page shifted right by 12
+     */
+    void forEachDirtyPage(IntConsumer action) {
+        dirty.forEach(action);
+    }
+
+    /**
+     * Tells if a page was written since the dirty pages were last cleared
+     *
+     * @param pageNumber The address shifted right by 12
+     * @return If it is dirty
+     */
+    boolean isDirty(int pageNumber) {
+        return dirty.get(pageNumber);
+    }
+
+    /**
+     * Marks every page clean, so the next store to each page marks it again
+     */
+    void clearDirty() {
+        dirty.clear();
+        lastPageMarked = false;
+    }
+
+    /**
+     * Hands the pages written since the last freeze to a checkpoint and shares them with it from now on, so the next
+     * store to each of them copies it first
+     *
+     * @param action Takes every page written since the last freeze and its page number, in order of address
+     */
+    void freeze(ObjIntConsumer<byte[]> action) {
+        owned.forEach(pageNumber -> action.accept(pages.get(pageNumber), pageNumber));
+        owned.clear();
+        lastPageMarked = false;
+    }
+
+    private byte[] readPage(int address) {
+        int pageNumber = address >>> PAGE_SHIFT;
+        if (pageNumber == lastPageNumber) {
+            return lastPage;
+        }
+        byte[] page = pages.get(pageNumber);
+        if (page == null) {
+            page = ZERO_PAGE;
+        }
+        lastPageNumber = pageNumber;
+        lastPage = page;
+        lastPageMarked = false;
+        return page;
+    }
+
+    private byte[] writePage(int address) {
+        int pageNumber = address >>> PAGE_SHIFT;
+        byte[] page = lastPage;
+        if (pageNumber != lastPageNumber || !lastPageMarked) {
+            // Also reached when the last page came from a load, which may have been the zero page or frozen
+            page = pages.get(pageNumber);
+            if (page == null) {
+                page = new byte[PAGE_SIZE];
+                pages.put(pageNumber, page);
+                pageCount++;
+                owned.set(pageNumber);
+            } else if (!owned.get(pageNumber)) {
+                page = page.clone();    // The checkpoint keeps the frozen page
+                pages.put(pageNumber, page);
+                owned.set(pageNumber);
+            }
+            dirty.set(pageNumber);
+            lastPageNumber = pageNumber;
+            lastPage = page;
+            lastPageMarked = true;
+        }
+        return page;
+    }
+}
@@ -0,0 +1,1264 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import io.github.danielt3131.mipsemu.Reference;
+
+/**
+ * The mips emulator that will read a file written in MIPS and then execute those commands using virtual registers
+ * <p>
+ * Plain Java with no Android dependencies, everything meant for the user goes to a {@link MachineListener}
+ */
+public class MipsMachine {
+
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 100_000; //instructions, a few ms to replay
+    public static final int DEFAULT_CHECKPOINT_LIMIT = 64; //checkpoints kept, going back 6.4M instructions by default
+    private final int EOS = -1; //end of step code
+    private static final byte[] TEXT_STATE_HEADER = {'S', 't', 'a', 't', 'e'}; //states saved as text by older versions
+    //Register Variables
+    int hi, lo; //high and low of multiplication and division
+    int pc; //program counter
+
+    int[] register = new int[32];
+
+    //Machine memory
+    Memory memory;
+    int memorySize; //the part of memory that is displayed and saved, the stack starts at its end
+
+    CacheHierarchy cache; //simulated data caches, none unless set
+    AddressTrace trace; //where loads and stores are recorded, null to not record them
+    private InstructionTrace instructionTrace; //where stepped instructions are logged, null to not log them
+    private final int[] stepStart = new int[34]; //the registers, hi and lo before the instruction being stepped
+
+    long instructionCount; //whole instructions executed since the machine was created or restored from a state
+    private long checkpointInterval; //instructions between the checkpoints taken by run, 0 to not take any
+    private int checkpointLimit = DEFAULT_CHECKPOINT_LIMIT; //the oldest kept takes over the pages of older ones
+    private Checkpoint checkpoint; //the latest checkpoint, null if none was taken
+    private UndoLog undoLog; //the old values changed by stepped instructions, null if the history is not kept
+    private boolean undoing; //if the instruction being stepped logs its stores to the undo log
+    private final Object runLock = new Object(); //guards running
+    private boolean running; //if a continuous run or a step back has the machine, they never overlap
+
+    private DecodeCache decodeCache; //decoded instructions by word address
+    BlockCache blockCache; //translated basic blocks by word address
+
+    private MachineListener machineListener;
+    FastEngine fastEngine; //runs whole instructions when running continuously
+    private InputStream inputFileStream;
+    private int displayFormat;
+    private int displayedFormat = -1; //the format all the registers were last sent in, -1 if they never were
+    private final int[] displayedRegisters = new int[32]; //the register values last sent to the display
+    private final char[] displayBuffer = new char[NumberFormatter.MAX_WORD_LENGTH]; //for the registers and pc, locked as the UI thread also sends them
+    private boolean readFile;
+
+    /**
+     * Constructor for the mips emulator
+     *
+     * @param memorySize the amount of memory that is displayed and saved in bytes, the whole 32-bit address space can be used
+     * @param machineListener Where the machine sends everything meant for the user
+     */
+    public MipsMachine(int memorySize, MachineListener machineListener) {
+
+        memory = new Memory();
+        this.memorySize = memorySize;
+        decodeCache = new DecodeCache();
+        blockCache = new BlockCache(this);
+        this.machineListener = machineListener;
+        mstep = 0;
+        code = 1;
+        readFile = false;
+        fastEngine = new FastEngine(this);
+        Log.d("memory siz", "" + memorySize);
+        register[29] = memorySize - 4;
+    }
+
+    /**
+     * Constructor for a headless mips emulator that does not display anything
+     *
+     * @param memorySize the amount of memory that is saved in bytes, the whole 32-bit address space can be used
+     */
+    public MipsMachine(int memorySize) {
+        this(memorySize, MachineListener.NONE);
+    }
+
+    /**
+     * Closes the input file stream to prevent a resource leak
+     */
+    public void close() {
+        try {
+            if (inputFileStream != null) {
+                inputFileStream.close();
+            }
+        } catch (IOException e) {
+            Log.e("MipsMachine", String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Reads a program or saved state from the stream on a new thread
+     *
+     * @param inputFileStream The stream to read
+     */
+    public void setInputFileStream(InputStream inputFileStream) {
+        Thread thread = new Thread(() -> {
+            try {
+                load(inputFileStream);
+            } catch (RuntimeException e) {
+                Log.e("MipsMachine", String.valueOf(e.getMessage()));
+                machineListener.showMessage("Could not read the file: " + e.getMessage());
+            }
+        });
+        thread.start();
+    }
+
+    /**
+     * Reads a program or saved state from the stream on the calling thread
+     * <p>
+     * A stream starting with the {@link StateManager} magic is read as a saved state, one starting with the {@link ProgramImage} magic
+     * as a program image, an ELF file as an executable by {@link ElfLoader}, text starting with 0x as machine code in
+     * the format of {@link ProgramLoader} and any other text as assembly for {@link Assembler}
+     *
+     * @param inputFileStream The stream to read, closed when done
+     * @throws ProgramFormatException If a line of the program is malformed
+     * @throws UncheckedIOException If reading the stream fails
+     */
+    public void load(InputStream inputFileStream) {
+        this.inputFileStream = inputFileStream;
+        BufferedInputStream buffered = new BufferedInputStream(inputFileStream, ProgramLoader.BUFFER_SIZE);
+        try (buffered) {
+            if (startsWith(buffered, StateManager.MAGIC_BYTES)) {
+                Log.d("inputFileStream Set", "State Header Exists, readState()");
+                readState(buffered);
+                machineListener.showMessage("Read in state");
+            } else if (startsWith(buffered, TEXT_STATE_HEADER)) {
+                throw new IOException("States saved as text by older versions can no longer be read");
+            } else if (startsWith(buffered, ProgramImage.MAGIC_BYTES)) {
+                Log.d("inputFileStream Set", "Program image, loadImage()");
+                ProgramImage.load(ByteBuffer.wrap(buffered.readAllBytes()), this);
+                machineListener.showMessage("Read in program image");
+            } else if (startsWith(buffered, ElfLoader.MAGIC_BYTES)) {
+                Log.d("inputFileStream Set", "ELF file, loadElf()");
+                ElfLoader.load(ByteBuffer.wrap(buffered.readAllBytes()), this);
+                machineListener.showMessage("Read in executable");
+            } else if (!startsWithMachineCode(buffered)) {
+                Log.d("inputFileStream Set", "Assembly source, assemble()");
+                new Assembler().assemble(new String(buffered.readAllBytes(), StandardCharsets.UTF_8)).load(this);
+                machineListener.showMessage("Assembled file");
+            } else {
+                Log.d("inputFileStream Set", "State Header Does Not Exist, readFile()");
+                readFile(buffered);
+                machineListener.showMessage("Read in file");
+            }
+            readFile = true;
+            restartHistory();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sendMemory();
+        sendAllRegistersToDisplay();
+        sendProgramCounter();
+    }
+
+    /**
+     * Loads a program image from a file by memory mapping it, on the calling thread
+     *
+     * @param file The image made by {@link ProgramImage#convert(InputStream, OutputStream, int, int, int)}
+     * @throws IOException If the file cannot be read or is not a valid image
+     */
+    public void loadImage(File file) throws IOException {
+        ProgramImage.load(file, this);
+        readFile = true;
+        restartHistory();
+        sendMemory();
+        sendAllRegistersToDisplay();
+        sendProgramCounter();
+    }
+
+    /**
+     * Loads a big-endian MIPS ELF32 executable from a file by memory mapping it, on the calling thread
+     *
+     * @param file The executable
+     * @throws IOException If the file cannot be read or is not a big-endian MIPS ELF32 executable
+     */
+    public void loadElf(File file) throws IOException {
+        ElfLoader.load(file, this);
+        readFile = true;
+        restartHistory();
+        sendMemory();
+        sendAllRegistersToDisplay();
+        sendProgramCounter();
+    }
+
+    /**
+     * Loads an assembled program, on the calling thread
+     *
+     * @param program The program made by {@link Assembler}
+     */
+    public void loadProgram(AssembledProgram program) {
+        program.load(this);
+        readFile = true;
+        restartHistory();
+        sendMemory();
+        sendAllRegistersToDisplay();
+        sendProgramCounter();
+    }
+
+    /**
+     * Tells if the first thing in a stream after blank space is 0x, without consuming it
+     */
+    private static boolean startsWithMachineCode(BufferedInputStream inputStream) throws IOException {
+        inputStream.mark(ProgramLoader.BUFFER_SIZE);
+        try {
+            for (int i = 0; i < ProgramLoader.BUFFER_SIZE - 2; i++) {
+                int c = inputStream.read();
+                if (c == -1) {
+                    return true;    // Nothing to assemble either way
+                }
+                if (!Character.isWhitespace(c)) {
+                    int x = inputStream.read();
+                    return c == '0' && (x == 'x' || x == 'X');
+                }
+            }
+            return true;
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    /**
+     * Tells if a stream starts with some bytes, without consuming them
+     */
+    private static boolean startsWith(BufferedInputStream inputStream, byte[] prefix) throws IOException {
+        inputStream.mark(prefix.length);
+        try {
+            for (byte b : prefix) {
+                if (inputStream.read() != (b & 0xFF)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    /**
+     * Sets the display format
+     *
+     * @param displayFormat The format specifier defined in {@link Reference}
+     */
+    public void setDisplayFormat(int displayFormat) {
+        this.displayFormat = displayFormat;
+    }
+
+    /**
+     * Reads in a program and puts the instructions into memory
+     *
+     * @param inputStream The program in the format read by {@link ProgramLoader}, it is not closed
+     * @throws ProgramFormatException If a line of the program is malformed, the lines before it are loaded
+     * @throws UncheckedIOException If reading the stream fails
+     */
+    public void readFile(InputStream inputStream) {
+        try {
+            long stored = new ProgramLoader(inputStream).load(this);
+            Log.d("MipsMachine.readFile", "Loaded " + stored + " bytes");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a state saved by {@link #saveState(OutputStream)} and loads it into the machine, replacing all of memory
+     *
+     * @param inputStream The state, it is not closed
+     * @throws IOException If reading fails or the stream is not a valid state, the machine is left alone then
+     */
+    public void readState(InputStream inputStream) throws IOException {
+        StateManager.restore(inputStream, this);
+        instructionCount = 0;
+        checkpoint = null;  // The memory of the checkpoints is gone
+        decodeCache = new DecodeCache();
+        blockCache = new BlockCache(this);
+        if (cache != null) {
+            cache.reset();
+        }
+        mstep = 0;
+        code = fetch().code;
+        restartHistory();
+    }
+
+    /**
+     * Gets the decoded instruction at the program counter, only decoding the word if it is not already in the decode cache
+     *
+     * @return The decoded instruction
+     */
+    DecodedInstruction fetch()
+    {
+        return decodeAt(pc);
+    }
+
+    /**
+     * Gets the decoded instruction at an address, only decoding the word if it is not already in the decode cache
+     *
+     * @param address The address of the instruction
+     * @return The decoded instruction
+     */
+    DecodedInstruction decodeAt(int address)
+    {
+        DecodedInstruction instruction = decodeCache.get(address);
+        if (instruction == null) {
+            instruction = new DecodedInstruction(memory.loadWord(address));
+            decodeCache.put(address, instruction);
+        }
+        return instruction;
+    }
+
+    private int mstep; //the micro step to run
+    private int code; //the instruction word to run
+
+    /**
+     * has the machine read from the program counter to fetch and execute the next instruction
+     */
+    private void nextStep() {
+        //combines the 4 bytes into the full word
+        code = fetch().code;
+        Log.d("Code", Integer.toBinaryString(code));
+        boolean running = true;
+        while (running) //keeps executing until it returns EOS when step is done
+        {
+            running = nextMicroStep() != EOS;
+        }
+        microStepInstructions = "";
+    }
+
+    /**
+     * Method to run the next step as requested from the user or MipsMachine
+     */
+    public void runNextStep() {
+        if (isRunning()) {
+            machineListener.showMessage("Wait for the run to finish");
+        } else if (readFile && code != 0) {
+            try {
+                nextStep();
+            } catch (AlignmentException e) {
+                addressError(e);
+            }
+            sendChangedRegistersToDisplay();
+            machineListener.updateCacheHitDisplay(String.valueOf(hitRate()));
+        } else if (code == 0) {
+            machineListener.onProgramFinished();
+        } else {
+            machineListener.showMessage("Still reading in the file");
+        }
+    }
+
+    /**
+     * Method to run next micro step as requested from the user or MipsMachine
+     */
+    public void runNextMicroStep() {
+        if (isRunning()) {
+            machineListener.showMessage("Wait for the run to finish");
+        } else if (readFile && code != 0) {
+            try {
+                nextMicroStep();
+            } catch (AlignmentException e) {
+                addressError(e);
+            }
+            sendChangedRegistersToDisplay();
+            machineListener.updateCacheHitDisplay(String.valueOf(hitRate()));
+        } else if (code == 0) {
+            machineListener.onProgramFinished();
+        } else {
+            machineListener.showMessage("Still reading in the file");
+        }
+    }
+
+    /**
+     * Method to run all remaining steps as requested from the user
+     * <p>
+     * Uses {@link FastEngine} so nothing is narrated, displayed or logged until the machine stops
+     */
+    public void runContinuously() {
+        // Run continuously
+        // Don't update the memory display
+        if (readFile && code != 0) {
+            if (!startRunning()) {
+                machineListener.showMessage("Wait for the run to finish");
+                return;
+            }
+            Thread thread = new Thread(() -> {
+                try {
+                    try {
+                        run(Long.MAX_VALUE);
+                    } catch (AlignmentException e) {
+                        addressError(e);
+                    }
+                    if (code == 0) {
+                        machineListener.onProgramFinished();
+                    }
+                    // Hand the final state back to the display
+                    sendAllRegistersToDisplay();
+                    sendProgramCounter();
+                    sendChangedMemory();
+                    machineListener.updateCacheHitDisplay(String.valueOf(hitRate()));
+                } finally {
+                    stopRunning();
+                }
+            });
+            thread.start();
+        }
+    }
+
+    /**
+     * Claims the machine for a continuous run or a step back
+     *
+     * @return false if a run or step back already has it
+     */
+    private boolean startRunning() {
+        synchronized (runLock) {
+            if (running) {
+                return false;
+            }
+            running = true;
+            return true;
+        }
+    }
+
+    /**
+     * Hands the machine back after {@link #startRunning()}
+     */
+    private void stopRunning() {
+        synchronized (runLock) {
+            running = false;
+        }
+    }
+
+    /**
+     * Checks if a continuous run or a step back is in progress, the machine must not be stepped or changed until it
+     * is done
+     *
+     * @return true if the machine is running on another thread or stepping back
+     */
+    public boolean isRunning() {
+        synchronized (runLock) {
+            return running;
+        }
+    }
+
+    /**
+     * Abandons the instruction that made an unaligned access and tells the user, the program counter stays at it
+     *
+     * @param e The exception thrown by the access
+     */
+    private void addressError(AlignmentException e) {
+        Log.e("Address error", e.getMessage());
+        mstep = 0;
+        microStepInstructions = "";
+        undoing = false;
+        // Neither the abandoned instruction nor those the fast engine ran before it are counted, so nothing can be
+        // replayed to here
+        restartHistory();
+        sendProgramCounter();
+        machineListener.showMessage(e.getMessage());
+    }
+
+    /**
+     * Runs the program on the calling thread until it stops or the limit is reached, without updating the display
+     *
+     * @param maxInstructions The most instructions to execute
+     * @return The number of instructions executed
+     * @throws AlignmentException If an instruction accesses an unaligned address, the program counter is left at it
+     */
+    public long run(long maxInstructions) {
+        long count = 0;
+        if (mstep != 0) {
+            nextStep();     // Finish the instruction a micro step left part way through
+            count++;
+        }
+        long stepped = count;
+        if (checkpointInterval <= 0) {
+            long executed = fastEngine.run(maxInstructions - count);
+            count += executed;
+            instructionCount += executed;
+        } else {
+            while (count < maxInstructions) {
+                long sinceCheckpoint = checkpoint == null ? instructionCount : instructionCount - checkpoint.getInstructionCount();
+                if (sinceCheckpoint >= checkpointInterval) {
+                    checkpoint();
+                    sinceCheckpoint = 0;
+                }
+                long executed = fastEngine.run(Math.min(maxInstructions - count, checkpointInterval - sinceCheckpoint));
+                count += executed;
+                instructionCount += executed;
+                if (executed == 0) {
+                    break;  // Finished
+                }
+            }
+        }
+        if (undoLog != null && count > stepped) {
+            undoLog.clear();    // The fast engine does not log, going back now starts from a checkpoint
+        }
+        code = fetch().code;
+        return count;
+    }
+
+    /**
+     * Sets how often {@link #run(long)} takes a checkpoint, the fast engine stops exactly at the interval so a
+     * checkpoint is taken every that many instructions, even inside a compiled loop
+     * <p>
+     * Only the latest checkpoints are kept, see {@link #setCheckpointLimit(int)}, so a long run holds about the pages
+     * written per interval times the limit plus the pages of the oldest one
+     *
+     * @param instructions The number of instructions between checkpoints, 0 to not take any
+     */
+    public void setCheckpointInterval(long instructions) {
+        checkpointInterval = instructions;
+    }
+
+    /**
+     * Sets how many checkpoints are kept. Once there are more, the oldest one kept takes over the pages of the older
+     * ones and they are dropped, so stepping back reaches at most the limit times the interval
+     *
+     * @param checkpoints The number of checkpoints to keep, {@link #DEFAULT_CHECKPOINT_LIMIT} unless set
+     */
+    public void setCheckpointLimit(int checkpoints) {
+        if (checkpoints <= 0) {
+            throw new IllegalArgumentException("Checkpoint limit must be positive: " + checkpoints);
+        }
+        checkpointLimit = checkpoints;
+        dropOldCheckpoints();
+    }
+
+    /**
+     * Takes a checkpoint of the registers and memory, only copying the pages that stores change afterwards
+     * <p>
+     * Costs the pages written since the previous checkpoint, and drops the oldest one if there are more than the limit.
+     * Only called from the thread that runs the machine
+     *
+     * @return The checkpoint, which is also the latest checkpoint from now on
+     * @throws IllegalStateException If a micro step left the machine part way through an instruction
+     */
+    public Checkpoint checkpoint() {
+        if (mstep != 0) {
+            throw new IllegalStateException("Cannot take a checkpoint part way through an instruction");
+        }
+        checkpoint = new Checkpoint(this, checkpoint, instructionCount);
+        dropOldCheckpoints();
+        return checkpoint;
+    }
+
+    /**
+     * Drops the checkpoints older than the limit, the oldest one kept takes over their pages
+     */
+    private void dropOldCheckpoints() {
+        Checkpoint oldest = checkpoint;
+        for (int i = 1; i < checkpointLimit && oldest != null; i++) {
+            oldest = oldest.getPrevious();
+        }
+        if (oldest != null) {
+            oldest.dropPrevious();
+        }
+    }
+
+    /**
+     * Gets the latest checkpoint
+     *
+     * @return The checkpoint or null if none was taken since the machine was created or restored from a state
+     */
+    public Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Puts the machine back to a checkpoint, which becomes the latest checkpoint. Only called from the thread that
+     * runs the machine
+     *
+     * @param checkpoint A checkpoint of this machine
+     */
+    public void restore(Checkpoint checkpoint) {
+        restoreState(checkpoint);
+        sendMemory();
+        sendAllRegistersToDisplay();
+        sendProgramCounter();
+    }
+
+    /**
+     * Puts the registers and memory back to a checkpoint without updating the display
+     */
+    private void restoreState(Checkpoint checkpoint) {
+        memory = new Memory(checkpoint);
+        memorySize = checkpoint.memorySize;
+        System.arraycopy(checkpoint.register, 0, register, 0, register.length);
+        hi = checkpoint.hi;
+        lo = checkpoint.lo;
+        pc = checkpoint.pc;
+        instructionCount = checkpoint.getInstructionCount();
+        this.checkpoint = checkpoint;
+        decodeCache = new DecodeCache();
+        blockCache = new BlockCache(this);
+        if (cache != null) {
+            cache.reset();
+        }
+        mstep = 0;
+        microStepInstructions = "";
+        undoing = false;
+        if (undoLog != null) {
+            undoLog.clear();
+        }
+        code = fetch().code;
+    }
+
+    /**
+     * Starts keeping the history needed to step backwards: an undo log of the instructions stepped one at a time and
+     * a checkpoint every so many instructions, the first one taken now
+     * <p>
+     * Going back restores the nearest checkpoint at or before the target and replays the rest, so it never replays
+     * more than the interval. Only the latest checkpoints are kept, see {@link #setCheckpointLimit(int)}
+     *
+     * @param checkpointInterval The number of instructions between checkpoints
+     */
+    public void enableHistory(long checkpointInterval) {
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + checkpointInterval);
+        }
+        this.checkpointInterval = checkpointInterval;
+        undoLog = new UndoLog();
+        restartHistory();
+    }
+
+    /**
+     * Forgets the history and starts it again from the current state, used when the machine changed outside of an
+     * instruction so the state before it cannot be replayed to
+     */
+    private void restartHistory() {
+        if (undoLog == null) {
+            return;
+        }
+        undoLog.clear();
+        checkpoint = null;
+        if (mstep == 0) {
+            checkpoint();   // Otherwise taken when the instruction finishes
+        }
+    }
+
+    /**
+     * Goes back a number of steps. Does not update the display
+     * <p>
+     * If a micro step left the machine part way through an instruction, going back to the start of that instruction is
+     * the first step. Instructions still in the undo log are undone one by one, otherwise the nearest checkpoint at or
+     * before the target is restored and the rest is replayed with the {@link FastEngine}, so at most the checkpoint
+     * interval is replayed
+     *
+     * @param instructions The number of steps to go back
+     * @return The number of steps gone back, fewer if the history does not reach that far because it starts at the
+     * oldest checkpoint kept
+     * @throws IllegalStateException If the history is not kept, or a continuous run or another step back is in progress
+     */
+    public long stepBack(long instructions) {
+        if (undoLog == null) {
+            throw new IllegalStateException("The history is not kept, see enableHistory");
+        }
+        if (!startRunning()) {
+            throw new IllegalStateException("Cannot step back while the machine runs");
+        }
+        try {
+            return goBack(instructions);
+        } finally {
+            stopRunning();
+        }
+    }
+
+    /**
+     * Goes back a number of steps once {@link #stepBack(long)} has claimed the machine
+     */
+    private long goBack(long instructions) {
+        long start = instructionCount;
+        boolean replay = false;
+        int partial = 0;
+        if (mstep != 0) {
+            // The log holds the stores made so far, the registers are only logged once the instruction finishes
+            replay = !undoLog.undo(this);
+            if (!replay) {
+                System.arraycopy(stepStart, 0, register, 0, 32);
+                hi = stepStart[32];
+                lo = stepStart[33];
+                partial = 1;
+                instructions--;
+            }
+            mstep = 0;
+            undoing = false;
+            microStepInstructions = "";
+        }
+        if (checkpoint == null) {
+            code = fetch().code;
+            return partial; // Only possible part way through the first instruction after a restart
+        }
+        Checkpoint oldest = checkpoint;
+        while (oldest.getPrevious() != null) {
+            oldest = oldest.getPrevious();
+        }
+        // Further back than the oldest checkpoint kept stops at it, the instructions before it cannot be replayed
+        long target = Math.max(instructionCount - Math.max(instructions, 0), oldest.getInstructionCount());
+        while (!replay && instructionCount > target && undoLog.undo(this)) {
+            instructionCount--;
+        }
+        if (replay || instructionCount > target) {
+            Checkpoint from = checkpoint;
+            while (from.getInstructionCount() > target) {
+                from = from.getPrevious();
+            }
+            restoreState(from);
+            instructionCount += fastEngine.run(target - from.getInstructionCount());
+        }
+        code = fetch().code;
+        return start - instructionCount + partial;
+    }
+
+    /**
+     * Method to undo the last step as requested from the user
+     */
+    public void runPreviousStep() {
+        if (undoLog == null || !readFile) {
+            machineListener.showMessage("Nothing to step back to");
+            return;
+        }
+        if (isRunning()) {
+            machineListener.showMessage("Wait for the run to finish");
+            return;
+        }
+        if (stepBack(1) == 0) {
+            machineListener.showMessage("Already at the start of the history");
+        }
+        sendBackInTime();
+    }
+
+    /**
+     * Method to go back as far as the history reaches as requested from the user, usually the start of the program
+     */
+    public void runContinuouslyBackwards() {
+        if (undoLog == null || !readFile) {
+            machineListener.showMessage("Nothing to step back to");
+            return;
+        }
+        if (isRunning()) {
+            machineListener.showMessage("Wait for the run to finish");
+            return;
+        }
+        long instructions = stepBack(Long.MAX_VALUE);
+        machineListener.showMessage("Went back " + instructions + " instructions");
+        sendBackInTime();
+    }
+
+    /**
+     * Hands the state after stepping back to the display
+     */
+    private void sendBackInTime() {
+        machineListener.updateInstructionDisplay(microStepInstructions);
+        sendAllRegistersToDisplay();
+        sendProgramCounter();
+        sendMemory();
+        machineListener.updateCacheHitDisplay(String.valueOf(hitRate()));
+    }
+
+    /**
+     * Gets how far the program has run
+     *
+     * @return The number of whole instructions executed since the machine was created or restored from a state
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * Checks if the machine has reached the end of the program
+     *
+     * @return true if the word at the program counter is 0
+     */
+    public boolean isFinished() {
+        return code == 0;
+    }
+
+    /**
+     * Runs the next micro step of the instruction at the program counter through its {@link InstructionHandler}
+     *
+     * @return EOS when the instruction is done, otherwise 0
+     */
+    private int nextMicroStep() {
+        Log.d("mstep", "MSTEP: " + mstep);
+
+        DecodedInstruction instruction = fetch();
+        code = instruction.code;
+
+        Log.d("OPCODE",Integer.toBinaryString(code));
+
+        if (code == 0) return EOS;
+
+        if (instruction.handler == null) {
+            Log.e("UNKOWN OP CODE", Integer.toBinaryString(instruction.opcode));
+            return EOS;
+        }
+
+        int instructionPc = pc;
+        if ((instructionTrace != null || undoLog != null) && mstep == 0) {
+            if (instructionTrace != null) {
+                instructionTrace.instruction(pc, code);
+            }
+            if (undoLog != null) {
+                undoLog.instruction(pc);
+                undoing = true;
+            }
+            System.arraycopy(register, 0, stepStart, 0, 32);
+            stepStart[32] = hi;
+            stepStart[33] = lo;
+        }
+
+        if (instruction.handler.microStep(this, instruction, mstep)) {
+            mstep = 0;
+            instructionCount++;
+            if (instructionTrace != null) {
+                traceRegisters(instructionPc);
+            }
+            if (undoLog != null) {
+                logRegisters();
+                undoing = false;
+                if (checkpoint == null || instructionCount - checkpoint.getInstructionCount() >= checkpointInterval) {
+                    checkpoint();
+                }
+            }
+            return EOS;
+        }
+        mstep++;
+        return 0;
+    }
+
+
+
+    /**
+     * Sets the data caches simulated on every load and store, starting from empty caches. None are simulated until
+     * this is called, so only the machines that report cache statistics pay for them
+     *
+     * @param cache The caches or null to not simulate any
+     */
+    public void setCache(CacheHierarchy cache) {
+        if (cache != null) {
+            cache.reset();
+        }
+        this.cache = cache;
+    }
+
+    public CacheHierarchy getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets where every load and store is recorded from now on, for sizing caches with {@link CacheSweep}
+     *
+     * @param trace The trace or null to stop recording
+     */
+    public void setTrace(AddressTrace trace) {
+        this.trace = trace;
+    }
+
+    public AddressTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Sets where the instructions run by steps and micro steps are logged, running continuously is not logged
+     *
+     * @param instructionTrace The trace or null to stop logging
+     */
+    public void setInstructionTrace(InstructionTrace instructionTrace) {
+        this.instructionTrace = instructionTrace;
+    }
+
+    /**
+     * Logs a load made by a micro step to the instruction trace
+     *
+     * @param address The address
+     * @param value The word loaded
+     */
+    void traceLoad(int address, int value) {
+        if (instructionTrace != null) {
+            instructionTrace.load(pc, address, value);
+        }
+    }
+
+    /**
+     * Logs a store made by a micro step to the instruction trace
+     *
+     * @param address The address
+     * @param value The word stored
+     */
+    void traceStore(int address, int value) {
+        if (instructionTrace != null) {
+            instructionTrace.store(pc, address, value);
+        }
+    }
+
+    /**
+     * Logs the registers, hi and lo that the instruction that just finished changed
+     *
+     * @param instructionPc The program counter of the instruction
+     */
+    private void traceRegisters(int instructionPc) {
+        for (int i = 0; i < 32; i++) {
+            if (register[i] != stepStart[i]) {
+                instructionTrace.register(instructionPc, i, register[i]);
+            }
+        }
+        if (hi != stepStart[32]) {
+            instructionTrace.register(instructionPc, 32, hi);
+        }
+        if (lo != stepStart[33]) {
+            instructionTrace.register(instructionPc, 33, lo);
+        }
+    }
+
+    /**
+     * Logs the old values of the registers, hi and lo that the instruction that just finished changed
+     */
+    private void logRegisters() {
+        for (int i = 0; i < 32; i++) {
+            if (register[i] != stepStart[i]) {
+                undoLog.register(i, stepStart[i]);
+            }
+        }
+        if (hi != stepStart[32]) {
+            undoLog.register(32, stepStart[32]);
+        }
+        if (lo != stepStart[33]) {
+            undoLog.register(33, stepStart[33]);
+        }
+    }
+
+    public double hitRate()
+    {
+        return cache == null ? 0 : cache.hitRate();
+    }
+
+    public double missRate()
+    {
+        return 1 - hitRate();
+    }
+
+    byte getFromMemory(int address)
+    {
+        if (cache != null) {
+            cache.access(address, false);
+        }
+        if (trace != null) {
+            trace.record(address, false);
+        }
+        return memory.loadByte(address);
+    }
+
+    void sendToMemory(int address, byte data)
+    {
+        if (undoing) {
+            int word = address & ~3;
+            undoLog.memory(word, memory.loadWord(word));  // The log holds words, undoing puts back the whole word
+        }
+        if (cache != null) {
+            cache.access(address, true);
+        }
+        if (trace != null) {
+            trace.record(address, true);
+        }
+        memory.storeByte(address, data);
+        invalidateCode(address);
+    }
+
+    /**
+     * Drops the decoded instruction and translated blocks that contain an address after it is written
+     *
+     * @param address The address that was written
+     */
+    void invalidateCode(int address) {
+        decodeCache.invalidate(address);
+        blockCache.invalidate(address);
+    }
+
+    /**
+     * Drops the decoded instructions and translated blocks that contain a range of addresses after it is written
+     *
+     * @param address The first address that was written
+     * @param length The number of bytes written
+     */
+    void invalidateCode(int address, int length) {
+        if (length <= 0) {
+            return;
+        }
+        int words = (int) ((Integer.toUnsignedLong(address & 3) + length + 3) >>> 2);
+        for (int i = 0, word = address & ~3; i < words; i++, word += 4) {
+            invalidateCode(word);
+        }
+    }
+
+    /**
+     * Reads a word from memory in one access
+     *
+     * @param address The address of the first (most significant) byte, a multiple of 4
+     * @return The word
+     * @throws AlignmentException If the address is not a multiple of 4
+     */
+    int loadWord(int address)
+    {
+        int value = memory.loadWord(address);
+        if (cache != null) {
+            cache.access(address, false);
+        }
+        if (trace != null) {
+            trace.record(address, false);
+        }
+        return value;
+    }
+
+    /**
+     * Writes a word to memory in one access and drops the decoded instructions and blocks that contain it
+     *
+     * @param address The address of the first (most significant) byte, a multiple of 4
+     * @param value The word
+     * @throws AlignmentException If the address is not a multiple of 4
+     */
+    void storeWord(int address, int value)
+    {
+        if (undoing) {
+            undoLog.memory(address, memory.loadWord(address));
+        }
+        memory.storeWord(address, value);
+        if (cache != null) {
+            cache.access(address, true);
+        }
+        if (trace != null) {
+            trace.record(address, true);
+        }
+        decodeCache.invalidate(address);
+        blockCache.invalidate(address);
+    }
+
+    //HELPER METHODS
+
+    /**
+     * Getter for the program counter
+     *
+     * @return The program counter
+     */
+    public int getProgramCounter() {
+        return pc;
+    }
+
+    /**
+     * Getter for the memory
+     *
+     * @return The memory of the machine
+     */
+    public Memory getMemory() {
+        return memory;
+    }
+
+    /**
+     * Getter for a register
+     *
+     * @param registerIndex The register number
+     * @return The value of the register
+     */
+    public int getRegister(int registerIndex) {
+        return register[registerIndex];
+    }
+
+    /**
+     * Setter for the program counter
+     *
+     * @param pc The program counter
+     */
+    public void setProgramCounter(int pc) {
+        this.pc = pc;
+        sendProgramCounter();   // Send the program counter to the display
+    }
+
+    /**
+     * Sets the program counter as requested from the user, the history starts again from there as the checkpoints
+     * cannot replay to the change
+     *
+     * @param pc The program counter
+     */
+    public void editProgramCounter(int pc) {
+        setProgramCounter(pc);
+        restartHistory();
+    }
+
+    /**
+     * Tells the {@link MachineListener} that the whole displayed memory changed
+     */
+    public void sendMemory() {
+        machineListener.updateMemoryDisplay(0, memorySize);
+    }
+
+    /**
+     * Tells the {@link MachineListener} about the displayed pages written since the last call, then marks every page
+     * clean. Only called from the thread that runs the machine
+     */
+    void sendChangedMemory() {
+        memory.forEachDirtyPage(pageNumber -> {
+            long address = (long) pageNumber << PageTable.PAGE_SHIFT;
+            if (address < memorySize) {
+                sendMemory((int) address, (int) Math.min(Memory.PAGE_SIZE, memorySize - address));
+            }
+        });
+        memory.clearDirty();
+    }
+
+    /**
+     * Tells the {@link MachineListener} that some bytes of memory changed so only their rows are redrawn
+     *
+     * @param address The first address that changed
+     * @param length The number of bytes that changed
+     */
+    void sendMemory(int address, int length) {
+        machineListener.updateMemoryDisplay(address, length);
+    }
+
+    /**
+     * Gets the size of the memory display
+     *
+     * @return The bytes of memory that are displayed and saved
+     */
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * Formats one row of the memory display, the word at an address with its address, in the display format
+     * <p>
+     * Reads memory without the last page cache so it can be called from the UI thread while the machine runs
+     *
+     * @param address The address of the row, a multiple of 4
+     * @return The row, like 0x000010: 3c 1d 00 01
+     */
+    public String formatMemoryRow(int address) {
+        char[] row = new char[NumberFormatter.MAX_ROW_LENGTH];
+        return new String(row, 0, formatMemoryRow(address, row));
+    }
+
+    /**
+     * Formats one row of the memory display into a buffer, so a display can reuse the buffer of each row it shows
+     *
+     * @param address The address of the row, a multiple of 4
+     * @param row A buffer of at least {@link NumberFormatter#MAX_ROW_LENGTH} characters
+     * @return The length of the row
+     */
+    public int formatMemoryRow(int address, char[] row) {
+        return NumberFormatter.row(address, memory.peekWord(address), displayFormat, row);
+    }
+
+    String microStepInstructions = "";
+
+    public void sendToDisplay(String message) {
+        //todo add message to text area of app
+        Log.d("Step", message);
+        microStepInstructions = microStepInstructions + "\n" + message;
+        machineListener.updateInstructionDisplay(microStepInstructions);
+    }
+
+    /**
+     * Saves the state of the machine on the calling thread, in the binary format of {@link StateManager}
+     *
+     * @param outputStream The stream to write the state to, closed when done
+     * @throws IOException If writing fails
+     */
+    public void saveState(OutputStream outputStream) throws IOException {
+        Log.d("saveState", "Starting to save the state");
+        try (outputStream) {
+            StateManager.save(this, outputStream);
+        }
+    }
+
+    /**
+     * Increases the program counter
+     *
+     * @param pcValue The value to increase the program counter by
+     */
+    void increaseProgramCounter(int pcValue) {
+        pc += pcValue;  // Increment the program counter by pcValue
+        sendProgramCounter();   // Send the correct format
+    }
+
+    /**
+     * Sends the program counter to the display with the correct format
+     * <p>
+     * Used by increaseProgramCounter and setProgramCounter
+     */
+    public void sendProgramCounter() {
+        machineListener.updateProgramCounter(formatForDisplay(pc));
+    }
+
+    /**
+     * Method to send a individual register to the {@link MachineListener} with the correct format
+     *
+     * @param registerIndex The register to select from in the register array
+     */
+    void sendIndividualRegisterToDisplay(int registerIndex) {
+        machineListener.updateIndividualRegister(registerIndex, formatForDisplay(register[registerIndex]));
+        displayedRegisters[registerIndex] = register[registerIndex];
+    }
+
+    /**
+     * Formats a register or the program counter in the display format
+     *
+     * @param value The value
+     * @return The value, zero padded to 8 digits in hex and 32 in binary
+     */
+    private String formatForDisplay(int value) {
+        synchronized (displayBuffer) {
+            return NumberFormatter.format(value, displayFormat, displayBuffer);
+        }
+    }
+
+    /**
+     * Method to update all the register displays by calling sendIndividualRegisterToDisplay
+     */
+    public void sendAllRegistersToDisplay() {
+        for (int i = 0; i < register.length; i++) {
+            sendIndividualRegisterToDisplay(i);
+        }
+        displayedFormat = displayFormat;
+    }
+
+    /**
+     * Sends only the registers that changed since they were last sent, or all of them if the display format changed
+     */
+    void sendChangedRegistersToDisplay() {
+        if (displayedFormat != displayFormat) {
+            sendAllRegistersToDisplay();
+            return;
+        }
+        for (int i = 0; i < register.length; i++) {
+            if (register[i] != displayedRegisters[i]) {
+                sendIndividualRegisterToDisplay(i);
+            }
+        }
+    }
+
+}
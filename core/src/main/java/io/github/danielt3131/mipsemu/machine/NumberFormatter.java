@@ -0,0 +1,148 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import io.github.danielt3131.mipsemu.Reference;
+
+/**
+ * Formats words and memory rows for the displays in the {@link Reference} display formats without
+ * {@link String#format} or temporary objects
+ * <p>
+ * Every byte is looked up in tables made once, and the characters are written into a buffer owned by the caller, so
+ * the methods are safe from any thread as long as each thread has its own buffer
+ */
+public final class NumberFormatter {
+
+    public static final int MAX_WORD_LENGTH = 32; //a binary word, longer than any hex or decimal word
+    public static final int MAX_ROW_LENGTH = 47; //0x, an 8 digit address, a colon and 4 binary bytes
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    private static final char[] HEX = new char[256 * 2]; //2 characters per byte
+    private static final char[] BINARY = new char[256 * 8]; //8 characters per byte
+    private static final char[][] DECIMAL = new char[256][]; //the signed value of each byte
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            HEX[b * 2] = DIGITS[b >>> 4];
+            HEX[b * 2 + 1] = DIGITS[b & 0xF];
+            for (int bit = 0; bit < 8; bit++) {
+                BINARY[b * 8 + bit] = (b & (0x80 >>> bit)) != 0 ? '1' : '0';
+            }
+            DECIMAL[b] = Integer.toString((byte) b).toCharArray();
+        }
+    }
+
+    private NumberFormatter() {
+    }
+
+    /**
+     * Formats a word into a new string
+     *
+     * @param value The word
+     * @param format The display format from {@link Reference}
+     * @param buffer A buffer of at least {@link #MAX_WORD_LENGTH} characters to format in
+     * @return The word, zero padded to 8 digits in hex and 32 in binary
+     */
+    public static String format(int value, int format, char[] buffer) {
+        return new String(buffer, 0, word(value, format, buffer, 0));
+    }
+
+    /**
+     * Writes a word, zero padded to 8 digits in hex and 32 in binary
+     *
+     * @param value The word
+     * @param format The display format from {@link Reference}
+     * @param out Where to write
+     * @param offset The index of the first character
+     * @return The index after the last character
+     */
+    public static int word(int value, int format, char[] out, int offset) {
+        if (format == Reference.HEX_MODE) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                offset = hexByte(value >>> shift, out, offset);
+            }
+            return offset;
+        } else if (format == Reference.BINARY_MODE) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                System.arraycopy(BINARY, ((value >>> shift) & 0xFF) * 8, out, offset, 8);
+                offset += 8;
+            }
+            return offset;
+        }
+        return decimal(value, out, offset);
+    }
+
+    /**
+     * Writes one row of the memory display, like 0x000010: 3c 1d 00 01
+     *
+     * @param address The address of the word, shown with at least 6 hex digits
+     * @param word The word at the address
+     * @param format The display format from {@link Reference}, bytes are signed in decimal
+     * @param out A buffer of at least {@link #MAX_ROW_LENGTH} characters
+     * @return The length of the row
+     */
+    public static int row(int address, int word, int format, char[] out) {
+        out[0] = '0';
+        out[1] = 'x';
+        int digits = Math.max(6, 8 - Integer.numberOfLeadingZeros(address) / 4);
+        int offset = 2;
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            out[offset++] = DIGITS[(address >>> shift) & 0xF];
+        }
+        out[offset++] = ':';
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            int b = (word >>> shift) & 0xFF;
+            out[offset++] = ' ';
+            if (format == Reference.HEX_MODE) {
+                offset = hexByte(b, out, offset);
+            } else if (format == Reference.BINARY_MODE) {
+                System.arraycopy(BINARY, b * 8, out, offset, 8);
+                offset += 8;
+            } else {
+                char[] decimal = DECIMAL[b];
+                System.arraycopy(decimal, 0, out, offset, decimal.length);
+                offset += decimal.length;
+            }
+        }
+        return offset;
+    }
+
+    private static int hexByte(int b, char[] out, int offset) {
+        int index = (b & 0xFF) * 2;
+        out[offset] = HEX[index];
+        out[offset + 1] = HEX[index + 1];
+        return offset + 2;
+    }
+
+    /**
+     * Writes a signed decimal, the digits are found from the end backwards
+     */
+    private static int decimal(int value, char[] out, int offset) {
+        long remaining = value;
+        if (remaining < 0) {
+            out[offset++] = '-';
+            remaining = -remaining;
+        }
+        int length = 1;
+        for (long bound = 10; bound <= remaining; bound *= 10) {
+            length++;
+        }
+        int end = offset + length;
+        for (int i = end - 1; i >= offset; i--) {
+            out[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * One bit per 4 KB page of the 32-bit address space
+ * <p>
+ * The bits are kept in chunks of 64 longs covering 16 MB that are only allocated when a bit in them is first set, so
+ * walking the set bits takes time proportional to the parts of the address space that are used
+ */
+final class PageBitmap {
+
+    private static final int CHUNK_SHIFT = 12; //pages per chunk
+
+    private final long[][] chunks = new long[1 << (32 - PageTable.PAGE_SHIFT - CHUNK_SHIFT)][];
+
+    /**
+     * @param pageNumber The address shifted right by {@link PageTable#PAGE_SHIFT}
+     * @return If the bit of the page is set
+     */
+    boolean get(int pageNumber) {
+        long[] chunk = chunks[pageNumber >>> CHUNK_SHIFT];
+        return chunk != null && (chunk[(pageNumber >>> 6) & 63] & 1L << pageNumber) != 0;
+    }
+
+    /**
+     * @param pageNumber The address shifted right by {@link PageTable#PAGE_SHIFT}
+     */
+    void set(int pageNumber) {
+        long[] chunk = chunks[pageNumber >>> CHUNK_SHIFT];
+        if (chunk == null) {
+            chunk = new long[1 << (CHUNK_SHIFT - 6)];
+            chunks[pageNumber >>> CHUNK_SHIFT] = chunk;
+        }
+        chunk[(pageNumber >>> 6) & 63] |= 1L << pageNumber;
+    }
+
+    /**
+     * Runs an action on the page number of every set bit, in order
+     */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < chunks.length; i++) {
+            long[] chunk = chunks[i];
+            if (chunk == null) {
+                continue;
+            }
+            for (int j = 0; j < chunk.length; j++) {
+                long bits = chunk[j];
+                while (bits != 0) {
+                    action.accept(i << CHUNK_SHIFT | j << 6 | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears every bit, keeping the chunks for reuse
+     */
+    void clear() {
+        for (long[] chunk : chunks) {
+            if (chunk != null) {
+                Arrays.fill(chunk, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A sparse table with one entry per 4 KB page of the 32-bit address space
+ * <p>
+ * Uses two levels of 1024 entries so only the parts of the address space that are used take up room. Used for the
+ * pages of {@link Memory} and for the per page arrays of the decode and block caches
+ *
+ * @param <T> The type of the entries
+ */
+final class PageTable<T> {
+
+    static final int PAGE_SHIFT = 12;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    static final int WORDS_PER_PAGE = PAGE_SIZE / 4;
+
+    private static final int LEVEL_SHIFT = 10;
+    private static final int LEVEL_MASK = (1 << LEVEL_SHIFT) - 1;
+
+    private final Object[][] directory = new Object[1 << LEVEL_SHIFT][];
+
+    /**
+     * Gets the entry of a page
+     *
+     * @param pageNumber The address shifted right by {@link #PAGE_SHIFT}
+     * @return The entry or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    T get(int pageNumber) {
+        Object[] table = directory[pageNumber >>> LEVEL_SHIFT];
+        return table == null ? null : (T) table[pageNumber & LEVEL_MASK];
+    }
+
+    /**
+     * Sets the entry of a page
+     *
+     * @param pageNumber The address shifted right by {@link #PAGE_SHIFT}
+     * @param entry The entry
+     */
+    void put(int pageNumber, T entry) {
+        Object[] table = directory[pageNumber >>> LEVEL_SHIFT];
+        if (table == null) {
+            table = new Object[1 << LEVEL_SHIFT];
+            directory[pageNumber >>> LEVEL_SHIFT] = table;
+        }
+        table[pageNumber & LEVEL_MASK] = entry;
+    }
+
+    /**
+     * Runs an action on every entry
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<T> action) {
+        for (Object[] table : directory) {
+            if (table != null) {
+                for (Object entry : table) {
+                    if (entry != null) {
+                        action.accept((T) entry);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs an action on every entry and its page number, in order of page number
+     */
+    @SuppressWarnings("unchecked")
+    void forEachPage(ObjIntConsumer<T> action) {
+        for (int i = 0; i < directory.length; i++) {
+            Object[] table = directory[i];
+            if (table != null) {
+                for (int j = 0; j < table.length; j++) {
+                    if (table[j] != null) {
+                        action.accept((T) table[j], i << LEVEL_SHIFT | j);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every entry
+     */
+    void clear() {
+        Arrays.fill(directory, null);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary program image, the bytes of a program laid out so they can be copied into memory without parsing
+ * <p>
+ * The file is big-endian: the magic MIMG, a version int, the entry program counter, the initial register 29 (the stack
+ * pointer lw and sw use) and register 28 (the global pointer), where 0 keeps the value the machine already has, and
+ * the segment count. Then comes a table with the address, file offset and length of every segment, and then the
+ * segment bytes. Images are made from the text format of {@link ProgramLoader} with
+ * {@link #convert(InputStream, OutputStream, int, int, int)} or from assembly with
+ * {@link AssembledProgram#writeImage(OutputStream)}
+ */
+public final class ProgramImage {
+
+    static final byte[] MAGIC_BYTES = {'M', 'I', 'M', 'G'};
+    private static final int MAGIC = 0x4D494D47; //MIMG
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int SEGMENT_SIZE = 12; //address, offset and length
+
+    private ProgramImage() {
+    }
+
+    /**
+     * Loads an image file into a machine by memory mapping it, so the segments are copied straight from the page
+     * cache into memory
+     *
+     * @param file The image
+     * @param machine The machine
+     * @throws IOException If the file cannot be read or is not a valid image
+     */
+    public static void load(File file, MipsMachine machine) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Program image is larger than 2 GB");
+            }
+            load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), machine);
+        }
+    }
+
+    /**
+     * Loads an image into a machine, setting the program counter and the registers in the header
+     *
+     * @param image The whole image starting at index 0
+     * @param machine The machine
+     * @throws IOException If the image is not valid, nothing is loaded then
+     */
+    static void load(ByteBuffer image, MipsMachine machine) throws IOException {
+        image = image.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int size = image.limit();
+        if (size < HEADER_SIZE || image.getInt(0) != MAGIC) {
+            throw new IOException("Not a program image");
+        }
+        int version = image.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported program image version " + version);
+        }
+        int count = image.getInt(20);
+        if (count < 0 || HEADER_SIZE + (long) count * SEGMENT_SIZE > size) {
+            throw new IOException("Program image segment table is cut off");
+        }
+        // Check every segment first so a bad image leaves memory alone
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * SEGMENT_SIZE;
+            int offset = image.getInt(entry + 4);
+            int length = image.getInt(entry + 8);
+            if (offset < 0 || length < 0 || (long) offset + length > size) {
+                throw new IOException("Program image segment " + i + " is outside the file");
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * SEGMENT_SIZE;
+            int address = image.getInt(entry);
+            int offset = image.getInt(entry + 4);
+            int length = image.getInt(entry + 8);
+            image.limit(offset + length).position(offset);
+            machine.memory.write(address, image);
+            image.limit(size);
+            machine.invalidateCode(address, length);
+        }
+        machine.pc = image.getInt(8);
+        int sp = image.getInt(12);
+        int gp = image.getInt(16);
+        if (sp != 0) {
+            machine.register[29] = sp;
+        }
+        if (gp != 0) {
+            machine.register[28] = gp;
+        }
+    }
+
+    /**
+     * Converts a program in the text format into an image
+     *
+     * @param text The program in the format read by {@link ProgramLoader}, it is not closed
+     * @param out Where to write the image, it is not closed
+     * @param entry The program counter to start at
+     * @param sp The initial register 29, 0 to keep the machine's default at the end of its memory
+     * @param gp The initial register 28, 0 to keep it 0
+     * @return The number of program bytes in the image
+     * @throws IOException If reading or writing fails
+     * @throws ProgramFormatException If a line of the program is malformed
+     */
+    public static long convert(InputStream text, OutputStream out, int entry, int sp, int gp) throws IOException {
+        Memory memory = new Memory();
+        ProgramLoader loader = new ProgramLoader(text);
+        loader.load(memory, null);
+        int[] segments = loader.getSegments();
+        int[] addresses = new int[segments.length / 2];
+        int[] lengths = new int[segments.length / 2];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = segments[i * 2];
+            lengths[i] = segments[i * 2 + 1];
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        writeHeader(data, entry, sp, gp, addresses, lengths);
+        long bytes = 0;
+        for (int i = 0; i < addresses.length; i++) {
+            // A page at a time, a later line may have overwritten part of an earlier segment so read what is in memory
+            for (int done = 0; done < lengths[i]; ) {
+                int length = Math.min(Memory.PAGE_SIZE, lengths[i] - done);
+                data.write(memory.read(addresses[i] + done, length));
+                done += length;
+            }
+            bytes += lengths[i];
+        }
+        data.flush();
+        return bytes;
+    }
+
+    /**
+     * Writes segments that are already in arrays as an image
+     *
+     * @param out Where to write the image, it is not closed
+     * @param entry The program counter to start at
+     * @param sp The initial register 29, 0 to keep the machine's default at the end of its memory
+     * @param gp The initial register 28, 0 to keep it 0
+     * @param addresses The address of each segment
+     * @param segments The bytes of each segment
+     * @throws IOException If writing fails
+     */
+    static void write(OutputStream out, int entry, int sp, int gp, int[] addresses, byte[][] segments)
+            throws IOException {
+        int[] lengths = new int[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            lengths[i] = segments[i].length;
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        writeHeader(data, entry, sp, gp, addresses, lengths);
+        for (byte[] segment : segments) {
+            data.write(segment);
+        }
+        data.flush();
+    }
+
+    /**
+     * Writes the header and segment table, the segment bytes have to follow in the same order
+     */
+    private static void writeHeader(DataOutputStream data, int entry, int sp, int gp, int[] addresses, int[] lengths)
+            throws IOException {
+        long offset = HEADER_SIZE + (long) addresses.length * SEGMENT_SIZE;
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(entry);
+        data.writeInt(sp);
+        data.writeInt(gp);
+        data.writeInt(addresses.length);
+        for (int i = 0; i < addresses.length; i++) {
+            if (offset + lengths[i] > Integer.MAX_VALUE) {
+                throw new IOException("Program image would be larger than 2 GB");
+            }
+            data.writeInt(addresses[i]);
+            data.writeInt((int) offset);
+            data.writeInt(lengths[i]);
+            offset += lengths[i];
+        }
+    }
+
+    /**
+     * Tells if a file starts with the image magic
+     *
+     * @param file The file
+     * @return If it is an image
+     * @throws IOException If the file cannot be read
+     */
+    public static boolean isImage(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    return false;
+                }
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+}
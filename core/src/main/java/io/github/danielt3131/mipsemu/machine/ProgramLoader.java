@@ -0,0 +1,189 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads a program into the memory of a {@link MipsMachine} in one pass over the bytes of the file
+ * <p>
+ * Every line is an address in hex, a colon and the bits of the bytes stored from that address, like
+ * {@code 0x4: 00100000 00001000 00000000 00000111}. Spaces and tabs can go anywhere among the bits, blank lines are
+ * skipped and lines can end with \n or \r\n. The address and bits are parsed straight from a reused buffer, so no
+ * strings are made and loading is limited by reading the stream
+ */
+public class ProgramLoader {
+
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream inputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int lineNumber = 1;
+    private int[] segments = new int[16]; //address and length pairs of the bytes stored, adjacent lines merged
+    private int segmentCount;
+
+    /**
+     * Constructor for a loader of one program
+     *
+     * @param inputStream The program, it is not closed
+     */
+    public ProgramLoader(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Reads the whole program into the memory of a machine, dropping any decoded or translated code it overwrites
+     *
+     * @param machine The machine
+     * @return The number of bytes stored
+     * @throws IOException If reading the stream fails
+     * @throws ProgramFormatException If a line is not an address followed by whole bytes
+     */
+    public long load(MipsMachine machine) throws IOException {
+        return load(machine.memory, machine);
+    }
+
+    /**
+     * Reads the whole program into memory
+     *
+     * @param memory Where to store the bytes
+     * @param machine The machine whose code is invalidated, null if the memory does not belong to a machine
+     * @return The number of bytes stored
+     */
+    long load(Memory memory, MipsMachine machine) throws IOException {
+        long stored = 0;
+        int c;
+        while ((c = skipBlanks(read())) != -1) {
+            if (c == '\n') {
+                lineNumber++;
+                continue;
+            }
+            int address = readAddress(c);
+            int start = address;
+            int bits = 0;
+            int bitCount = 0;
+            while ((c = read()) != '\n' && c != -1) {
+                if (c == '0' || c == '1') {
+                    bits = bits << 1 | (c - '0');
+                    if (++bitCount == 8) {
+                        memory.storeByte(address, (byte) bits);
+                        if (machine != null && ((address & 3) == 0 || address == start)) {
+                            machine.invalidateCode(address);     // Once per word
+                        }
+                        address++;
+                        stored++;
+                        bits = 0;
+                        bitCount = 0;
+                    }
+                } else if (!isBlank(c)) {
+                    throw error("Expected a bit but found '" + (char) c + "'");
+                }
+            }
+            if (bitCount != 0) {
+                throw error(bitCount + " bits left over, every byte needs 8");
+            }
+            if (address != start) {
+                addSegment(start, address - start);
+            }
+            lineNumber++;
+        }
+        return stored;
+    }
+
+    private void addSegment(int address, int length) {
+        if (segmentCount > 0) {
+            int last = (segmentCount - 1) * 2;
+            if (segments[last] + segments[last + 1] == address) {
+                segments[last + 1] += length;
+                return;
+            }
+        }
+        if (segmentCount * 2 == segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segments[segmentCount * 2] = address;
+        segments[segmentCount * 2 + 1] = length;
+        segmentCount++;
+    }
+
+    /**
+     * Gets the ranges of memory the program was stored to, in the order of the file
+     *
+     * @return The address and length of each range, with lines that continue the previous line merged into it
+     */
+    int[] getSegments() {
+        return Arrays.copyOf(segments, segmentCount * 2);
+    }
+
+    /**
+     * Reads the hex address at the start of a line and the colon after it
+     *
+     * @param c The first character of the line
+     */
+    private int readAddress(int c) throws IOException {
+        if (c != '0' || ((c = read()) != 'x' && c != 'X')) {
+            throw error("Expected an address like 0x10");
+        }
+        int address = 0;
+        int digits = 0;
+        while ((c = read()) != -1) {
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                break;
+            }
+            if (++digits > 8) {
+                throw error("Address is longer than 32 bits");
+            }
+            address = address << 4 | digit;
+        }
+        if (digits == 0) {
+            throw error("Expected hex digits after 0x");
+        }
+        if (skipBlanks(c) != ':') {
+            throw error("Expected ':' after the address");
+        }
+        return address;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = inputStream.read(buffer, 0, BUFFER_SIZE);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private int skipBlanks(int c) throws IOException {
+        while (isBlank(c)) {
+            c = read();
+        }
+        return c;
+    }
+
+    private static boolean isBlank(int c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    private ProgramFormatException error(String message) {
+        return new ProgramFormatException(lineNumber, message);
+    }
+}
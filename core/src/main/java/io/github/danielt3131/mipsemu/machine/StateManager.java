@@ -0,0 +1,332 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Saves and restores the state of a {@link MipsMachine} in a binary format
+ * <p>
+ * The file is big-endian: the magic MSTA, a version int, the memory size and the number of pages, then the 32
+ * registers, hi, lo, the program counter and a CRC32C of everything before it. The pages of memory that hold something
+ * follow in blocks of up to 16, pages of zeros are left out. Each block is its page count, its stored length and a
+ * CRC32C of the stored bytes, then the stored bytes: the page number and 4 KB of every page, deflated unless that
+ * would not make them smaller. A stored length equal to the raw length means the block was not deflated
+ * <p>
+ * Blocks are deflated in parallel on the common fork-join pool and written in order as they finish, while reading
+ * checks and inflates one block at a time, so neither side holds the whole state
+ */
+public final class StateManager {
+
+    static final byte[] MAGIC_BYTES = {'M', 'S', 'T', 'A'};
+    private static final int MAGIC = 0x4D535441; //MSTA
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16 + 35 * 4; //magic, version, memory size, page count and the registers
+    private static final int PAGE_ENTRY_SIZE = 4 + Memory.PAGE_SIZE; //page number and bytes
+    private static final int BLOCK_PAGES = 16;
+    private static final int BLOCK_HEADER_SIZE = 12; //page count, stored length and checksum
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] EMPTY_PAGE = new byte[Memory.PAGE_SIZE];
+
+    private StateManager() {
+    }
+
+    /**
+     * Writes the state of a machine with its memory deflated
+     *
+     * @param machine The machine, which must not run while it is saved
+     * @param outputStream Where to write the state, it is not closed
+     * @throws IOException If writing fails
+     */
+    public static void save(MipsMachine machine, OutputStream outputStream) throws IOException {
+        save(machine, outputStream, true);
+    }
+
+    /**
+     * Writes the state of a machine
+     *
+     * @param machine The machine, which must not run while it is saved
+     * @param outputStream Where to write the state, it is not closed
+     * @param compress If the memory is deflated, otherwise it is stored as is which is faster to save
+     * @throws IOException If writing fails
+     */
+    public static void save(MipsMachine machine, OutputStream outputStream, boolean compress) throws IOException {
+        save(machine.memory::forEachPage, machine.memorySize, machine.register, machine.hi, machine.lo, machine.pc,
+                outputStream, compress);
+    }
+
+    /**
+     * Writes the state of a machine at a checkpoint, which can be done on any thread as checkpoints never change
+     *
+     * @param checkpoint The checkpoint
+     * @param outputStream Where to write the state, it is not closed
+     * @param compress If the memory is deflated, otherwise it is stored as is which is faster to save
+     * @throws IOException If writing fails
+     */
+    public static void save(Checkpoint checkpoint, OutputStream outputStream, boolean compress) throws IOException {
+        save(checkpoint::forEachPage, checkpoint.memorySize, checkpoint.register, checkpoint.hi, checkpoint.lo,
+                checkpoint.pc, outputStream, compress);
+    }
+
+    /**
+     * Writes a state
+     *
+     * @param memory Runs an action on every page of memory and its page number
+     */
+    private static void save(Consumer<ObjIntConsumer<byte[]>> memory, int memorySize, int[] register, int hi, int lo,
+                             int pc, OutputStream outputStream, boolean compress) throws IOException {
+        // Pages that were allocated but are all zero again read the same without being saved
+        List<byte[]> pages = new ArrayList<>();
+        List<Integer> pageNumbers = new ArrayList<>();
+        memory.accept((page, pageNumber) -> {
+            if (Arrays.mismatch(page, EMPTY_PAGE) != -1) {
+                pages.add(page);
+                pageNumbers.add(pageNumber);
+            }
+        });
+
+        WritableByteChannel channel = Channels.newChannel(outputStream);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4);
+        header.putInt(MAGIC).putInt(VERSION).putInt(memorySize).putInt(pages.size());
+        for (int value : register) {
+            header.putInt(value);
+        }
+        header.putInt(hi).putInt(lo).putInt(pc);
+        header.putInt(checksum(header.array(), 0, HEADER_SIZE));
+        header.flip();
+        writeFully(channel, header);
+
+        // Keep a few blocks per thread in flight so the pool stays busy without encoding the whole memory ahead
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int window = 2 * pool.getParallelism();
+        ArrayDeque<ForkJoinTask<byte[]>> encoding = new ArrayDeque<>();
+        for (int from = 0; from < pages.size(); from += BLOCK_PAGES) {
+            int first = from;
+            int last = Math.min(from + BLOCK_PAGES, pages.size());
+            if (encoding.size() == window) {
+                writeFully(channel, ByteBuffer.wrap(encoding.poll().join()));
+            }
+            encoding.add(pool.submit(() -> encodeBlock(pages.subList(first, last), pageNumbers.subList(first, last), compress)));
+        }
+        while (!encoding.isEmpty()) {
+            writeFully(channel, ByteBuffer.wrap(encoding.poll().join()));
+        }
+        Log.d("StateManager", "Saved " + pages.size() + " pages");
+    }
+
+    /**
+     * Makes a block with its header
+     *
+     * @return The block ready to be written
+     */
+    private static byte[] encodeBlock(List<byte[]> pages, List<Integer> pageNumbers, boolean compress) {
+        int rawLength = pages.size() * PAGE_ENTRY_SIZE;
+        ByteBuffer raw = ByteBuffer.allocate(rawLength);
+        for (int i = 0; i < pages.size(); i++) {
+            raw.putInt(pageNumbers.get(i)).put(pages.get(i));
+        }
+        byte[] block = new byte[BLOCK_HEADER_SIZE + rawLength];
+        int storedLength = rawLength;
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(raw.array());
+                deflater.finish();
+                int length = deflater.deflate(block, BLOCK_HEADER_SIZE, rawLength - 1);
+                if (deflater.finished()) {
+                    storedLength = length;
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        if (storedLength == rawLength) {
+            System.arraycopy(raw.array(), 0, block, BLOCK_HEADER_SIZE, rawLength);
+        }
+        ByteBuffer.wrap(block).putInt(pages.size()).putInt(storedLength)
+                .putInt(checksum(block, BLOCK_HEADER_SIZE, storedLength));
+        return Arrays.copyOf(block, BLOCK_HEADER_SIZE + storedLength);
+    }
+
+    /**
+     * Reads a state written by {@link #save(MipsMachine, OutputStream, boolean)} into a machine, replacing its
+     * registers and all of its memory
+     *
+     * @param inputStream The state, it is not closed
+     * @param machine The machine
+     * @throws IOException If reading fails or the stream is not a valid state, the machine is left alone then
+     */
+    static void restore(InputStream inputStream, MipsMachine machine) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(inputStream);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.limit(0);
+        if (!readAtLeast(channel, buffer, 8) || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a saved state");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported saved state version " + version);
+        }
+        // Read the rest of the header behind the magic so the checksum covers it from the start of the array
+        buffer.position(0);
+        if (!readAtLeast(channel, buffer, HEADER_SIZE + 4)) {
+            throw new IOException("Saved state is cut off in the header");
+        }
+        if (checksum(buffer.array(), 0, HEADER_SIZE) != buffer.getInt(HEADER_SIZE)) {
+            throw new IOException("Saved state header is corrupt");
+        }
+        buffer.position(8);
+        int memorySize = buffer.getInt();
+        int pageCount = buffer.getInt();
+        int[] register = new int[32];
+        for (int i = 0; i < register.length; i++) {
+            register[i] = buffer.getInt();
+        }
+        int hi = buffer.getInt();
+        int lo = buffer.getInt();
+        int pc = buffer.getInt();
+        buffer.getInt();    // The checksum
+        if (pageCount < 0 || pageCount > 1 << (32 - PageTable.PAGE_SHIFT)) {
+            throw new IOException("Saved state has " + pageCount + " pages");
+        }
+
+        // Fill new memory so a bad state does not leave the machine half restored
+        Memory memory = new Memory();
+        byte[] stored = new byte[BLOCK_PAGES * PAGE_ENTRY_SIZE];
+        byte[] raw = new byte[BLOCK_PAGES * PAGE_ENTRY_SIZE];
+        ByteBuffer rawBuffer = ByteBuffer.wrap(raw);
+        Inflater inflater = new Inflater();
+        try {
+            for (int read = 0; read < pageCount; ) {
+                if (!readAtLeast(channel, buffer, BLOCK_HEADER_SIZE)) {
+                    throw new IOException("Saved state is cut off after " + read + " of " + pageCount + " pages");
+                }
+                int pages = buffer.getInt();
+                int storedLength = buffer.getInt();
+                int checksum = buffer.getInt();
+                int rawLength = pages * PAGE_ENTRY_SIZE;
+                if (pages <= 0 || pages > BLOCK_PAGES || pages > pageCount - read || storedLength <= 0
+                        || storedLength > rawLength) {
+                    throw new IOException("Saved state has a bad block after " + read + " pages");
+                }
+                if (!readFully(channel, buffer, stored, storedLength)) {
+                    throw new IOException("Saved state is cut off after " + read + " of " + pageCount + " pages");
+                }
+                if (checksum(stored, 0, storedLength) != checksum) {
+                    throw new IOException("Saved state is corrupt after " + read + " pages");
+                }
+                if (storedLength == rawLength) {
+                    System.arraycopy(stored, 0, raw, 0, rawLength);
+                } else {
+                    inflater.reset();
+                    inflater.setInput(stored, 0, storedLength);
+                    if (inflater.inflate(raw, 0, rawLength) != rawLength || !inflater.finished()) {
+                        throw new IOException("Saved state is corrupt after " + read + " pages");
+                    }
+                }
+                rawBuffer.clear();
+                for (int i = 0; i < pages; i++) {
+                    int pageNumber = rawBuffer.getInt();
+                    if (pageNumber >>> (32 - PageTable.PAGE_SHIFT) != 0) {
+                        throw new IOException("Saved state has a page outside the address space: " + pageNumber);
+                    }
+                    rawBuffer.limit(rawBuffer.position() + Memory.PAGE_SIZE);
+                    memory.write(pageNumber << PageTable.PAGE_SHIFT, rawBuffer);
+                    rawBuffer.limit(raw.length);
+                }
+                read += pages;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Saved state is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        machine.memory = memory;
+        machine.memorySize = memorySize;
+        System.arraycopy(register, 0, machine.register, 0, register.length);
+        machine.hi = hi;
+        machine.lo = lo;
+        machine.pc = pc;
+        Log.d("StateManager", "Restored " + pageCount + " pages");
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Keeps the unread bytes of the buffer and reads until there are at least some bytes to read
+     *
+     * @return false if the stream ended first
+     */
+    private static boolean readAtLeast(ReadableByteChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Copies bytes out of the buffer into an array, reading more as needed
+     *
+     * @return false if the stream ended first
+     */
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer, byte[] bytes, int length)
+            throws IOException {
+        for (int done = 0; done < length; ) {
+            if (!buffer.hasRemaining() && !readAtLeast(channel, buffer, 1)) {
+                return false;
+            }
+            int count = Math.min(buffer.remaining(), length - done);
+            buffer.get(bytes, done, count);
+            done += count;
+        }
+        return true;
+    }
+}
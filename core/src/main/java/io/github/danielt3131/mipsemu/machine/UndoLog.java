@@ -0,0 +1,108 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+/**
+ * The old values of the registers and memory words changed by the last instructions a {@link MipsMachine} stepped
+ * through one at a time, so they can be undone without going back to a {@link Checkpoint}
+ * <p>
+ * Every record is 3 ints in a ring: the kind and two values. An instruction starts with a record of its program
+ * counter followed by the words it stored and the registers it changed. Once the ring is full the oldest records are
+ * overwritten, and an instruction whose start was overwritten can no longer be undone from the log
+ */
+final class UndoLog {
+
+    static final int DEFAULT_CAPACITY = 1 << 14; //records, about 4000 instructions
+
+    private static final int INSTRUCTION = 0; //the program counter of the instruction
+    private static final int REGISTER = 1; //the register index, 32 for hi and 33 for lo, and the old value
+    private static final int MEMORY = 2; //the address and the old word
+
+    private final int[] ring;
+    private final int mask;
+    private long head; //records put
+    private long tail; //the oldest record still in the ring
+
+    /**
+     * Constructor for a log of the default capacity
+     */
+    UndoLog() {
+        ring = new int[DEFAULT_CAPACITY * 3];
+        mask = DEFAULT_CAPACITY - 1;
+    }
+
+    void instruction(int pc) {
+        put(INSTRUCTION, pc, 0);
+    }
+
+    void register(int index, int oldValue) {
+        put(REGISTER, index, oldValue);
+    }
+
+    void memory(int address, int oldWord) {
+        put(MEMORY, address, oldWord);
+    }
+
+    private void put(int kind, int a, int b) {
+        int i = (int) (head & mask) * 3;
+        ring[i] = kind;
+        ring[i + 1] = a;
+        ring[i + 2] = b;
+        head++;
+        if (head - tail > mask + 1) {
+            tail = head - mask - 1;
+        }
+    }
+
+    /**
+     * Undoes the last instruction in the log, or the part of it that ran if a micro step left it part way through
+     *
+     * @param machine The machine the instruction ran on
+     * @return false if the start of the instruction is no longer in the log, nothing is undone then
+     */
+    boolean undo(MipsMachine machine) {
+        long start = head - 1;
+        while (start >= tail && ring[(int) (start & mask) * 3] != INSTRUCTION) {
+            start--;
+        }
+        if (start < tail) {
+            return false;
+        }
+        for (long position = head - 1; position > start; position--) {
+            int i = (int) (position & mask) * 3;
+            int a = ring[i + 1];
+            int b = ring[i + 2];
+            if (ring[i] == MEMORY) {
+                machine.memory.storeWord(a, b);
+                machine.invalidateCode(a);
+            } else if (a == 32) {
+                machine.hi = b;
+            } else if (a == 33) {
+                machine.lo = b;
+            } else {
+                machine.register[a] = b;
+            }
+        }
+        machine.pc = ring[(int) (start & mask) * 3 + 1];
+        head = start;
+        return true;
+    }
+
+    /**
+     * Forgets every record, used when the machine changed without logging
+     */
+    void clear() {
+        tail = head;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import io.github.danielt3131.mipsemu.Reference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Encodings, labels, sections, incremental assembly and errors of the {@link Assembler}
+ */
+public class AssemblerTest {
+
+    private static int word(AssembledProgram program, int segment, int index) {
+        return ByteBuffer.wrap(program.getSegment(segment)).getInt(index * 4);
+    }
+
+    private static AssemblyException assertFails(String source) {
+        try {
+            new Assembler().assemble(source);
+        } catch (AssemblyException e) {
+            return e;
+        }
+        fail("Assembled " + source);
+        return null;
+    }
+
+    @Test
+    public void encodesInstructions() {
+        AssembledProgram program = new Assembler().assemble(String.join("\n",
+                "add  $t0, $t1, $t2",
+                "addi $8, $zero, -1",
+                "ori  $t0, $t0, 0xffff",
+                "sll  $t0, $t1, 4",
+                "lw   $t0, 8($sp)",
+                "sw   $t0, -4",
+                "jr   $ra",
+                "halt"));
+        assertEquals(1, program.getSegmentCount());
+        assertEquals(Assembler.TEXT_START, program.getSegmentAddress(0));
+        assertEquals(0x012A4020, word(program, 0, 0));
+        assertEquals(0x2008FFFF, word(program, 0, 1));
+        assertEquals(0x3508FFFF, word(program, 0, 2));
+        assertEquals(0x00094100, word(program, 0, 3));
+        assertEquals(0x8FA80008, word(program, 0, 4));
+        assertEquals(0xAFA8FFFC, word(program, 0, 5));
+        assertEquals(0x03E00008, word(program, 0, 6));
+        assertEquals(0, word(program, 0, 7));
+    }
+
+    @Test
+    public void registersMatchTheDisplayNames() {
+        for (int i = 0; i < 32; i++) {
+            AssembledProgram program = new Assembler().assemble("addu " + Reference.registerNames[i] + ", $0, $0");
+            assertEquals(Reference.registerNames[i], i, (word(program, 0, 0) >>> 11) & 31);
+        }
+        assertEquals(8, Reference.REGISTER_T0);
+        assertEquals(29, Reference.REGISTER_SP);
+        assertEquals(31, Reference.REGISTER_RA);
+    }
+
+    @Test
+    public void resolvesLabels() {
+        AssembledProgram program = new Assembler().assemble(String.join("\n",
+                "        .text",
+                "start:  li   $t0, 3",
+                "main:",
+                "loop:   addi $t0, $t0, -1     # count down",
+                "        bne  $t0, $zero, loop",
+                "        beq  $t0, $zero, done",
+                "        jal  start",
+                "done:   la   $t1, value",
+                "        halt",
+                "        .data",
+                "value:  .word 42, -1"));
+        assertEquals(Integer.valueOf(4), program.getSymbols().get("main"));
+        assertEquals(Integer.valueOf(4), program.getSymbols().get("loop"));
+        assertEquals(Integer.valueOf(Assembler.DATA_START), program.getSymbols().get("value"));
+        assertEquals(4, program.getEntry());
+
+        assertEquals(0x1500FFFF, word(program, 0, 2));     // Back one word from the branch
+        assertEquals(0x11000002, word(program, 0, 3));     // Forward two words
+        assertEquals(0x0C000000, word(program, 0, 4));
+        assertEquals(2, program.getSegmentCount());
+        assertEquals(Assembler.DATA_START, program.getSegmentAddress(1));
+        assertEquals(42, word(program, 1, 0));
+        assertEquals(-1, word(program, 1, 1));
+
+        MipsMachine machine = new MipsMachine(0x20000);
+        machine.loadProgram(program);
+        machine.run(Long.MAX_VALUE);
+        assertTrue(machine.isFinished());
+        assertEquals(0, machine.getRegister(8));
+        assertEquals(Assembler.DATA_START, machine.getRegister(9));
+    }
+
+    @Test
+    public void expandsPseudoInstructions() {
+        MipsMachine machine = new MipsMachine(0x1000);
+        machine.loadProgram(new Assembler().assemble(String.join("\n",
+                "        li   $t0, 0x12345678",
+                "        li   $t1, -5",
+                "        move $t2, $t1",
+                "        neg  $t3, $t1",
+                "        li   $t4, 0",
+                "        blt  $t1, $t0, less",
+                "        li   $t4, 1",
+                "less:   bge  $t1, $t0, end",
+                "        addi $t4, $t4, 10",
+                "end:    halt")));
+        machine.run(Long.MAX_VALUE);
+        assertEquals(0x12345678, machine.getRegister(8));
+        assertEquals(-5, machine.getRegister(9));
+        assertEquals(-5, machine.getRegister(10));
+        assertEquals(5, machine.getRegister(11));
+        assertEquals(10, machine.getRegister(12));
+    }
+
+    @Test
+    public void reassemblesOnlyChangedLines() {
+        Assembler assembler = new Assembler();
+        String source = "li $t0, 1\nadd $t1, $t0, $t0\nloop: bne $t1, $zero, loop\nhalt";
+        assertEquals(4, assembler.assemble(source).getEncodedLines());
+        assertEquals(0, assembler.assemble(source).getEncodedLines());
+
+        AssembledProgram edited = assembler.assemble(source.replace("add $t1", "sub $t1"));
+        assertEquals(1, edited.getEncodedLines());
+        assertEquals(0x01084822, word(edited, 0, 1));
+    }
+
+    @Test
+    public void reportsErrorsWithTheirLine() {
+        assertEquals(2, assertFails("halt\nfoo $t0, $t1").getLineNumber());
+        assertTrue(assertFails("beq $t0, $t1, nowhere").getMessage().contains("Undefined label nowhere"));
+        assertEquals(2, assertFails("a: halt\na: halt").getLineNumber());
+        assertFails("addi $t0, $t0, 40000");
+        assertFails("add $t0, $t1");
+        assertFails("add $t0, $t1, $t99");
+        assertFails("lw $t0, 4($t1)");
+        assertFails(".data\n.space 2\n.word 1");
+        assertFails(".text 0x100\nhalt\n.text 0x100\nhalt");
+    }
+
+    @Test
+    public void keepsTheLastAssemblyAfterAnError() {
+        Assembler assembler = new Assembler();
+        String source = "li $t0, 1\nhalt";
+        assembler.assemble(source);
+        try {
+            assembler.assemble("li $t0, 1\nbad");
+            fail();
+        } catch (AssemblyException e) {
+            assertEquals(2, e.getLineNumber());
+        }
+        assertEquals(0, assembler.assemble(source).getEncodedLines());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hit, miss, eviction and write-back counts of {@link CacheHierarchy}, worked out by hand
+ */
+public class CacheHierarchyTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static CacheConfig level(String name, int size, int lineSize, int associativity,
+                                     CacheConfig.Replacement replacement, CacheConfig.WritePolicy writePolicy) {
+        return new CacheConfig(name, size, lineSize, associativity, replacement, writePolicy);
+    }
+
+    private static CacheConfig directMapped(String name, int size, CacheConfig.WritePolicy writePolicy) {
+        return level(name, size, 16, 1, CacheConfig.Replacement.LRU, writePolicy);
+    }
+
+    @Test
+    public void directMappedConflicts() {
+        // 4 sets of one 16 byte line, 0 and 64 share set 0
+        CacheHierarchy cache = new CacheHierarchy(directMapped("L1", 64, CacheConfig.WritePolicy.WRITE_BACK));
+        cache.access(0, false);     // Miss
+        cache.access(4, false);     // Hit, same line
+        cache.access(64, false);    // Miss, evicts 0
+        cache.access(0, false);     // Miss, evicts 64
+        cache.access(16, false);    // Miss, set 1 was empty
+        assertEquals(5, cache.getAccesses());
+        assertEquals(1, cache.getHits(0));
+        assertEquals(4, cache.getMisses(0));
+        assertEquals(2, cache.getEvictions(0));
+        assertEquals(0, cache.getWriteBacks(0));
+        assertEquals(0.2, cache.hitRate(), DELTA);
+    }
+
+    @Test
+    public void writeBackGoesToTheNextLevel() {
+        CacheHierarchy cache = new CacheHierarchy(
+                directMapped("L1", 64, CacheConfig.WritePolicy.WRITE_BACK),
+                directMapped("L2", 256, CacheConfig.WritePolicy.WRITE_BACK));
+        cache.access(0, true);      // Misses both, L1 line is dirty
+        cache.access(64, false);    // Misses both, evicting 0 from L1 writes it back to L2 where it hits
+        cache.access(0, false);     // L1 miss served by L2, evicts the clean 64
+        assertEquals(0, cache.getHits(0));
+        assertEquals(3, cache.getMisses(0));
+        assertEquals(2, cache.getEvictions(0));
+        assertEquals(1, cache.getWriteBacks(0));
+        assertEquals(2, cache.getHits(1));
+        assertEquals(2, cache.getMisses(1));
+        assertEquals(0, cache.getEvictions(1));
+        assertEquals(1.0 / 3, cache.hitRate(), DELTA);
+        assertEquals(0.5, cache.hitRate(1), DELTA);
+    }
+
+    @Test
+    public void writeThroughDoesNotAllocate() {
+        CacheHierarchy cache = new CacheHierarchy(directMapped("L1", 64, CacheConfig.WritePolicy.WRITE_THROUGH));
+        cache.access(0, true);      // Miss, goes to memory without allocating
+        cache.access(0, false);     // Miss, allocates
+        cache.access(0, true);      // Hit, still written through
+        cache.access(0, false);     // Hit
+        assertEquals(2, cache.getHits(0));
+        assertEquals(2, cache.getMisses(0));
+        assertEquals(0, cache.getWriteBacks(0));
+        assertEquals(0.5, cache.hitRate(), DELTA);
+    }
+
+    @Test
+    public void lruAndPlruPickDifferentVictims() {
+        // One set of 4 ways: after A B C D A, LRU evicts B for E while the PLRU tree points at C
+        int[] accesses = {0, 16, 32, 48, 0, 64, 16};
+        CacheHierarchy lru = new CacheHierarchy(
+                level("L1", 64, 16, 4, CacheConfig.Replacement.LRU, CacheConfig.WritePolicy.WRITE_BACK));
+        CacheHierarchy plru = new CacheHierarchy(
+                level("L1", 64, 16, 4, CacheConfig.Replacement.PLRU, CacheConfig.WritePolicy.WRITE_BACK));
+        for (int address : accesses) {
+            lru.access(address, false);
+            plru.access(address, false);
+        }
+        assertEquals(1, lru.getHits(0));
+        assertEquals(2, plru.getHits(0));
+        assertEquals(2, lru.getEvictions(0));
+        assertEquals(1, plru.getEvictions(0));
+    }
+
+    @Test
+    public void resetEmptiesEveryLevel() {
+        CacheHierarchy cache = CacheHierarchy.createDefault();
+        cache.access(0, true);
+        cache.access(0, false);
+        cache.reset();
+        assertEquals(0, cache.getAccesses());
+        assertEquals(0, cache.hitRate(), DELTA);
+        cache.access(0, false);
+        assertEquals(0, cache.getHits(0));
+        assertEquals(1, cache.getMisses(0));
+    }
+
+    @Test
+    public void rejectsBadConfigs() {
+        int[][] bad = {{64, 2, 1}, {48, 16, 1}, {64, 16, 3}, {64, 16, 8}, {16, 32, 1}};
+        for (int[] config : bad) {
+            try {
+                level("L1", config[0], config[1], config[2], CacheConfig.Replacement.LRU,
+                        CacheConfig.WritePolicy.WRITE_BACK);
+                fail("Accepted " + config[0] + " " + config[1] + " " + config[2]);
+            } catch (IllegalArgumentException expected) {
+                // Rejected
+            }
+        }
+    }
+
+    @Test
+    public void machinesOnlySimulateCachesWhenAsked() {
+        String program = String.join("\n",
+                "        li   $sp, 0x100",
+                "        li   $t0, 0",
+                "        li   $t2, 2000",
+                "loop:   sw   $t0, 0($sp)",
+                "        lw   $t1, 0($sp)",
+                "        addi $t0, $t0, 1",
+                "        blt  $t0, $t2, loop",
+                "        halt");
+        MipsMachine machine = new MipsMachine(0x1000);
+        assertNull(machine.getCache());
+        machine.loadProgram(new Assembler().assemble(program));
+        machine.run(Long.MAX_VALUE);
+        assertEquals(0, machine.hitRate(), DELTA);
+
+        for (int threshold : new int[]{0, 1}) {
+            machine = new MipsMachine(0x1000);
+            machine.fastEngine.setCompileThreshold(threshold);
+            machine.setCache(CacheHierarchy.createDefault());
+            machine.loadProgram(new Assembler().assemble(program));
+            machine.run(Long.MAX_VALUE);
+            CacheHierarchy cache = machine.getCache();
+            assertEquals(4000, cache.getAccesses());
+            assertEquals(3999, cache.getHits(0));
+            assertEquals(1, cache.getMisses(0));
+        }
+    }
+}
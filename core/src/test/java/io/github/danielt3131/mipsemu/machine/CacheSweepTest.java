@@ -0,0 +1,144 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static io.github.danielt3131.mipsemu.machine.TestPrograms.*;
+import static org.junit.Assert.*;
+
+/**
+ * Results of {@link CacheSweep} worked out by hand and checked against {@link CacheHierarchy}, and the
+ * {@link AddressTrace} it replays
+ */
+public class CacheSweepTest {
+
+    private static AddressTrace trace(int... addresses) {
+        AddressTrace trace = new AddressTrace();
+        for (int address : addresses) {
+            trace.record(address, false);
+        }
+        return trace;
+    }
+
+    @Test
+    public void countsEveryAssociativityInOnePass() {
+        // One set of 16 byte lines: A B A C A B finds A at depth 1 twice and B at depth 2
+        List<CacheSweep.Result> results = new CacheSweep(new int[]{16}, new int[]{1}, 4)
+                .run(trace(0, 16, 0, 32, 0, 16));
+        assertEquals(3, results.size());
+        long[][] expected = {{1, 0, 6}, {2, 2, 4}, {4, 3, 3}};
+        for (int i = 0; i < expected.length; i++) {
+            CacheSweep.Result result = results.get(i);
+            assertEquals(expected[i][0], result.associativity);
+            assertEquals(expected[i][1], result.hits);
+            assertEquals(expected[i][2], result.misses);
+            assertEquals(16 * result.associativity, result.size());
+        }
+    }
+
+    @Test
+    public void ordersResultsByGeometry() {
+        List<CacheSweep.Result> results = new CacheSweep(new int[]{16, 64}, new int[]{4, 8}, 2).run(trace(0, 4, 8));
+        assertEquals(8, results.size());
+        int i = 0;
+        for (int lineSize : new int[]{16, 64}) {
+            for (int sets : new int[]{4, 8}) {
+                for (int associativity = 1; associativity <= 2; associativity <<= 1) {
+                    CacheSweep.Result result = results.get(i++);
+                    assertEquals(lineSize, result.lineSize);
+                    assertEquals(sets, result.sets);
+                    assertEquals(associativity, result.associativity);
+                    assertEquals(2, result.hits);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesLruHierarchies() {
+        Random random = new Random(7);
+        AddressTrace trace = new AddressTrace();
+        int[] addresses = new int[20000];
+        for (int i = 0; i < addresses.length; i++) {
+            // Mostly nearby words with some far jumps, so every geometry sees hits and conflicts
+            addresses[i] = random.nextInt(8) == 0 ? random.nextInt(1 << 16) << 2 : (i * 4) & 0x3FFF;
+            trace.record(addresses[i], random.nextBoolean());
+        }
+        for (CacheSweep.Result result : new CacheSweep(new int[]{4, 32}, new int[]{1, 16, 64}, 8).run(trace)) {
+            CacheHierarchy cache = new CacheHierarchy(new CacheConfig("L1", result.size(), result.lineSize,
+                    result.associativity, CacheConfig.Replacement.LRU, CacheConfig.WritePolicy.WRITE_BACK));
+            for (int address : addresses) {
+                cache.access(address, false);
+            }
+            assertEquals(result.size() + " B " + result.associativity + "-way", cache.getHits(0), result.hits);
+            assertEquals(cache.getMisses(0), result.misses);
+        }
+    }
+
+    @Test
+    public void tracesRoundTrip() throws IOException {
+        AddressTrace trace = new AddressTrace();
+        int[] addresses = {0, 4, -4, 0x7FFFFFFC, 0x80000000, 16};
+        for (int i = 0; i < addresses.length; i++) {
+            trace.record(addresses[i], i % 2 == 0);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.writeTo(out);
+        byte[] bytes = out.toByteArray();
+        assertTrue(AddressTrace.isTrace(new ByteArrayInputStream(bytes)));
+
+        AddressTrace.Reader reader = AddressTrace.readFrom(new ByteArrayInputStream(bytes)).reader();
+        for (int i = 0; i < addresses.length; i++) {
+            assertTrue(reader.next());
+            assertEquals(addresses[i], reader.address());
+            assertEquals(i % 2 == 0, reader.isWrite());
+        }
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void machinesRecordEveryLoadAndStore() {
+        MipsMachine machine = load(0x1000,
+                iType(ADDIU, ZERO, SP, 0x100),  // li $sp, 0x100
+                iType(SW, SP, SP, 4),           // sw $sp, 4($sp)
+                iType(LW, SP, T0, 4),           // lw $t0, 4($sp)
+                iType(LW, SP, T1, 8),           // lw $t1, 8($sp)
+                HALT);
+        AddressTrace trace = new AddressTrace();
+        machine.setTrace(trace);
+        machine.run(Long.MAX_VALUE);
+        assertEquals(3, trace.size());
+        AddressTrace.Reader reader = trace.reader();
+        assertTrue(reader.next());
+        assertEquals(0x104, reader.address());
+        assertTrue(reader.isWrite());
+        assertTrue(reader.next());
+        assertFalse(reader.isWrite());
+        assertTrue(reader.next());
+        assertEquals(0x108, reader.address());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadGeometries() {
+        new CacheSweep(new int[]{16}, new int[]{3}, 4);
+    }
+}
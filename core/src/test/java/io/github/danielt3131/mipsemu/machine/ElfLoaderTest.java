@@ -0,0 +1,180 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loading ELF executables built by hand with {@link ElfLoader}
+ */
+public class ElfLoaderTest {
+
+    private static final int ENTRY = 0x400;
+    private static final int DATA = 0x1000;
+    private static final int PROGRAM_HEADERS = 52;
+    private static final int CODE = 160, DATA_BYTES = 176, REGINFO = 180, SECTION_HEADERS = 208;
+    private static final int SYMBOLS = SECTION_HEADERS + 3 * 40, STRINGS = SYMBOLS + 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Builds an executable with a code segment at ENTRY, a data segment at DATA whose last 12 bytes are .bss and,
+     * if asked for, a .reginfo segment with gp 0x8000 and a symbol table with _gp at 0x9000
+     */
+    private static byte[] elf(boolean reginfo, boolean symbols) {
+        ByteBuffer elf = ByteBuffer.allocate(STRINGS + 8);
+        elf.putInt(0, 0x7F454C46).put(4, (byte) 1).put(5, (byte) 2).put(6, (byte) 1);
+        elf.putShort(16, (short) 2).putShort(18, (short) 8).putInt(20, 1);
+        elf.putInt(24, ENTRY).putInt(28, PROGRAM_HEADERS).putInt(32, symbols ? SECTION_HEADERS : 0);
+        elf.putShort(40, (short) 52).putShort(42, (short) 32).putShort(44, (short) (reginfo ? 3 : 2));
+        elf.putShort(46, (short) 40).putShort(48, (short) (symbols ? 3 : 0));
+
+        programHeader(elf, 0, 1, CODE, ENTRY, 16, 16);
+        elf.putInt(PROGRAM_HEADERS + 24, 5);    // PF_R | PF_X
+        programHeader(elf, 1, 1, DATA_BYTES, DATA, 4, 16);
+        if (reginfo) {
+            programHeader(elf, 2, 0x70000000, REGINFO, 0, 24, 24);
+            elf.putInt(REGINFO + 20, 0x8000);
+        }
+        elf.putInt(CODE, 0x20080007);       // addi $t0, $zero, 7
+        elf.putInt(CODE + 4, 0x201D1000);   // addi $sp, $zero, DATA
+        elf.putInt(CODE + 8, 0x8FA90000);   // lw $t1, 0($sp)
+        elf.putInt(CODE + 12, 0);
+        elf.putInt(DATA_BYTES, 42);
+
+        if (symbols) {
+            int symtab = SECTION_HEADERS + 40;
+            elf.putInt(symtab + 4, 2).putInt(symtab + 16, SYMBOLS).putInt(symtab + 20, 32).putInt(symtab + 24, 2);
+            int strtab = SECTION_HEADERS + 80;
+            elf.putInt(strtab + 4, 3).putInt(strtab + 16, STRINGS).putInt(strtab + 20, 5);
+            elf.putInt(SYMBOLS + 16, 1).putInt(SYMBOLS + 20, 0x9000);
+            elf.put(STRINGS + 1, (byte) '_').put(STRINGS + 2, (byte) 'g').put(STRINGS + 3, (byte) 'p');
+        }
+        return elf.array();
+    }
+
+    private static void programHeader(ByteBuffer elf, int index, int type, int offset, int address, int fileSize,
+                                      int memorySize) {
+        int header = PROGRAM_HEADERS + index * 32;
+        elf.putInt(header, type).putInt(header + 4, offset).putInt(header + 8, address).putInt(header + 12, address)
+                .putInt(header + 16, fileSize).putInt(header + 20, memorySize);
+    }
+
+    private static MipsMachine load(byte[] elf) throws IOException {
+        MipsMachine machine = new MipsMachine(0x2000);
+        machine.getMemory().storeWord(DATA + 8, -1);
+        ElfLoader.load(ByteBuffer.wrap(elf), machine);
+        return machine;
+    }
+
+    private static void assertRejected(byte[] elf) {
+        MipsMachine machine = new MipsMachine(0x2000);
+        try {
+            ElfLoader.load(ByteBuffer.wrap(elf), machine);
+            fail("Loaded a bad ELF file");
+        } catch (IOException e) {
+            assertEquals(0, machine.getMemory().loadWord(ENTRY));
+            assertEquals(0, machine.getMemory().loadWord(DATA));
+        }
+    }
+
+    @Test
+    public void loadsSegmentsAndZeroesTheBss() throws IOException {
+        MipsMachine machine = load(elf(false, false));
+        assertEquals(ENTRY, machine.getProgramCounter());
+        assertEquals(0x20080007, machine.getMemory().loadWord(ENTRY));
+        assertEquals(42, machine.getMemory().loadWord(DATA));
+        assertEquals(0, machine.getMemory().loadWord(DATA + 8));
+        assertEquals(0, machine.getRegister(28));
+    }
+
+    @Test
+    public void setsTheGlobalPointer() throws IOException {
+        assertEquals(0x8000, load(elf(true, false)).getRegister(28));
+        assertEquals(0x9000, load(elf(false, true)).getRegister(28));
+        assertEquals(0x9000, load(elf(true, true)).getRegister(28));    // The symbol wins
+    }
+
+    @Test
+    public void runsFromAFile() throws IOException {
+        File file = folder.newFile("program.elf");
+        Files.write(file.toPath(), elf(true, true));
+        assertTrue(ElfLoader.isElf(file));
+
+        MipsMachine machine = new MipsMachine(0x2000);
+        machine.loadElf(file);
+        machine.run(Long.MAX_VALUE);
+        assertEquals(7, machine.getRegister(8));
+        assertEquals(42, machine.getRegister(9));
+    }
+
+    @Test
+    public void rejectsLoadsAndStoresFromOtherBases() throws IOException {
+        byte[] elf = elf(true, true);
+        ByteBuffer.wrap(elf).putInt(CODE + 8, 0x8C890000);     // lw $t1, 0($a0)
+        assertRejected(elf);
+        ByteBuffer.wrap(elf).putInt(CODE + 8, 0xAD090004);     // sw $t1, 4($t0)
+        assertRejected(elf);
+
+        // The same words as data are fine
+        elf = elf(true, true);
+        ByteBuffer.wrap(elf).putInt(DATA_BYTES, 0x8C890000);
+        assertEquals(0x8C890000, load(elf).getMemory().loadWord(DATA));
+    }
+
+    @Test
+    public void rejectsBadFiles() {
+        byte[] good = elf(true, true);
+        assertRejected(new byte[20]);
+
+        byte[] wide = good.clone();
+        wide[4] = 2;
+        assertRejected(wide);
+
+        byte[] little = good.clone();
+        little[5] = 1;
+        assertRejected(little);
+
+        byte[] machine = good.clone();
+        machine[19] = 3;
+        assertRejected(machine);
+
+        byte[] headers = good.clone();
+        ByteBuffer.wrap(headers).putShort(44, (short) 200);
+        assertRejected(headers);
+
+        byte[] outside = good.clone();
+        ByteBuffer.wrap(outside).putInt(PROGRAM_HEADERS + 32 + 4, good.length - 2);
+        assertRejected(outside);
+
+        byte[] bss = good.clone();
+        ByteBuffer.wrap(bss).putInt(PROGRAM_HEADERS + 32 + 20, 2);
+        assertRejected(bss);
+
+        byte[] strings = good.clone();
+        ByteBuffer.wrap(strings).putInt(SECTION_HEADERS + 80 + 16, good.length);
+        assertRejected(strings);
+    }
+}
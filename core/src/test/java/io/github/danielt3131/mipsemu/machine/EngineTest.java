@@ -0,0 +1,182 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Test;
+
+import static io.github.danielt3131.mipsemu.machine.TestPrograms.*;
+import static org.junit.Assert.*;
+
+/**
+ * Micro steps, whole steps, the {@link FastEngine} with interpreted blocks and with compiled blocks must all leave a
+ * program in the same state
+ */
+public class EngineTest {
+
+    private static final int MEMORY_SIZE = 0x1000;
+    private static final int MICRO_STEPS = 0, STEPS = 1, BLOCKS = 2, COMPILED = 3;
+
+    // Every instruction the machine has, looped so blocks get compiled, with a call and the branches after the loop
+    private static final int[] ALL_INSTRUCTIONS = {
+            iType(ADDIU, ZERO, S0, 0),      // 0x00 main: li $s0, 0
+            iType(ADDIU, ZERO, S1, 50),     // 0x04       li $s1, 50
+            iType(ADDIU, ZERO, SP, 0x800),  // 0x08       li $sp, 0x800
+            iType(ADDI, S0, T0, 7),         // 0x0c loop: addi $t0, $s0, 7
+            iType(ADDIU, T0, T1, -3),       //            addiu $t1, $t0, -3
+            rType(ADD, T0, T1, T2, 0),      //            add $t2, $t0, $t1
+            rType(ADDU, T2, T0, T3, 0),     //            addu $t3, $t2, $t0
+            rType(SUB, T1, T2, T4, 0),      //            sub $t4, $t1, $t2
+            rType(SUBU, T4, T0, T5, 0),     //            subu $t5, $t4, $t0
+            rType(AND, T2, T3, T6, 0),      //            and $t6, $t2, $t3
+            rType(OR, T4, T5, T7, 0),       //            or $t7, $t4, $t5
+            rType(XOR, T6, T7, S2, 0),      //            xor $s2, $t6, $t7
+            rType(SLT, T4, T0, S3, 0),      //            slt $s3, $t4, $t0
+            rType(SLTU, T4, T0, S4, 0),     //            sltu $s4, $t4, $t0
+            iType(SLTI, T4, S5, 3),         //            slti $s5, $t4, 3
+            iType(SLTIU, T4, S6, 3),        //            sltiu $s6, $t4, 3
+            iType(ANDI, T3, S7, 0xff),      //            andi $s7, $t3, 0xff
+            iType(ORI, S7, T8, 0x1200),     //            ori $t8, $s7, 0x1200
+            iType(XORI, T8, T9, 0xffff),    //            xori $t9, $t8, 0xffff
+            iType(LUI, ZERO, K0, 0x8001),   //            lui $k0, 0x8001
+            rType(SLL, ZERO, T2, K1, 5),    //            sll $k1, $t2, 5
+            rType(SRL, ZERO, K0, GP, 3),    //            srl $gp, $k0, 3
+            rType(SRA, ZERO, K0, FP, 3),    //            sra $fp, $k0, 3
+            rType(NOT, T3, ZERO, V0, 0),    //            not $v0, $t3
+            rType(MULT, T4, T3, ZERO, 0),   //            mult $t4, $t3
+            rType(MFHI, ZERO, ZERO, V1, 0), //            mfhi $v1
+            rType(MFLO, ZERO, ZERO, A0, 0), //            mflo $a0
+            iType(SW, SP, A0, 0),           //            sw $a0, 0($sp)
+            iType(LW, SP, A1, 0),           //            lw $a1, 0($sp)
+            iType(ADDI, SP, SP, 4),         //            addi $sp, $sp, 4
+            jType(JAL, 0x9c),               //            jal add
+            iType(ADDI, S0, S0, 1),         //            addi $s0, $s0, 1
+            iType(BNE, S0, S1, -29),        // 0x80       bne $s0, $s1, loop
+            iType(BLEZ, S0, ZERO, 3),       //            blez $s0, skip
+            iType(BGTZ, S0, ZERO, 2),       //            bgtz $s0, skip
+            iType(ADDIU, ZERO, A2, 99),     //            li $a2, 99
+            jType(J, 0x98),                 // 0x90 skip: j end
+            iType(ADDIU, ZERO, A2, 98),     //            li $a2, 98
+            HALT,                           // 0x98 end:  halt
+            rType(ADD, A3, S0, A3, 0),      // 0x9c add:  add $a3, $a3, $s0
+            rType(JR, RA, ZERO, ZERO, 0)    //            jr $ra
+    };
+
+    // Patches the second instruction of its own loop after 100 passes, the store lands in the running block
+    private static final int[] SELF_MODIFYING = {
+            iType(ADDIU, ZERO, SP, 0),      // 0x00 main:   li $sp, 0
+            iType(ADDIU, ZERO, T0, 0),      //              li $t0, 0
+            iType(ADDIU, ZERO, T2, 200),    //              li $t2, 200
+            iType(ADDIU, ZERO, T5, 100),    //              li $t5, 100
+            iType(LUI, ZERO, T4, 0x2129),   //              li $t4, 0x21290064 (addi $t1, $t1, 100)
+            iType(ORI, T4, T4, 0x0064),
+            iType(ADDI, T0, T0, 1),         // 0x18 loop:   addi $t0, $t0, 1
+            iType(ADDI, T1, T1, 1),         // 0x1c target: addi $t1, $t1, 1
+            iType(BNE, T0, T5, 2),          //              bne $t0, $t5, next
+            iType(SW, SP, T4, 0x1c),        //              sw $t4, target($sp)
+            rType(SLT, T0, T2, AT, 0),      // 0x28 next:   blt $t0, $t2, loop
+            iType(BNE, AT, ZERO, -5),
+            HALT                            //              halt
+    };
+
+    // Walks $sp forward one byte per pass until a word access is unaligned
+    private static final int[] UNALIGNED = {
+            iType(ADDIU, ZERO, SP, 0x400),  // 0x00 main: li $sp, 0x400
+            iType(ADDIU, ZERO, T0, 0),      //            li $t0, 0
+            iType(SW, SP, T0, 0),           // 0x08 loop: sw $t0, 0($sp)
+            iType(ADDI, T0, T0, 1),         //            addi $t0, $t0, 1
+            iType(ANDI, T0, T1, 7),         //            andi $t1, $t0, 7
+            iType(BNE, T1, ZERO, -3),       //            bnez $t1, loop
+            iType(ADDI, SP, SP, 2),         //            addi $sp, $sp, 2
+            iType(BEQ, ZERO, ZERO, -5)      //            b loop
+    };
+
+    private static MipsMachine run(int[] program, int mode) {
+        MipsMachine machine = load(MEMORY_SIZE, program);
+        if (mode == BLOCKS || mode == COMPILED) {
+            FastEngine engine = new FastEngine(machine);
+            engine.setCompileThreshold(mode == COMPILED ? 1 : 0);
+            try {
+                engine.run();
+            } catch (AlignmentException e) {
+                assertEquals(e.getAddress(), machine.register[29]);
+            }
+            return machine;
+        }
+        // An address error leaves the machine where it was, so stop once the pc stays put for longer than an instruction
+        int pc = machine.getProgramCounter();
+        for (int stalled = 0; stalled < 100 && machine.fetch().code != HALT; stalled++) {
+            if (mode == MICRO_STEPS) {
+                machine.runNextMicroStep();
+            } else {
+                machine.runNextStep();
+            }
+            if (machine.getProgramCounter() != pc) {
+                pc = machine.getProgramCounter();
+                stalled = 0;
+            }
+        }
+        return machine;
+    }
+
+    private static void assertSameState(MipsMachine expected, MipsMachine actual) {
+        assertEquals(expected.getProgramCounter(), actual.getProgramCounter());
+        assertArrayEquals(expected.register, actual.register);
+        assertEquals(expected.hi, actual.hi);
+        assertEquals(expected.lo, actual.lo);
+        assertArrayEquals(expected.memory.read(0, MEMORY_SIZE), actual.memory.read(0, MEMORY_SIZE));
+    }
+
+    private static MipsMachine assertEnginesAgree(int[] program) {
+        MipsMachine expected = run(program, MICRO_STEPS);
+        for (int mode = STEPS; mode <= COMPILED; mode++) {
+            assertSameState(expected, run(program, mode));
+        }
+        return expected;
+    }
+
+    @Test
+    public void allInstructions() {
+        MipsMachine machine = assertEnginesAgree(ALL_INSTRUCTIONS);
+        assertEquals(0x98, machine.getProgramCounter());
+        assertEquals(49 * 50 / 2, machine.register[7]);
+        assertEquals(0, machine.register[6]);
+        assertEquals(0x800 + 50 * 4, machine.register[29]);
+        assertEquals(machine.register[4], machine.register[5]);
+        assertEquals(0x80010000 >> 3, machine.register[30]);
+        assertEquals(0x80010000 >>> 3, machine.register[28]);
+    }
+
+    @Test
+    public void selfModifyingCode() {
+        MipsMachine machine = assertEnginesAgree(SELF_MODIFYING);
+        assertEquals(0x30, machine.getProgramCounter());
+        assertEquals(100 + 100 * 100, machine.register[9]);
+    }
+
+    @Test
+    public void addressErrorsStopAtTheInstruction() {
+        MipsMachine machine = assertEnginesAgree(UNALIGNED);
+        assertEquals(8, machine.getProgramCounter());
+        assertEquals(0x402, machine.register[29]);
+        assertEquals(8, machine.register[8]);
+    }
+
+    @Test
+    public void hotBlocksAreCompiled() {
+        MipsMachine machine = run(ALL_INSTRUCTIONS, COMPILED);
+        assertNotNull(machine.blockCache.lookup(0x0c).compiled);
+        assertNull(run(ALL_INSTRUCTIONS, BLOCKS).blockCache.lookup(0x0c).compiled);
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checkpoints, the undo log and stepping backwards
+ */
+public class HistoryTest {
+
+    private static final String LOOP = String.join("\n",
+            "main:   li   $sp, 0x2000",
+            "        li   $t0, 0",
+            "        li   $t2, 20000",
+            "loop:   sw   $t0, 0($sp)",
+            "        addi $sp, $sp, 4",
+            "        andi $t6, $sp, 0xfff",
+            "        bnez $t6, skip",
+            "        li   $sp, 0x2000",
+            "skip:   add  $t5, $t5, $t0",
+            "        addi $t0, $t0, 1",
+            "        blt  $t0, $t2, loop",
+            "        halt");
+
+    private static MipsMachine machine(String source, long checkpointInterval) {
+        MipsMachine machine = new MipsMachine(0x4000);
+        machine.enableHistory(checkpointInterval);
+        machine.loadProgram(new Assembler().assemble(source));
+        return machine;
+    }
+
+    private static void assertSameState(MipsMachine expected, MipsMachine actual) {
+        assertEquals(expected.getProgramCounter(), actual.getProgramCounter());
+        assertEquals(expected.getInstructionCount(), actual.getInstructionCount());
+        for (int i = 0; i < 32; i++) {
+            assertEquals("register " + i, expected.getRegister(i), actual.getRegister(i));
+        }
+        for (int address = 0; address < expected.getMemorySize(); address += 4) {
+            assertEquals("word " + address, expected.getMemory().loadWord(address), actual.getMemory().loadWord(address));
+        }
+    }
+
+    @Test
+    public void stepBackPartWayThroughAnInstruction() {
+        MipsMachine machine = machine("li $t0, 5\nli $t1, 7\nadd $t0, $t0, $t1\nhalt", 100);
+        machine.runNextStep();
+        machine.runNextStep();
+        for (int i = 0; i < 5; i++) {
+            machine.runNextMicroStep();
+        }
+        assertEquals(12, machine.getRegister(8));
+
+        assertEquals(1, machine.stepBack(1));
+        assertEquals(8, machine.getProgramCounter());
+        assertEquals(2, machine.getInstructionCount());
+        assertEquals(5, machine.getRegister(8));
+        assertEquals(7, machine.getRegister(9));
+
+        machine.runNextStep();
+        assertEquals(12, machine.getProgramCounter());
+        assertEquals(12, machine.getRegister(8));
+    }
+
+    @Test
+    public void stepBackPartWayThroughAStore() {
+        MipsMachine machine = machine("li $sp, 0x100\nli $t0, 9\nsw $t0, 0($sp)\nhalt", 100);
+        machine.runNextStep();
+        machine.runNextStep();
+        while (machine.getProgramCounter() == 8) {
+            machine.runNextMicroStep();
+        }
+        assertEquals(9, machine.getMemory().loadWord(0x100));
+
+        assertEquals(2, machine.stepBack(2));
+        assertEquals(0, machine.getMemory().loadWord(0x100));
+        assertEquals(0x100, machine.getRegister(29));
+        assertEquals(0, machine.getRegister(8));
+    }
+
+    @Test
+    public void stepBackUndoesByteStores() {
+        MipsMachine machine = machine("li $sp, 0x100\nli $t0, 0x3344\nsw $t0, 0($sp)\nli $t1, 1\nhalt", 100);
+        machine.runNextStep();
+        machine.runNextStep();
+        machine.runNextStep();
+        machine.runNextMicroStep();     // Byte stores from here are part of the fourth instruction
+        machine.sendToMemory(0x101, (byte) 0x55);
+        machine.sendToMemory(0x107, (byte) 0x66);
+        assertEquals(0x553344, machine.getMemory().loadWord(0x100));
+
+        assertEquals(1, machine.stepBack(1));
+        assertEquals(0x3344, machine.getMemory().loadWord(0x100));
+        assertEquals(0, machine.getMemory().loadWord(0x104));
+        assertEquals(12, machine.getProgramCounter());
+    }
+
+    @Test
+    public void undoLogMatchesRunningForwards() {
+        MipsMachine machine = machine(LOOP, 1000);
+        for (int i = 0; i < 300; i++) {
+            machine.runNextStep();
+        }
+        assertEquals(120, machine.stepBack(120));
+
+        MipsMachine expected = machine(LOOP, 1000);
+        expected.run(180);
+        assertSameState(expected, machine);
+    }
+
+    @Test
+    public void checkpointsOnlyKeepThePagesWrittenSinceTheLast() {
+        MipsMachine machine = machine(LOOP, 1000);
+        machine.setCheckpointInterval(0);
+        machine.run(100);
+        Checkpoint first = machine.checkpoint();
+        machine.run(5000);
+        Checkpoint second = machine.checkpoint();
+        assertSame(first, second.getPrevious());
+        // The loop only stores to the page at 0x2000
+        assertEquals(1, second.getPageCount());
+        assertEquals(first.getTotalPageCount() + 1, second.getTotalPageCount());
+
+        machine.getMemory().storeWord(0x3000, 7);
+        machine.restore(first);
+        assertEquals(100, machine.getInstructionCount());
+        assertEquals(0, machine.getMemory().loadWord(0x3000));
+
+        // Stores after restoring copy the shared pages instead of changing the checkpoints
+        MipsMachine expected = machine(LOOP, 1000);
+        expected.run(5100);
+        machine.run(5000);
+        assertSameState(expected, machine);
+        machine.restore(second);
+        assertSameState(expected, machine);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noCheckpointPartWayThroughAnInstruction() {
+        MipsMachine machine = machine(LOOP, 1000);
+        machine.runNextMicroStep();
+        machine.checkpoint();
+    }
+
+    @Test
+    public void checkpointsAreTakenAtTheInterval() {
+        MipsMachine machine = machine(LOOP, 1000);
+        machine.setCheckpointLimit(Integer.MAX_VALUE);
+        long executed = machine.run(Long.MAX_VALUE);
+        assertTrue(machine.isFinished());
+
+        int checkpoints = 0;
+        for (Checkpoint checkpoint = machine.getCheckpoint(); checkpoint != null; checkpoint = checkpoint.getPrevious()) {
+            assertEquals(0, checkpoint.getInstructionCount() % 1000);
+            checkpoints++;
+        }
+        assertEquals(executed / 1000 + 1, checkpoints);
+    }
+
+    @Test
+    public void stepBackReplaysLessThanTheInterval() {
+        MipsMachine machine = machine(LOOP, 1000);
+        machine.run(54321);
+        assertEquals(54321, machine.getInstructionCount());
+
+        assertEquals(4321, machine.stepBack(4321));
+        assertEquals(50000, machine.getInstructionCount());
+        assertEquals(1, machine.stepBack(1));
+        Checkpoint from = machine.getCheckpoint();
+        while (from.getInstructionCount() > machine.getInstructionCount()) {
+            from = from.getPrevious();
+        }
+        assertTrue(machine.getInstructionCount() - from.getInstructionCount() < 1000);
+
+        MipsMachine expected = machine(LOOP, 1000);
+        expected.run(49999);
+        assertSameState(expected, machine);
+    }
+
+    @Test
+    public void onlyTheLatestCheckpointsAreKept() {
+        MipsMachine machine = machine(LOOP, 1000);
+        machine.setCheckpointLimit(5);
+        machine.run(20500);
+
+        int checkpoints = 0;
+        Checkpoint oldest = machine.getCheckpoint();
+        for (Checkpoint checkpoint = oldest; checkpoint != null; checkpoint = checkpoint.getPrevious()) {
+            oldest = checkpoint;
+            checkpoints++;
+        }
+        assertEquals(5, checkpoints);
+        assertEquals(16000, oldest.getInstructionCount());
+        // The oldest one kept holds the program and stack pages of the dropped ones
+        assertEquals(2, oldest.getPageCount());
+
+        // Going back further stops at the oldest one kept
+        assertEquals(4500, machine.stepBack(5000));
+        MipsMachine expected = machine(LOOP, 1000);
+        expected.run(16000);
+        assertSameState(expected, machine);
+        assertEquals(0, machine.stepBack(1));
+        assertEquals(16000, machine.getInstructionCount());
+
+        machine.run(Long.MAX_VALUE);
+        expected.run(Long.MAX_VALUE);
+        assertSameState(expected, machine);
+    }
+
+    @Test
+    public void noStepBackWhileRunning() throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> messages = new ArrayList<>();
+        MipsMachine machine = new MipsMachine(0x4000, new MachineListener() {
+            @Override
+            public void showMessage(String message) {
+                messages.add(message);
+            }
+
+            @Override
+            public void onProgramFinished() {
+                // Hold the run thread before it hands the machine back
+                finished.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        machine.enableHistory(1000);
+        machine.loadProgram(new Assembler().assemble(LOOP));
+        machine.runContinuously();
+        finished.await();
+
+        assertTrue(machine.isRunning());
+        machine.runPreviousStep();
+        machine.runContinuouslyBackwards();
+        machine.runNextStep();
+        assertEquals(3, messages.size());
+        assertEquals("Wait for the run to finish", messages.get(0));
+        try {
+            machine.stepBack(1);
+            fail("Stepped back while running");
+        } catch (IllegalStateException e) {
+        }
+        long instructionCount = machine.getInstructionCount();
+
+        release.countDown();
+        while (machine.isRunning()) {
+            Thread.sleep(1);
+        }
+        assertEquals(instructionCount, machine.getInstructionCount());
+        assertEquals(1, machine.stepBack(1));
+    }
+
+    @Test
+    public void runStopsAtTheLimit() {
+        MipsMachine machine = machine(LOOP, 1000);
+        assertEquals(1, machine.run(1));
+        assertEquals(123457, machine.run(123457));
+        assertEquals(123458, machine.getInstructionCount());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recording, draining and rendering an {@link InstructionTrace}
+ */
+public class InstructionTraceTest {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int DRAIN_EVENTS = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void awaitLength(File file, long length) throws InterruptedException {
+        for (int i = 0; i < 10_000 && file.length() != length; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(length, file.length());
+    }
+
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        for (int i = 0; i < 10_000 && thread.getState() != Thread.State.WAITING; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    @Test
+    public void drainsOnlyAWriteWorthUntilFlushed() throws IOException, InterruptedException {
+        File file = folder.newFile();
+        try (InstructionTrace trace = new InstructionTrace(file)) {
+            // An idle drain thread waits without a timeout instead of polling
+            awaitParked(trace.drainer);
+            trace.instruction(0, 0x20080005);
+            awaitParked(trace.drainer);
+            assertEquals(HEADER_SIZE, file.length());
+
+            trace.flush();
+            assertEquals(HEADER_SIZE + InstructionTrace.EVENT_SIZE, file.length());
+
+            for (int i = 0; i < DRAIN_EVENTS; i++) {
+                trace.register(4, 8, i);
+            }
+            awaitLength(file, HEADER_SIZE + (DRAIN_EVENTS + 1L) * InstructionTrace.EVENT_SIZE);
+            awaitParked(trace.drainer);
+
+            trace.store(8, 0x100, 5);
+        }
+        assertEquals(HEADER_SIZE + (DRAIN_EVENTS + 2L) * InstructionTrace.EVENT_SIZE, file.length());
+    }
+
+    @Test
+    public void rendersTheSameInEveryLocale() throws IOException {
+        File file = folder.newFile();
+        try (InstructionTrace trace = new InstructionTrace(file)) {
+            trace.instruction(0x40, 0x20080005);
+            trace.register(0x40, 32, 5);
+            trace.load(0x44, 0x1230, 1234);
+            trace.store(0x48, 0x1234, -5);
+        }
+        String expected = String.join("\n",
+                "0x00000040: 20080005 addi",
+                "    hi = 5",
+                "    loaded 1234 from memory 0x00001230",
+                "    stored -5 to memory 0x00001234",
+                "");
+
+        Locale locale = Locale.getDefault();
+        try {
+            // Arabic formats numbers with its own digits
+            Locale.setDefault(Locale.forLanguageTag("ar-EG"));
+            StringWriter out = new StringWriter();
+            InstructionTrace.render(file, out);
+            assertEquals(expected, out.toString());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
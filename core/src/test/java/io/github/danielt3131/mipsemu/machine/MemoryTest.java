@@ -0,0 +1,229 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The lazily allocated pages of {@link Memory}, the {@link PageTable} behind them, the big-endian word and half
+ * word accesses and the dirty bitmap
+ */
+public class MemoryTest {
+
+    private static final int PAGE_SIZE = Memory.PAGE_SIZE;
+
+    private static void assertMisaligned(Memory memory, int address, int size) {
+        try {
+            if (size == 4) {
+                memory.loadWord(address);
+            } else {
+                memory.loadHalf(address);
+            }
+            fail("Loaded " + size + " bytes at " + address);
+        } catch (AlignmentException e) {
+            assertEquals(address, e.getAddress());
+            assertEquals(size, e.getSize());
+        }
+        try {
+            if (size == 4) {
+                memory.storeWord(address, -1);
+            } else {
+                memory.storeHalf(address, (short) -1);
+            }
+            fail("Stored " + size + " bytes at " + address);
+        } catch (AlignmentException e) {
+            assertEquals(address, e.getAddress());
+        }
+    }
+
+    @Test
+    public void allocatesPagesOnTheFirstWrite() {
+        Memory memory = new Memory();
+        assertEquals(0, memory.loadByte(5 * PAGE_SIZE));
+        assertEquals(0, memory.getPageCount());
+
+        memory.storeByte(5 * PAGE_SIZE, (byte) 1);
+        memory.storeByte(6 * PAGE_SIZE - 1, (byte) 2);
+        assertEquals(1, memory.getPageCount());
+        memory.storeByte(6 * PAGE_SIZE, (byte) 3);
+        assertEquals(2, memory.getPageCount());
+        assertEquals(1, memory.loadByte(5 * PAGE_SIZE));
+        assertEquals(2, memory.loadByte(6 * PAGE_SIZE - 1));
+        assertEquals(3, memory.loadByte(6 * PAGE_SIZE));
+    }
+
+    @Test
+    public void untouchedPagesReadAsZero() {
+        Memory memory = new Memory();
+        assertArrayEquals(new byte[3 * PAGE_SIZE], memory.read(PAGE_SIZE, 3 * PAGE_SIZE));
+
+        // The last page used is the shared zero page, writing to it must allocate a page of its own
+        assertEquals(0, memory.loadByte(3 * PAGE_SIZE));
+        memory.storeByte(3 * PAGE_SIZE, (byte) 7);
+        assertEquals(7, memory.loadByte(3 * PAGE_SIZE));
+        assertEquals(0, memory.loadByte(4 * PAGE_SIZE));
+        assertEquals(0, memory.loadByte(2 * PAGE_SIZE));
+        assertEquals(1, memory.getPageCount());
+    }
+
+    @Test
+    public void readsAcrossPageBoundaries() {
+        Memory memory = new Memory();
+        for (int i = 0; i < 4; i++) {
+            memory.storeByte(PAGE_SIZE - 2 + i, (byte) (i + 1));
+        }
+        memory.storeByte(3 * PAGE_SIZE, (byte) 9);
+        assertEquals(3, memory.getPageCount());
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, memory.read(PAGE_SIZE - 2, 4));
+
+        // Starts in a written page, crosses an untouched one and ends in another written one
+        byte[] bytes = memory.read(PAGE_SIZE - 1, 2 * PAGE_SIZE + 2);
+        assertEquals(2, bytes[0]);
+        assertEquals(3, bytes[1]);
+        assertEquals(0, bytes[2 * PAGE_SIZE]);
+        assertEquals(9, bytes[2 * PAGE_SIZE + 1]);
+    }
+
+    @Test
+    public void coversTheTopOfTheAddressSpace() {
+        Memory memory = new Memory();
+        memory.storeByte(0x7FFFFFFC, (byte) 1);
+        memory.storeByte(0x80000000, (byte) 2);
+        memory.storeByte(0xFFFFFFFF, (byte) 3);
+        assertEquals(3, memory.getPageCount());
+        assertEquals(1, memory.loadByte(0x7FFFFFFC));
+        assertEquals(2, memory.loadByte(0x80000000));
+        assertEquals(3, memory.loadByte(0xFFFFFFFF));
+        assertEquals(0, memory.loadByte(0));
+        assertArrayEquals(new byte[]{0, 0, 0, 3}, memory.read(0xFFFFFFFC, 4));
+    }
+
+    @Test
+    public void wordsAndHalvesAreBigEndian() {
+        Memory memory = new Memory();
+        memory.storeWord(PAGE_SIZE - 4, 0x01020304);
+        memory.storeHalf(PAGE_SIZE, (short) 0x8081);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, (byte) 0x80, (byte) 0x81}, memory.read(PAGE_SIZE - 4, 6));
+        assertEquals(0x01020304, memory.loadWord(PAGE_SIZE - 4));
+        assertEquals(0x0304, memory.loadHalf(PAGE_SIZE - 2));
+        assertEquals((short) 0x8081, memory.loadHalf(PAGE_SIZE));
+
+        memory.storeByte(PAGE_SIZE + 2, (byte) 0xFF);
+        assertEquals(0x8081FF00, memory.loadWord(PAGE_SIZE));
+        assertEquals(0, memory.loadWord(8 * PAGE_SIZE));
+        assertEquals(0, memory.loadHalf(8 * PAGE_SIZE));
+    }
+
+    @Test
+    public void wordsAtTheTopOfTheAddressSpace() {
+        Memory memory = new Memory();
+        memory.storeWord(0x7FFFFFFC, -2);
+        memory.storeWord(0xFFFFFFFC, 0x12345678);
+        memory.storeHalf(0xFFFFFFFA, (short) -1);
+        assertEquals(-2, memory.loadWord(0x7FFFFFFC));
+        assertEquals(0x12345678, memory.loadWord(0xFFFFFFFC));
+        assertEquals(0x0000FFFF, memory.loadWord(0xFFFFFFF8));
+        assertEquals(0x78, memory.loadByte(0xFFFFFFFF));
+        assertEquals(0, memory.loadWord(0x80000000));
+    }
+
+    @Test
+    public void rejectsMisalignedAccesses() {
+        Memory memory = new Memory();
+        memory.storeWord(0, 0x01020304);
+        for (int address = 1; address < 4; address++) {
+            assertMisaligned(memory, address, 4);
+        }
+        assertMisaligned(memory, 1, 2);
+        assertMisaligned(memory, 3, 2);
+        assertMisaligned(memory, PAGE_SIZE - 2, 4);     // Would cross into the next page
+        assertMisaligned(memory, 0xFFFFFFFF, 2);
+        assertEquals(0x01020304, memory.loadWord(0));
+        assertEquals(1, memory.getPageCount());
+    }
+
+    @Test
+    public void pageTablesOnlyHoldWhatWasPut() {
+        PageTable<String> table = new PageTable<>();
+        int[] pageNumbers = {0, 1, 1023, 1024, 0xFFFFF};
+        for (int pageNumber : pageNumbers) {
+            assertNull(table.get(pageNumber));
+            table.put(pageNumber, Integer.toString(pageNumber));
+        }
+        for (int pageNumber : pageNumbers) {
+            assertEquals(Integer.toString(pageNumber), table.get(pageNumber));
+        }
+        assertNull(table.get(2));
+        assertNull(table.get(1025));
+
+        List<String> entries = new ArrayList<>();
+        table.forEach(entries::add);
+        assertEquals(pageNumbers.length, entries.size());
+        table.clear();
+        assertNull(table.get(1023));
+    }
+
+    @Test
+    public void dirtyPagesAreVisitedOnce() {
+        Memory memory = new Memory();
+        memory.storeWord(PAGE_SIZE, 1);
+        memory.storeWord(PAGE_SIZE + 4, 2);
+        memory.storeByte(0x7FFFFFFC, (byte) 3);
+        memory.storeWord(5 * PAGE_SIZE, 4);
+
+        List<Integer> dirty = new ArrayList<>();
+        memory.forEachDirtyPage(dirty::add);
+        assertEquals(List.of(1, 5, 0x7FFFF), dirty);
+
+        memory.clearDirty();
+        dirty.clear();
+        memory.forEachDirtyPage(dirty::add);
+        assertTrue(dirty.isEmpty());
+        memory.storeWord(PAGE_SIZE, 5);     // Still the last used page, but clean since clearDirty
+        memory.forEachDirtyPage(dirty::add);
+        assertEquals(List.of(1), dirty);
+    }
+
+    @Test
+    public void machinesSendOnlyTheChangedPages() {
+        List<int[]> updates = new ArrayList<>();
+        MipsMachine machine = new MipsMachine(8 * PAGE_SIZE, new MachineListener() {
+            @Override
+            public void updateMemoryDisplay(int address, int length) {
+                updates.add(new int[]{address, length});
+            }
+        });
+        machine.sendChangedMemory();
+        updates.clear();
+
+        machine.getMemory().storeWord(2 * PAGE_SIZE + 8, 1);
+        machine.getMemory().storeWord(6 * PAGE_SIZE, 2);
+        machine.getMemory().storeWord(20 * PAGE_SIZE, 3);     // Outside the display
+        machine.sendChangedMemory();
+        assertEquals(2, updates.size());
+        assertArrayEquals(new int[]{2 * PAGE_SIZE, PAGE_SIZE}, updates.get(0));
+        assertArrayEquals(new int[]{6 * PAGE_SIZE, PAGE_SIZE}, updates.get(1));
+
+        // The bitmap is cleared once it has been sent
+        updates.clear();
+        machine.sendChangedMemory();
+        assertTrue(updates.isEmpty());
+    }
+}
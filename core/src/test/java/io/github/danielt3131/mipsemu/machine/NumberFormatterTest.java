@@ -0,0 +1,106 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Test;
+
+import io.github.danielt3131.mipsemu.Reference;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link NumberFormatter} must show exactly what the register, program counter and memory displays showed when they
+ * were formatted with {@link String#format}
+ */
+public class NumberFormatterTest {
+
+    private static final int[] FORMATS = {Reference.HEX_MODE, Reference.BINARY_MODE, Reference.DECIMIAL_MODE};
+    private static final int[] VALUES = {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 1, 10, -10, 0x3c1d0001,
+            0x00ff00ff, 999999999, -1000000000};
+
+    /**
+     * The register and program counter text before NumberFormatter
+     */
+    private static String oldWord(int value, int format) {
+        if (format == Reference.HEX_MODE) {
+            return String.format("%8s", Integer.toHexString(value)).replace(" ", "0");
+        } else if (format == Reference.BINARY_MODE) {
+            return String.format("%32s", Integer.toBinaryString(value)).replace(" ", "0");
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * The memory row text before NumberFormatter
+     */
+    private static String oldRow(int address, int word, int format) {
+        StringBuilder row = new StringBuilder(48).append("0x");
+        String hexAddress = Integer.toHexString(address);
+        for (int i = hexAddress.length(); i < 6; i++) {
+            row.append('0');
+        }
+        row.append(hexAddress).append(':');
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            byte b = (byte) (word >>> shift);
+            row.append(' ');
+            if (format == Reference.HEX_MODE) {
+                row.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            } else if (format == Reference.BINARY_MODE) {
+                for (int bit = 7; bit >= 0; bit--) {
+                    row.append((b >>> bit) & 1);
+                }
+            } else {
+                row.append(b);
+            }
+        }
+        return row.toString();
+    }
+
+    @Test
+    public void wordsMatchTheOldFormatting() {
+        char[] buffer = new char[NumberFormatter.MAX_WORD_LENGTH];
+        for (int format : FORMATS) {
+            for (int value : VALUES) {
+                assertEquals(oldWord(value, format), NumberFormatter.format(value, format, buffer));
+            }
+        }
+    }
+
+    @Test
+    public void writesWordsAtAnOffset() {
+        char[] out = new char[4 + NumberFormatter.MAX_WORD_LENGTH];
+        int end = NumberFormatter.word(Integer.MIN_VALUE, Reference.DECIMIAL_MODE, out, 4);
+        assertEquals("-2147483648", new String(out, 4, end - 4));
+        assertEquals(0, out[3]);
+        assertEquals(4 + 8, NumberFormatter.word(-1, Reference.HEX_MODE, out, 4));
+        assertEquals(4 + 32, NumberFormatter.word(0, Reference.BINARY_MODE, out, 4));
+    }
+
+    @Test
+    public void rowsMatchTheOldFormatting() {
+        char[] row = new char[NumberFormatter.MAX_ROW_LENGTH];
+        int[] addresses = {0, 0x10, 0xFFFFFC, 0x1000000, 0x7FFFFFFC, 0xFFFFFFFC};
+        for (int format : FORMATS) {
+            for (int address : addresses) {
+                for (int word : VALUES) {
+                    int length = NumberFormatter.row(address, word, format, row);
+                    assertEquals(oldRow(address, word, format), new String(row, 0, length));
+                }
+            }
+        }
+        // The longest row fits the buffer exactly
+        assertEquals(NumberFormatter.MAX_ROW_LENGTH, NumberFormatter.row(-4, 0, Reference.BINARY_MODE, row));
+    }
+}
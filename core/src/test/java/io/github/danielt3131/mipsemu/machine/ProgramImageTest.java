@@ -0,0 +1,134 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Converting, writing and loading {@link ProgramImage}s
+ */
+public class ProgramImageTest {
+
+    private static final String PROGRAM = String.join("\n",
+            "0x0: 00100000 00001000 00000000 00000111",
+            "0x4: 00000000 00000000 00000000 00000000",
+            "0x2000: 00000000 00000000 00000000 00101010");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] convert(int entry, int sp, int gp) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long bytes = ProgramImage.convert(new ByteArrayInputStream(PROGRAM.getBytes(StandardCharsets.US_ASCII)), out,
+                entry, sp, gp);
+        assertEquals(12, bytes);
+        return out.toByteArray();
+    }
+
+    private static void assertRejected(byte[] image) {
+        MipsMachine machine = new MipsMachine(0x4000);
+        try {
+            ProgramImage.load(ByteBuffer.wrap(image), machine);
+            fail("Loaded a bad image");
+        } catch (IOException e) {
+            assertEquals(0, machine.getMemory().loadWord(0x2000));
+        }
+    }
+
+    @Test
+    public void convertsAndLoads() throws IOException {
+        byte[] image = convert(4, 0x3000, 0x1000);
+        assertEquals(24 + 2 * 12 + 12, image.length);
+
+        MipsMachine machine = new MipsMachine(0x4000);
+        ProgramImage.load(ByteBuffer.wrap(image), machine);
+        assertEquals(0x20080007, machine.getMemory().loadWord(0));
+        assertEquals(42, machine.getMemory().loadWord(0x2000));
+        assertEquals(4, machine.getProgramCounter());
+        assertEquals(0x3000, machine.getRegister(29));
+        assertEquals(0x1000, machine.getRegister(28));
+    }
+
+    @Test
+    public void keepsTheDefaultRegisters() throws IOException {
+        MipsMachine machine = new MipsMachine(0x4000);
+        int sp = machine.getRegister(29);
+        ProgramImage.load(ByteBuffer.wrap(convert(0, 0, 0)), machine);
+        assertEquals(sp, machine.getRegister(29));
+        assertEquals(0, machine.getRegister(28));
+    }
+
+    @Test
+    public void loadsFromAFile() throws IOException {
+        File file = folder.newFile("program.img");
+        Files.write(file.toPath(), convert(0, 0, 0));
+        File text = folder.newFile("program.txt");
+        Files.write(text.toPath(), PROGRAM.getBytes(StandardCharsets.US_ASCII));
+        assertTrue(ProgramImage.isImage(file));
+        assertFalse(ProgramImage.isImage(text));
+
+        MipsMachine machine = new MipsMachine(0x4000);
+        machine.loadImage(file);
+        machine.run(Long.MAX_VALUE);
+        assertTrue(machine.isFinished());
+        assertEquals(7, machine.getRegister(8));
+    }
+
+    @Test
+    public void writesAssembledPrograms() throws IOException {
+        AssembledProgram program = new Assembler().assemble("main: li $t0, 5\nhalt\n.data\nvalue: .word 9");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        program.writeImage(out);
+
+        MipsMachine machine = new MipsMachine(0x20000);
+        ProgramImage.load(ByteBuffer.wrap(out.toByteArray()), machine);
+        assertEquals(program.getEntry(), machine.getProgramCounter());
+        assertEquals(9, machine.getMemory().loadWord(Assembler.DATA_START));
+    }
+
+    @Test
+    public void rejectsBadImages() throws IOException {
+        byte[] image = convert(0, 0, 0);
+        assertRejected(new byte[10]);
+        assertRejected(PROGRAM.getBytes(StandardCharsets.US_ASCII));
+
+        byte[] version = image.clone();
+        version[7] = 2;
+        assertRejected(version);
+
+        byte[] count = image.clone();
+        count[23] = 100;
+        assertRejected(count);
+
+        byte[] offset = image.clone();
+        ByteBuffer.wrap(offset).putInt(24 + 12 + 4, image.length);     // Second segment starts at the end
+        assertRejected(offset);
+
+        assertRejected(Arrays.copyOf(image, image.length - 1));
+    }
+}
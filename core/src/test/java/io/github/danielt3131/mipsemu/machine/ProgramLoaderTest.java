@@ -0,0 +1,107 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parsing the text program format with {@link ProgramLoader}
+ */
+public class ProgramLoaderTest {
+
+    private static InputStream text(String program) {
+        return new ByteArrayInputStream(program.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ProgramFormatException assertRejected(String program) throws IOException {
+        try {
+            new ProgramLoader(text(program)).load(new MipsMachine(0x1000));
+        } catch (ProgramFormatException e) {
+            return e;
+        }
+        fail("Loaded " + program);
+        return null;
+    }
+
+    @Test
+    public void loadsBytesAtTheirAddresses() throws IOException {
+        MipsMachine machine = new MipsMachine(0x1000);
+        long stored = new ProgramLoader(text(String.join("\n",
+                "0x0: 00100000 00001000 00000000 00000111",
+                "",
+                "0x4:\t0010 0000 0000 1001 0000 0000 0000 0011\r",
+                "0x100 : 11111111",
+                "0X104: 1000000001111111"))).load(machine);
+        assertEquals(11, stored);
+        Memory memory = machine.getMemory();
+        assertEquals(0x20080007, memory.loadWord(0));
+        assertEquals(0x20090003, memory.loadWord(4));
+        assertEquals((byte) 0xFF, memory.loadByte(0x100));
+        assertEquals(0x807F, memory.loadHalf(0x104) & 0xFFFF);
+    }
+
+    @Test
+    public void mergesAdjacentLines() throws IOException {
+        ProgramLoader loader = new ProgramLoader(text("0x0: 00000001\n0x1: 00000010\n0x8: 00000011\n0x9: 00000100\n"));
+        loader.load(new MipsMachine(0x1000));
+        assertArrayEquals(new int[]{0, 2, 8, 2}, loader.getSegments());
+    }
+
+    @Test
+    public void readsAcrossTheBuffer() throws IOException {
+        StringBuilder program = new StringBuilder();
+        int words = ProgramLoader.BUFFER_SIZE / 40 * 3;
+        for (int i = 0; i < words; i++) {
+            String bits = String.format("%32s", Integer.toBinaryString(i)).replace(' ', '0');
+            program.append(String.format("0x%x: %s %s %s %s%n", i * 4,
+                    bits.substring(0, 8), bits.substring(8, 16), bits.substring(16, 24), bits.substring(24)));
+        }
+        MipsMachine machine = new MipsMachine(words * 4);
+        assertEquals(words * 4L, new ProgramLoader(text(program.toString())).load(machine));
+        for (int i = 0; i < words; i++) {
+            assertEquals(i, machine.getMemory().loadWord(i * 4));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedLines() throws IOException {
+        assertEquals(2, assertRejected("0x0: 00000000\n0x4: 0000000").getLineNumber());
+        assertEquals(1, assertRejected("0x0: 0000 0002").getLineNumber());
+        assertEquals(3, assertRejected("0x0: 00000000\n\n4: 00000000").getLineNumber());
+        assertTrue(assertRejected("0x: 00000000").getMessage().contains("hex digits"));
+        assertTrue(assertRejected("0x123456789: 00000000").getMessage().contains("32 bits"));
+        assertTrue(assertRejected("0x10 00000000").getMessage().contains("':'"));
+    }
+
+    @Test
+    public void dropsCodeItOverwrites() throws IOException {
+        MipsMachine machine = new MipsMachine(0x1000);
+        new ProgramLoader(text("0x0: 00100000 00001000 00000000 00000111\n")).load(machine);
+        machine.run(1);
+        assertEquals(7, machine.getRegister(8));
+
+        new ProgramLoader(text("0x0: 00100000 00001000 00000000 00001001\n")).load(machine);
+        machine.setProgramCounter(0);
+        machine.run(1);
+        assertEquals(9, machine.getRegister(8));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Saving and restoring states with {@link StateManager}, and detecting damaged ones
+ */
+public class StateManagerTest {
+
+    private static final int MEMORY_SIZE = 64 * Memory.PAGE_SIZE;
+
+    /**
+     * Makes a machine with every register, hi and lo set and memory holding zeros, repeated and random pages, more
+     * than one block of them
+     */
+    private static MipsMachine machine() {
+        MipsMachine machine = new MipsMachine(MEMORY_SIZE);
+        machine.loadProgram(new Assembler().assemble("li $t0, 0x12345\nli $t1, -7\nmult $t0, $t1\nhalt"));
+        machine.run(Long.MAX_VALUE);
+        for (int i = 1; i < 32; i++) {
+            machine.register[i] += i * 1001;
+        }
+        Random random = new Random(1);
+        Memory memory = machine.getMemory();
+        for (int page = 1; page < 40; page++) {
+            for (int offset = 0; offset < Memory.PAGE_SIZE; offset += 4) {
+                memory.storeWord(page * Memory.PAGE_SIZE + offset, page % 2 == 0 ? page : random.nextInt());
+            }
+        }
+        memory.storeWord(50 * Memory.PAGE_SIZE, 1);
+        memory.storeWord(50 * Memory.PAGE_SIZE, 0);     // Allocated but zero again
+        return machine;
+    }
+
+    private static byte[] save(MipsMachine machine, boolean compress) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StateManager.save(machine, out, compress);
+        return out.toByteArray();
+    }
+
+    private static void assertSameState(MipsMachine expected, MipsMachine actual) {
+        assertArrayEquals(expected.register, actual.register);
+        assertEquals(expected.hi, actual.hi);
+        assertEquals(expected.lo, actual.lo);
+        assertEquals(expected.getProgramCounter(), actual.getProgramCounter());
+        assertEquals(expected.getMemorySize(), actual.getMemorySize());
+        for (int address = 0; address < MEMORY_SIZE; address += Memory.PAGE_SIZE) {
+            assertArrayEquals("page at " + address, expected.getMemory().read(address, Memory.PAGE_SIZE),
+                    actual.getMemory().read(address, Memory.PAGE_SIZE));
+        }
+    }
+
+    private static void assertRejected(byte[] state) {
+        MipsMachine machine = new MipsMachine(Memory.PAGE_SIZE);
+        machine.getMemory().storeWord(0, 99);
+        try {
+            machine.readState(new ByteArrayInputStream(state));
+            fail("Restored a bad state");
+        } catch (IOException e) {
+            assertEquals(99, machine.getMemory().loadWord(0));
+            assertEquals(Memory.PAGE_SIZE, machine.getMemorySize());
+        }
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        MipsMachine machine = machine();
+        for (boolean compress : new boolean[]{true, false}) {
+            MipsMachine restored = new MipsMachine(Memory.PAGE_SIZE);
+            restored.readState(new ByteArrayInputStream(save(machine, compress)));
+            assertSameState(machine, restored);
+            assertTrue(restored.isFinished());
+        }
+    }
+
+    @Test
+    public void leavesOutZeroPagesAndDeflates() throws IOException {
+        MipsMachine machine = machine();
+        byte[] raw = save(machine, false);
+        byte[] deflated = save(machine, true);
+        // 40 pages hold something, the zero page at 50 and the untouched pages are left out
+        int pageEntry = 4 + Memory.PAGE_SIZE;
+        assertTrue(raw.length < 41 * pageEntry);
+        assertTrue(raw.length > 40 * pageEntry);
+        // The repeated pages shrink, the random ones are stored as they are
+        assertTrue(deflated.length < raw.length - 15 * Memory.PAGE_SIZE);
+        assertTrue(deflated.length > 20 * Memory.PAGE_SIZE);
+    }
+
+    @Test
+    public void loadsStatesLikePrograms() throws IOException {
+        MipsMachine machine = machine();
+        MipsMachine restored = new MipsMachine(Memory.PAGE_SIZE);
+        restored.load(new ByteArrayInputStream(save(machine, true)));
+        assertSameState(machine, restored);
+    }
+
+    @Test
+    public void savesCheckpoints() throws IOException {
+        MipsMachine machine = machine();
+        Checkpoint checkpoint = machine.checkpoint();
+        byte[] expected = save(machine, true);
+        machine.getMemory().storeWord(Memory.PAGE_SIZE, 5);
+        machine.register[8] = 5;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StateManager.save(checkpoint, out, true);
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    @Test
+    public void rejectsDamagedStates() throws IOException {
+        byte[] state = save(machine(), true);
+        assertRejected(new byte[0]);
+        assertRejected("State".getBytes());
+
+        for (int index : new int[]{5, 12, 40, 176, 200, state.length / 2, state.length - 1}) {
+            byte[] damaged = state.clone();
+            damaged[index] ^= 0x10;
+            assertRejected(damaged);
+        }
+        assertRejected(Arrays.copyOf(state, 100));
+        assertRejected(Arrays.copyOf(state, state.length - 1));
+    }
+}
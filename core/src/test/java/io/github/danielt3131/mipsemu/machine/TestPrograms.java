@@ -0,0 +1,85 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 3 or later.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.danielt3131.mipsemu.machine;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the instructions of the programs run by the tests
+ */
+final class TestPrograms {
+
+    // Opcodes
+    static final int ADDI = 0b001000, ADDIU = 0b001001, SLTI = 0b001010, SLTIU = 0b001011, ANDI = 0b001100,
+            ORI = 0b001101, XORI = 0b001110, LUI = 0b001111, LW = 0b100011, SW = 0b101011, J = 0b000010,
+            JAL = 0b000011, BEQ = 0b000100, BNE = 0b000101, BLEZ = 0b000110, BGTZ = 0b000001;
+    // Functs of the R-type instructions
+    static final int ADD = 0b100000, ADDU = 0b100001, SUB = 0b100010, SUBU = 0b100011, AND = 0b100100,
+            OR = 0b100101, XOR = 0b100110, SLT = 0b101010, SLTU = 0b101011, SLL = 0b000000, SRL = 0b000010,
+            SRA = 0b000011, NOT = 0b100111, MULT = 0b011000, MFHI = 0b010000, MFLO = 0b010010, JR = 0b001000;
+    // Register numbers
+    static final int ZERO = 0, AT = 1, V0 = 2, V1 = 3, A0 = 4, A1 = 5, A2 = 6, A3 = 7, T0 = 8, T1 = 9, T2 = 10,
+            T3 = 11, T4 = 12, T5 = 13, T6 = 14, T7 = 15, S0 = 16, S1 = 17, S2 = 18, S3 = 19, S4 = 20, S5 = 21,
+            S6 = 22, S7 = 23, T8 = 24, T9 = 25, K0 = 26, K1 = 27, GP = 28, SP = 29, FP = 30, RA = 31;
+
+    static final int HALT = 0;  // The machine stops at a word of 0
+
+    private TestPrograms() {
+    }
+
+    static int rType(int funct, int rs, int rt, int rd, int shamt) {
+        return rs << 21 | rt << 16 | rd << 11 | shamt << 6 | funct;
+    }
+
+    /**
+     * Encodes an I-type instruction, branch offsets count words from the branch itself
+     */
+    static int iType(int opcode, int rs, int rt, int immediate) {
+        return opcode << 26 | rs << 21 | rt << 16 | (immediate & 0xFFFF);
+    }
+
+    static int jType(int opcode, int address) {
+        return opcode << 26 | address >>> 2;
+    }
+
+    /**
+     * Writes instruction words as a program starting at address 0
+     *
+     * @param words The instruction words
+     * @return The program in the format read by {@link ProgramLoader}
+     */
+    static byte[] program(int... words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words.length; i++) {
+            String bits = String.format("%32s", Integer.toBinaryString(words[i])).replace(' ', '0');
+            text.append(String.format("0x%x: ", i * 4)).append(bits).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Creates a headless machine with a program loaded
+     *
+     * @param memorySize The amount of memory in bytes
+     * @param words The instruction words, starting at address 0
+     * @return The machine
+     */
+    static MipsMachine load(int memorySize, int... words) {
+        MipsMachine machine = new MipsMachine(memorySize);
+        machine.load(new ByteArrayInputStream(program(words)));
+        return machine;
+    }
+}
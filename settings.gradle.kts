@@ -21,4 +21,7 @@ dependencyResolutionManagement {
 
 rootProject.name = "Mips EMU"
 include(":app")
+include(":core")
+include(":cli")
+include(":benchmarks")
  
\ No newline at end of file